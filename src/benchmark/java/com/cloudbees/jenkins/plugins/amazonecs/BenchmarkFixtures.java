@@ -0,0 +1,184 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import com.amazonaws.services.ecs.model.*;
+import hudson.model.Node;
+import hudson.model.labels.LabelAtom;
+import hudson.remoting.VirtualChannel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Jenkins-free stand-ins for the benchmarks. Label expressions cannot be parsed without a running Jenkins, so templates
+ * carry a ready-made label set and labels have no nodes.
+ */
+final class BenchmarkFixtures {
+
+    private BenchmarkFixtures() {
+    }
+
+    static LabelAtom label(String name) {
+        return new LabelAtom(name) {
+            @Override
+            public Set<Node> getNodes() {
+                return Collections.emptySet();
+            }
+        };
+    }
+
+    static ECSTaskTemplate template(String name, String launchType) {
+        final Set<LabelAtom> labelSet = Collections.singleton(label(name));
+        return new ECSTaskTemplate(name, name, null, launchType) {
+            @Override
+            public Set<LabelAtom> getLabelSet() {
+                return labelSet;
+            }
+        }.withImage("cloudbees/maven-java").withMemory(2048).withCpu(1024);
+    }
+
+    static ECSCloud cloud(final ECSClient client, ECSTaskTemplate... templates) {
+        final ECSService service = new ECSService("ecsUserId", "us-east-1");
+        service.init(client);
+        return new ECSCloud("ECS Cloud", "ecsClusterArn", "us-east-1") {
+            @Override
+            synchronized ECSService getEcsService() {
+                return service;
+            }
+        }.withTemplates(templates).withMaxSlaves(1000);
+    }
+
+    static List<ContainerInstance> instances(int count, int freeMemory, int freeCpu) {
+        List<ContainerInstance> instances = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            instances.add(new ContainerInstance()
+                    .withContainerInstanceArn("arn:aws:ecs:us-east-1:123456789012:container-instance/" + i)
+                    .withStatus("ACTIVE")
+                    .withAgentConnected(true)
+                    .withRemainingResources(
+                            new Resource().withName("MEMORY").withIntegerValue(freeMemory),
+                            new Resource().withName("CPU").withIntegerValue(freeCpu)));
+        }
+        return instances;
+    }
+
+    /**
+     * Answers every call from memory with canned results.
+     */
+    static final class StubECSClient implements ECSClient {
+        private final List<ContainerInstance> instances;
+        private final List<String> instanceArns = new ArrayList<>();
+
+        StubECSClient(List<ContainerInstance> instances) {
+            this.instances = instances;
+            for (ContainerInstance instance : instances) {
+                instanceArns.add(instance.getContainerInstanceArn());
+            }
+        }
+
+        @Override
+        public ListClustersResult listClusters(ListClustersRequest request) {
+            return new ListClustersResult().withClusterArns("ecsClusterArn");
+        }
+
+        @Override
+        public void stopTask(StopTaskRequest request) {
+        }
+
+        @Override
+        public RegisterTaskDefinitionResult registerTaskDefinition(RegisterTaskDefinitionRequest request) {
+            return new RegisterTaskDefinitionResult().withTaskDefinition(new TaskDefinition().withFamily(request.getFamily()));
+        }
+
+        @Override
+        public DescribeTaskDefinitionResult describeTaskDefinition(DescribeTaskDefinitionRequest request) {
+            return new DescribeTaskDefinitionResult();
+        }
+
+        @Override
+        public ListContainerInstancesResult listContainerInstances(ListContainerInstancesRequest request) {
+            return new ListContainerInstancesResult().withContainerInstanceArns(instanceArns);
+        }
+
+        @Override
+        public DescribeContainerInstancesResult describeContainerInstances(DescribeContainerInstancesRequest request) {
+            Set<String> requested = new HashSet<>(request.getContainerInstances());
+            List<ContainerInstance> batch = new ArrayList<>();
+            for (ContainerInstance instance : instances) {
+                if (requested.contains(instance.getContainerInstanceArn())) {
+                    batch.add(instance);
+                }
+            }
+            return new DescribeContainerInstancesResult().withContainerInstances(batch);
+        }
+
+        @Override
+        public ListTasksResult listTasks(ListTasksRequest request) {
+            return new ListTasksResult();
+        }
+
+        @Override
+        public DescribeTasksResult describeTasks(DescribeTasksRequest request) {
+            return new DescribeTasksResult();
+        }
+
+        @Override
+        public RunTaskResult runTask(RunTaskRequest request) {
+            return new RunTaskResult();
+        }
+
+        @Override
+        public StartTaskResult startTask(StartTaskRequest request) {
+            return new StartTaskResult();
+        }
+    }
+
+    /**
+     * An agent which is never online, in the given launch state.
+     */
+    static final class StubSlave implements ECSSlave {
+        private final String name;
+        private final ECSSlaveHelper helper;
+
+        StubSlave(String name, ECSTaskTemplate template, ECSSlaveHelper.State state) {
+            this.name = name;
+            this.helper = new ECSSlaveHelper(this, name, template);
+            helper.setTaskState(state);
+        }
+
+        @Override
+        public ECSSlaveHelper getHelper() {
+            return helper;
+        }
+
+        @Override
+        public ECSComputer getECSComputer() {
+            return null;
+        }
+
+        @Override
+        public ECSCloud getCloud() {
+            return null;
+        }
+
+        @Override
+        public void terminate() {
+        }
+
+        @Override
+        public VirtualChannel getChannel() {
+            return null;
+        }
+
+        @Override
+        public String getNodeName() {
+            return name;
+        }
+
+        @Override
+        public void save() {
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import com.amazonaws.services.ecs.model.ContainerInstance;
+import com.amazonaws.services.ecs.model.Resource;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures checking the free resources of large clusters, where only the last container instance has room for the
+ * template, including describing the instances through the stubbed client.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ECSClusterResourcesBenchmark {
+
+    @Param({"100", "1000"})
+    public int instanceCount;
+
+    private ECSService service;
+    private ECSTaskTemplate template;
+
+    @Setup
+    public void setup() {
+        template = BenchmarkFixtures.template("maven-java", "EC2");
+        List<ContainerInstance> instances = BenchmarkFixtures.instances(instanceCount, 1024, 512);
+        instances.get(instanceCount - 1).setRemainingResources(Arrays.asList(
+                new Resource().withName("MEMORY").withIntegerValue(4096),
+                new Resource().withName("CPU").withIntegerValue(4096)));
+        service = new ECSService("ecsUserId", "us-east-1");
+        service.init(new BenchmarkFixtures.StubECSClient(instances));
+    }
+
+    @Benchmark
+    public boolean areSufficientClusterResourcesAvailable() {
+        return service.areSufficientClusterResourcesAvailable(template, "ecsClusterArn");
+    }
+}
@@ -0,0 +1,49 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import hudson.model.Label;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static com.cloudbees.jenkins.plugins.amazonecs.ECSSlaveHelper.State.RUNNING;
+import static com.cloudbees.jenkins.plugins.amazonecs.ECSSlaveHelper.State.TASK_CREATED;
+
+/**
+ * Measures finding the agents still being launched among thousands of nodes, one in ten of which is launching.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ECSInitializingSlavesResolverBenchmark {
+
+    @Param({"1000", "5000"})
+    public int nodeCount;
+
+    private ECSInitializingSlavesResolver resolver;
+    private Label label;
+
+    @Setup
+    public void setup() {
+        ECSTaskTemplate template = BenchmarkFixtures.template("maven-java", "FARGATE");
+        final Object[] nodes = new Object[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            nodes[i] = new BenchmarkFixtures.StubSlave("maven-java-" + i, template, i % 10 == 0 ? TASK_CREATED : RUNNING);
+        }
+        label = BenchmarkFixtures.label("maven-java");
+        resolver = new ECSInitializingSlavesResolver() {
+            @Override
+            Object[] getNodes(Label label) {
+                return nodes;
+            }
+        };
+    }
+
+    @Benchmark
+    public Set<String> getInitializingECSSlaves() {
+        return resolver.getInitializingECSSlaves(label);
+    }
+}
@@ -0,0 +1,62 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import hudson.model.Label;
+import hudson.slaves.NodeProvisioner;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures picking the template for a label among many templates, and a whole provisioning round for one agent.
+ *
+ * The planned nodes are cancelled right away, their provisioning callbacks cannot create agents without Jenkins.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ECSProvisioningBenchmark {
+
+    @Param({"10", "100", "500"})
+    public int templateCount;
+
+    private ECSCloud cloud;
+    private Label label;
+
+    @Setup
+    public void setup() {
+        List<ECSTaskTemplate> templates = new ArrayList<>();
+        for (int i = 0; i < templateCount; i++) {
+            templates.add(BenchmarkFixtures.template("template-" + i, "FARGATE"));
+        }
+        cloud = BenchmarkFixtures.cloud(new BenchmarkFixtures.StubECSClient(Collections.emptyList()),
+                templates.toArray(new ECSTaskTemplate[0]));
+        // the last template matches, so every template is looked at
+        label = templates.get(templateCount - 1).getLabelSet().iterator().next();
+    }
+
+    @Benchmark
+    public ECSTaskTemplate getTemplate() {
+        return cloud.getTemplate(label);
+    }
+
+    @Benchmark
+    public List<ECSTaskTemplate> getTemplates() {
+        return cloud.getTemplates(label);
+    }
+
+    @Benchmark
+    public Collection<NodeProvisioner.PlannedNode> provision() {
+        Collection<NodeProvisioner.PlannedNode> planned = cloud.provision(label, 1);
+        for (NodeProvisioner.PlannedNode node : planned) {
+            node.future.cancel(true);
+        }
+        return planned;
+    }
+}
@@ -0,0 +1,64 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import com.amazonaws.services.ecs.model.RegisterTaskDefinitionRequest;
+import com.amazonaws.services.ecs.model.TaskDefinition;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures comparing a template with many environment variables, mount points and port mappings against the task
+ * definition registered last, both when it still matches and when it has to be registered again.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ECSTaskDefinitionBenchmark {
+
+    private static final String FAMILY = "ECSCloud-maven-java";
+
+    @Param({"10", "100"})
+    public int entryCount;
+
+    private ECSTaskTemplate template;
+    private TaskDefinition matching;
+    private TaskDefinition outdated;
+
+    @Setup
+    public void setup() {
+        List<ECSTaskTemplate.EnvironmentEntry> environments = new ArrayList<>();
+        List<ECSTaskTemplate.MountPointEntry> mountPoints = new ArrayList<>();
+        List<ECSTaskTemplate.PortMappingEntry> portMappings = new ArrayList<>();
+        for (int i = 0; i < entryCount; i++) {
+            environments.add(new ECSTaskTemplate.EnvironmentEntry("VARIABLE_" + i, "value-" + i));
+            mountPoints.add(new ECSTaskTemplate.MountPointEntry("volume-" + i, "/srv/volume-" + i, "/mnt/volume-" + i, i % 2 == 0));
+            portMappings.add(new ECSTaskTemplate.PortMappingEntry(8000 + i, 9000 + i, "tcp"));
+        }
+        template = BenchmarkFixtures.template("maven-java", "EC2")
+                .withEnvironments(environments)
+                .withMountPoints(mountPoints)
+                .withPortMappings(portMappings);
+
+        RegisterTaskDefinitionRequest request = template.createRegisterTaskDefinitionRequestIfNotMatched(FAMILY, null);
+        matching = new TaskDefinition()
+                .withFamily(FAMILY)
+                .withContainerDefinitions(request.getContainerDefinitions())
+                .withVolumes(request.getVolumes());
+        outdated = matching.clone().withContainerDefinitions(request.getContainerDefinitions().get(0).clone().withImage("cloudbees/maven-java:old"));
+    }
+
+    @Benchmark
+    public RegisterTaskDefinitionRequest unchangedTemplate() {
+        return template.createRegisterTaskDefinitionRequestIfNotMatched(FAMILY, matching);
+    }
+
+    @Benchmark
+    public RegisterTaskDefinitionRequest changedTemplate() {
+        return template.createRegisterTaskDefinitionRequestIfNotMatched(FAMILY, outdated);
+    }
+}
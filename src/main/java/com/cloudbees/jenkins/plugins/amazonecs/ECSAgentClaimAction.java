@@ -0,0 +1,204 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import hudson.Extension;
+import hudson.model.Node;
+import hudson.model.UnprotectedRootAction;
+import hudson.security.csrf.CrumbExclusion;
+import org.apache.commons.lang.StringUtils;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Lets containers started by a batched RunTask call, or by a hedged launch, claim the Jenkins node they belong to.
+ *
+ * A container posts its own task ARN with the claim token of its batch in the {@value #TOKEN_HEADER} header and
+ * receives the agent name and JNLP secret of the node that task was assigned to. The token is never read from the
+ * query string, so that it does not end up in access logs or proxies. Every task ARN can be claimed once, until the launch times out.
+ * A node can be claimed by one task only, so of the tasks of a hedged launch only the first to claim it can connect.
+ */
+@Extension
+public class ECSAgentClaimAction implements UnprotectedRootAction {
+
+    private static final Logger LOGGER = Logger.getLogger(ECSAgentClaimAction.class.getName());
+
+    static final String URL_NAME = "ecs-agent-claim";
+
+    static final String TOKEN_HEADER = "X-ECS-Claim-Token";
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final Map<String, Claim> CLAIMS = new ConcurrentHashMap<>();
+    private static final Map<String, Claim> CLAIMED_NODES = new ConcurrentHashMap<>();
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return null;
+    }
+
+    @Override
+    public String getUrlName() {
+        return URL_NAME;
+    }
+
+    static String getClaimUrl(String jenkinsUrl) {
+        return StringUtils.removeEnd(StringUtils.defaultString(jenkinsUrl), "/") + "/" + URL_NAME + "/claim";
+    }
+
+    static String newToken() {
+        byte[] bytes = new byte[32];
+        RANDOM.nextBytes(bytes);
+        StringBuilder token = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            token.append(String.format("%02x", b));
+        }
+        return token.toString();
+    }
+
+    static void register(String taskArn, String nodeName, String token, long expiresAtMillis) {
+        purgeExpired();
+        CLAIMS.put(taskArn, new Claim(taskArn, nodeName, token, expiresAtMillis));
+        LOGGER.log(Level.FINE, "Task {0} may claim agent {1}", new Object[]{taskArn, nodeName});
+    }
+
+    static void cancel(String taskArn) {
+        if (taskArn != null) {
+            CLAIMS.remove(taskArn);
+            CLAIMED_NODES.values().removeIf(claim -> claim.taskArn.equals(taskArn));
+        }
+    }
+
+    static boolean isPending(String taskArn) {
+        return taskArn != null && CLAIMS.containsKey(taskArn);
+    }
+
+    /**
+     * @return the task which claimed the node, or null if no task has claimed it.
+     */
+    static String getClaimingTask(String nodeName) {
+        Claim claim = nodeName == null ? null : CLAIMED_NODES.get(nodeName);
+        return claim == null ? null : claim.taskArn;
+    }
+
+    private static void purgeExpired() {
+        long now = System.currentTimeMillis();
+        CLAIMS.values().removeIf(claim -> claim.isExpired(now));
+        CLAIMED_NODES.values().removeIf(claim -> claim.isExpired(now));
+    }
+
+    /**
+     * Answers with <code>JENKINS_AGENT_NAME</code> and <code>JENKINS_SECRET</code> lines for a valid claim, and 404 for
+     * anything else, so that a caller cannot tell an unknown task from a wrong token.
+     */
+    @RequirePOST
+    public void doClaim(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        String token = req.getHeader(TOKEN_HEADER);
+        String taskArn = req.getParameter("taskArn");
+        String nodeName = claim(taskArn, token);
+        ECSComputer computer = nodeName == null ? null : getComputer(nodeName);
+        if (computer == null) {
+            rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        LOGGER.log(Level.INFO, "Task {0} claimed agent {1}", new Object[]{taskArn, nodeName});
+        rsp.setContentType("text/plain;charset=UTF-8");
+        PrintWriter writer = rsp.getWriter();
+        writer.println("JENKINS_AGENT_NAME=" + computer.getName());
+        writer.println("JENKINS_SECRET=" + computer.getJnlpMac());
+        writer.flush();
+    }
+
+    /**
+     * Consumes the claim for the task if the token matches and no other task has claimed the node.
+     *
+     * @return the name of the claimed node, or null if there is no valid claim.
+     */
+    static synchronized String claim(String taskArn, String token) {
+        if (StringUtils.isEmpty(taskArn) || StringUtils.isEmpty(token)) {
+            return null;
+        }
+        Claim claim = CLAIMS.get(taskArn);
+        if (claim == null) {
+            return null;
+        }
+        if (claim.isExpired(System.currentTimeMillis())) {
+            CLAIMS.remove(taskArn, claim);
+            return null;
+        }
+        if (!MessageDigest.isEqual(claim.token.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8))) {
+            LOGGER.log(Level.WARNING, "Rejected claim with an invalid token for task {0}", taskArn);
+            return null;
+        }
+        Claim claimed = CLAIMED_NODES.get(claim.nodeName);
+        if (claimed != null && !claimed.isExpired(System.currentTimeMillis())) {
+            LOGGER.log(Level.INFO, "Rejected claim of task {0}, agent {1} was claimed by task {2}", new Object[]{taskArn, claim.nodeName, claimed.taskArn});
+            return null;
+        }
+        if (!CLAIMS.remove(taskArn, claim)) {
+            return null;
+        }
+        CLAIMED_NODES.put(claim.nodeName, claim);
+        return claim.nodeName;
+    }
+
+    private static ECSComputer getComputer(String nodeName) {
+        Node node = JenkinsWrapper.getInstance().getNode(nodeName);
+        if (node instanceof ECSSlave) {
+            return ((ECSSlave) node).getECSComputer();
+        }
+        return null;
+    }
+
+    /**
+     * Containers have no crumb, they authenticate the claim with its token instead.
+     */
+    @Extension
+    public static class ClaimCrumbExclusion extends CrumbExclusion {
+        @Override
+        public boolean process(HttpServletRequest req, HttpServletResponse resp, FilterChain chain) throws IOException, ServletException {
+            String pathInfo = req.getPathInfo();
+            if (pathInfo != null && pathInfo.startsWith("/" + URL_NAME + "/")) {
+                chain.doFilter(req, resp);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private static final class Claim {
+        private final String taskArn;
+        private final String nodeName;
+        private final String token;
+        private final long expiresAtMillis;
+
+        Claim(String taskArn, String nodeName, String token, long expiresAtMillis) {
+            this.taskArn = taskArn;
+            this.nodeName = nodeName;
+            this.token = token;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+
+        boolean isExpired(long now) {
+            return now > expiresAtMillis;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.metrics.RequestMetricCollector;
+import com.amazonaws.retry.RetryUtils;
+import com.amazonaws.util.AWSRequestMetrics;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The ECS API calls of one {@link ECSService} per operation: how many there were, how long they took and how many
+ * failed, by error code, and how many of those were throttled.
+ *
+ * A call which the SDK retried counts once, by its outcome and with the time of all its attempts. Its throttled
+ * attempts are counted by {@link #getThrottledAttemptsCollector()} on the SDK client, so that the throttles of an
+ * operation include those the SDK retried successfully.
+ */
+public final class ECSApiMetrics {
+
+    /**
+     * Upper bounds of the latency histogram buckets, in seconds.
+     */
+    static final double[] LATENCY_BUCKETS = {0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+    private final Map<String, Operation> operations = new ConcurrentHashMap<>();
+
+    void record(@Nonnull String operation, long durationNanos, @CheckForNull RuntimeException error) {
+        operations.computeIfAbsent(operation, k -> new Operation()).record(durationNanos, error);
+    }
+
+    /**
+     * Counts the throttled attempts the SDK retried, which the outcome of the call does not show.
+     */
+    @Nonnull
+    RequestMetricCollector getThrottledAttemptsCollector() {
+        return new RequestMetricCollector() {
+            @Override
+            public void collectMetrics(Request<?> request, Response<?> response) {
+                List<Object> throttles = request.getAWSRequestMetrics().getProperty(AWSRequestMetrics.Field.ThrottleException);
+                if (throttles == null || throttles.isEmpty()) {
+                    return;
+                }
+                int retried = throttles.size();
+                List<Object> exceptions = request.getAWSRequestMetrics().getProperty(AWSRequestMetrics.Field.Exception);
+                if (response == null && exceptions != null && !exceptions.isEmpty()
+                        && exceptions.get(exceptions.size() - 1) == throttles.get(throttles.size() - 1)) {
+                    // the call failed with this one, which is recorded with the outcome of the call
+                    retried--;
+                }
+                if (retried > 0) {
+                    String operation = request.getOriginalRequest().getClass().getSimpleName().replaceFirst("Request$", "");
+                    operations.computeIfAbsent(operation, k -> new Operation()).recordRetriedThrottles(retried);
+                }
+            }
+        };
+    }
+
+    /**
+     * @return the metrics of every operation which has been called, by operation name.
+     */
+    public SortedMap<String, Operation> getOperations() {
+        return new TreeMap<>(operations);
+    }
+
+    /**
+     * @return the number of calls per operation.
+     */
+    SortedMap<String, Long> getCallCounts() {
+        SortedMap<String, Long> counts = new TreeMap<>();
+        for (Map.Entry<String, Operation> entry : operations.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().getCalls());
+        }
+        return counts;
+    }
+
+    /**
+     * The error code of an ECS error, e.g. <code>ThrottlingException</code> or <code>ClientException</code>, or the
+     * exception type of any other failure, e.g. a timeout.
+     */
+    static String getErrorType(@Nonnull RuntimeException error) {
+        if (error instanceof AmazonServiceException && ((AmazonServiceException) error).getErrorCode() != null) {
+            return ((AmazonServiceException) error).getErrorCode();
+        }
+        return error.getClass().getSimpleName();
+    }
+
+    public static final class Operation {
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong throttles = new AtomicLong();
+        private final AtomicLong durationNanos = new AtomicLong();
+        private final AtomicLongArray buckets = new AtomicLongArray(LATENCY_BUCKETS.length + 1);
+        private final Map<String, AtomicLong> errors = new ConcurrentHashMap<>();
+
+        void record(long nanos, @CheckForNull RuntimeException error) {
+            calls.incrementAndGet();
+            durationNanos.addAndGet(nanos);
+            double seconds = nanos / (double) TimeUnit.SECONDS.toNanos(1);
+            int bucket = 0;
+            while (bucket < LATENCY_BUCKETS.length && seconds > LATENCY_BUCKETS[bucket]) {
+                bucket++;
+            }
+            buckets.incrementAndGet(bucket);
+            if (error != null) {
+                errors.computeIfAbsent(getErrorType(error), k -> new AtomicLong()).incrementAndGet();
+                if (error instanceof AmazonServiceException && RetryUtils.isThrottlingException((AmazonServiceException) error)) {
+                    throttles.incrementAndGet();
+                }
+            }
+        }
+
+        public long getCalls() {
+            return calls.get();
+        }
+
+        void recordRetriedThrottles(int count) {
+            throttles.addAndGet(count);
+        }
+
+        /**
+         * @return the throttled attempts, of calls which failed and of calls the SDK retried.
+         */
+        public long getThrottles() {
+            return throttles.get();
+        }
+
+        public long getErrorCount() {
+            long count = 0;
+            for (AtomicLong errorCount : errors.values()) {
+                count += errorCount.get();
+            }
+            return count;
+        }
+
+        /**
+         * @return the number of failed calls per error type.
+         */
+        public SortedMap<String, Long> getErrors() {
+            SortedMap<String, Long> snapshot = new TreeMap<>();
+            for (Map.Entry<String, AtomicLong> entry : errors.entrySet()) {
+                snapshot.put(entry.getKey(), entry.getValue().get());
+            }
+            return snapshot;
+        }
+
+        public double getTotalSeconds() {
+            return durationNanos.get() / (double) TimeUnit.SECONDS.toNanos(1);
+        }
+
+        public long getMeanMillis() {
+            long count = calls.get();
+            return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(durationNanos.get() / count);
+        }
+
+        /**
+         * @return the number of calls which took at most the bound of each of the {@link #LATENCY_BUCKETS}, and all
+         * calls as the last element, like the cumulative buckets of a Prometheus histogram.
+         */
+        long[] getCumulativeBuckets() {
+            long[] cumulative = new long[buckets.length()];
+            long count = 0;
+            for (int i = 0; i < cumulative.length; i++) {
+                count += buckets.get(i);
+                cumulative[i] = count;
+            }
+            return cumulative;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.services.autoscaling.AmazonAutoScaling;
+import com.amazonaws.services.autoscaling.AmazonAutoScalingClientBuilder;
+import com.amazonaws.services.autoscaling.model.AutoScalingGroup;
+import com.amazonaws.services.autoscaling.model.DescribeAutoScalingGroupsRequest;
+import com.amazonaws.services.autoscaling.model.DescribeAutoScalingGroupsResult;
+import com.amazonaws.services.autoscaling.model.Instance;
+import com.amazonaws.services.autoscaling.model.SetDesiredCapacityRequest;
+import com.amazonaws.services.ecs.model.ContainerInstance;
+import com.amazonaws.services.ecs.model.Resource;
+import com.cloudbees.jenkins.plugins.awscredentials.AWSCredentialsHelper;
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import hudson.slaves.Cloud;
+import jenkins.model.Jenkins;
+import org.apache.commons.lang.StringUtils;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+/**
+ * Grows the Auto Scaling group behind the EC2 cluster of a cloud when agents do not fit on its container instances,
+ * instead of waiting for capacity to appear by itself, and reports instances which have been idle long enough to be
+ * scaled in.
+ */
+public class ECSAutoScaler {
+
+    private static final Logger LOGGER = Logger.getLogger(ECSAutoScaler.class.getName());
+
+    /**
+     * Overrides the Auto Scaling endpoint, e.g. to run against a local stub.
+     */
+    static final String ENDPOINT = System.getProperty(ECSAutoScaler.class.getName() + ".endpoint");
+    static final long SCALE_IN_IDLE_MILLIS = MINUTES.toMillis(Integer.getInteger(ECSAutoScaler.class.getName() + ".scaleInIdleMinutes", 10));
+
+    private final ECSCloud cloud;
+    private ECSAutoScalingClient client;
+    private final Map<String, Long> idleSince = new HashMap<>();
+    private volatile String scaleInHint;
+
+    ECSAutoScaler(ECSCloud cloud) {
+        this.cloud = cloud;
+    }
+
+    void init(ECSAutoScalingClient client) {
+        this.client = client;
+    }
+
+    private synchronized ECSAutoScalingClient getAutoScalingClient() {
+        if (client == null) {
+            client = new ECSAutoScalingClientImpl(cloud.getCredentialsId(), cloud.getRegionName());
+        }
+        return client;
+    }
+
+    /**
+     * Raises the desired capacity of the Auto Scaling group by the number of instances the pending tasks of the template
+     * need, minus the instances which are already on their way, without going above the maximum size of the group.
+     *
+     * @return the number of instances which were requested.
+     */
+    synchronized int requestCapacity(@Nonnull ECSTaskTemplate template, int pendingTasks) {
+        AutoScalingGroup group = describeGroup();
+        if (group == null || pendingTasks <= 0) {
+            return 0;
+        }
+        int perInstance = getTasksPerInstance(template, cloud.getEcsService().describeContainerInstances(cloud.getCluster()));
+        int needed = (pendingTasks + perInstance - 1) / perInstance;
+        int launching = Math.max(0, group.getDesiredCapacity() - countInService(group));
+        int desired = Math.min(group.getMaxSize(), group.getDesiredCapacity() + Math.max(0, needed - launching));
+        if (desired <= group.getDesiredCapacity()) {
+            LOGGER.log(Level.FINE, "Auto Scaling group {0}: {1} instance(s) needed, {2} launching, desired capacity stays at {3}",
+                    new Object[]{group.getAutoScalingGroupName(), needed, launching, group.getDesiredCapacity()});
+            return 0;
+        }
+        LOGGER.log(Level.INFO, "Auto Scaling group {0}: raising desired capacity from {1} to {2} for {3} pending task(s) of template {4}",
+                new Object[]{group.getAutoScalingGroupName(), group.getDesiredCapacity(), desired, pendingTasks, template.getTemplateName()});
+        getAutoScalingClient().setDesiredCapacity(new SetDesiredCapacityRequest()
+                .withAutoScalingGroupName(group.getAutoScalingGroupName())
+                .withDesiredCapacity(desired)
+                .withHonorCooldown(false));
+        return desired - group.getDesiredCapacity();
+    }
+
+    /**
+     * Tracks container instances without running or pending tasks, and computes which of them have been idle for
+     * longer than {@link #SCALE_IN_IDLE_MILLIS}.
+     *
+     * @return the EC2 instance ids which could be scaled in.
+     */
+    synchronized List<String> checkScaleIn(long now) {
+        List<String> candidates = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (ContainerInstance instance : cloud.getEcsService().describeContainerInstances(cloud.getCluster())) {
+            String arn = instance.getContainerInstanceArn();
+            seen.add(arn);
+            if (instance.getRunningTasksCount() != null && instance.getRunningTasksCount() == 0
+                    && (instance.getPendingTasksCount() == null || instance.getPendingTasksCount() == 0)) {
+                Long since = idleSince.get(arn);
+                if (since == null) {
+                    idleSince.put(arn, now);
+                } else if (now - since >= SCALE_IN_IDLE_MILLIS) {
+                    candidates.add(instance.getEc2InstanceId());
+                }
+            } else {
+                idleSince.remove(arn);
+            }
+        }
+        idleSince.keySet().retainAll(seen);
+
+        if (candidates.isEmpty()) {
+            scaleInHint = null;
+        } else {
+            AutoScalingGroup group = describeGroup();
+            int target = group == null ? -1 : Math.max(group.getMinSize(), group.getDesiredCapacity() - candidates.size());
+            scaleInHint = String.format("%d container instance(s) idle for %d minutes: %s. Auto Scaling group %s could be scaled in to %d",
+                    candidates.size(), MILLISECONDS.toMinutes(SCALE_IN_IDLE_MILLIS), candidates,
+                    cloud.getAutoScalingGroupName(), target);
+            LOGGER.log(Level.INFO, "Cloud {0}: {1}", new Object[]{cloud.name, scaleInHint});
+        }
+        return candidates;
+    }
+
+    /**
+     * @return the last scale-in hint, or null if no instance has been idle long enough.
+     */
+    @CheckForNull
+    public String getScaleInHint() {
+        return scaleInHint;
+    }
+
+    @CheckForNull
+    private AutoScalingGroup describeGroup() {
+        DescribeAutoScalingGroupsResult result = getAutoScalingClient().describeAutoScalingGroups(
+                new DescribeAutoScalingGroupsRequest().withAutoScalingGroupNames(cloud.getAutoScalingGroupName()));
+        if (result.getAutoScalingGroups().isEmpty()) {
+            LOGGER.log(Level.WARNING, "Auto Scaling group {0} of cloud {1} does not exist", new Object[]{cloud.getAutoScalingGroupName(), cloud.name});
+            return null;
+        }
+        return result.getAutoScalingGroups().get(0);
+    }
+
+    private static int countInService(AutoScalingGroup group) {
+        int inService = 0;
+        for (Instance instance : group.getInstances()) {
+            if ("InService".equals(instance.getLifecycleState())) {
+                inService++;
+            }
+        }
+        return inService;
+    }
+
+    /**
+     * How many tasks of the template fit on one container instance, judged by the largest registered instance of the
+     * cluster. Assumes one per instance if the cluster has no instances yet.
+     */
+    static int getTasksPerInstance(@Nonnull ECSTaskTemplate template, @Nonnull List<ContainerInstance> instances) {
+        int perInstance = 0;
+        for (ContainerInstance instance : instances) {
+            int memory = 0;
+            int cpu = 0;
+            for (Resource resource : instance.getRegisteredResources()) {
+                if ("MEMORY".equals(resource.getName())) {
+                    memory = resource.getIntegerValue();
+                } else if ("CPU".equals(resource.getName())) {
+                    cpu = resource.getIntegerValue();
+                }
+            }
+            int fitByMemory = template.getMemoryConstraint() > 0 ? memory / template.getMemoryConstraint() : Integer.MAX_VALUE;
+            int fitByCpu = template.getCpu() > 0 ? cpu / template.getCpu() : Integer.MAX_VALUE;
+            perInstance = Math.max(perInstance, Math.min(fitByMemory, fitByCpu));
+        }
+        return Math.max(1, perInstance == Integer.MAX_VALUE ? 1 : perInstance);
+    }
+
+    @Extension
+    public static class ScaleInAdvisor extends AsyncPeriodicWork {
+
+        public ScaleInAdvisor() {
+            super("ECS scale-in advisor");
+        }
+
+        @Override
+        public long getRecurrencePeriod() {
+            return MINUTES.toMillis(5);
+        }
+
+        @Override
+        protected void execute(TaskListener listener) {
+            Jenkins jenkins = JenkinsWrapper.getInstance();
+            if (jenkins == null) {
+                return;
+            }
+            for (Cloud c : jenkins.clouds) {
+                if (c instanceof ECSCloud && ((ECSCloud) c).getAutoScaler() != null) {
+                    try {
+                        ((ECSCloud) c).getAutoScaler().checkScaleIn(System.currentTimeMillis());
+                    } catch (RuntimeException e) {
+                        LOGGER.log(Level.WARNING, "Failed to check cloud " + c.name + " for idle container instances", e);
+                    }
+                }
+            }
+        }
+    }
+
+    static class ECSAutoScalingClientImpl implements ECSAutoScalingClient {
+        private final String credentialsId;
+        private final String regionName;
+        private AmazonAutoScaling client;
+
+        ECSAutoScalingClientImpl(String credentialsId, String regionName) {
+            this.credentialsId = credentialsId;
+            this.regionName = regionName;
+        }
+
+        private synchronized AmazonAutoScaling getClient() {
+            if (client == null) {
+                AmazonAutoScalingClientBuilder builder = AmazonAutoScalingClientBuilder.standard()
+                        .withClientConfiguration(JenkinsWrapper.getClientConfiguration());
+                if (StringUtils.isNotBlank(ENDPOINT)) {
+                    builder.withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(ENDPOINT, regionName));
+                } else {
+                    builder.withRegion(regionName);
+                }
+                AWSCredentialsProvider credentials = AWSCredentialsHelper.getCredentials(credentialsId, JenkinsWrapper.getInstance());
+                if (credentials != null) {
+                    builder.withCredentials(credentials);
+                }
+                client = builder.build();
+            }
+            return client;
+        }
+
+        @Override
+        public DescribeAutoScalingGroupsResult describeAutoScalingGroups(DescribeAutoScalingGroupsRequest request) {
+            return getClient().describeAutoScalingGroups(request);
+        }
+
+        @Override
+        public void setDesiredCapacity(SetDesiredCapacityRequest request) {
+            getClient().setDesiredCapacity(request);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import com.amazonaws.services.autoscaling.model.*;
+
+interface ECSAutoScalingClient {
+
+    DescribeAutoScalingGroupsResult describeAutoScalingGroups(DescribeAutoScalingGroupsRequest request);
+    void setDesiredCapacity(SetDesiredCapacityRequest request);
+}
@@ -0,0 +1,211 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import com.amazonaws.services.ecs.model.ContainerInstance;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONNull;
+import net.sf.json.JSONObject;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Works out, without launching anything, how many more agents of each template of a cloud the cluster could take
+ * right now and what limits them, with the checks provisioning makes: the running tasks against the maximum number
+ * of agents, and the remaining resources of the container instances for EC2 templates.
+ *
+ * Planning costs one listing of the running tasks when the cloud has a maximum, and one describe of the container
+ * instances when it has EC2 templates.
+ */
+final class ECSCapacityPlanner {
+
+    /**
+     * What limits the agents of a template.
+     */
+    enum Constraint {
+        /**
+         * The maximum number of agents of the cloud.
+         */
+        MAX_SLAVES,
+        /**
+         * The container instances of the cluster: there are none, or they are each full in a different resource.
+         */
+        INSTANCES,
+        CPU,
+        MEMORY,
+        /**
+         * The fixed host ports of the template, each container instance can give them to one task only.
+         */
+        PORTS
+    }
+
+    private final ECSCloud cloud;
+
+    ECSCapacityPlanner(@Nonnull ECSCloud cloud) {
+        this.cloud = cloud;
+    }
+
+    /**
+     * @return the plan of every template, in the order the templates are configured.
+     */
+    @Nonnull
+    List<Plan> plan() {
+        List<ECSTaskTemplate> templates = cloud.getTemplates();
+        Integer maxSlaveSlots = null;
+        if (cloud.getMaxSlaves() != 0) {
+            int running = cloud.getEcsService().getRunningTasks(cloud.getCluster()).size();
+            maxSlaveSlots = Math.max(0, cloud.getMaxSlaves() - running);
+        }
+        List<ContainerInstance> instances = null;
+        for (ECSTaskTemplate template : templates) {
+            if (!template.isFargate()) {
+                instances = cloud.getEcsService().describeContainerInstances(cloud.getCluster());
+                break;
+            }
+        }
+        List<ECSSlave> agents = cloud.getAgents();
+
+        List<Plan> plans = new ArrayList<>();
+        for (ECSTaskTemplate template : templates) {
+            Map<Constraint, Integer> byConstraint = new EnumMap<>(Constraint.class);
+            if (maxSlaveSlots != null) {
+                byConstraint.put(Constraint.MAX_SLAVES, maxSlaveSlots);
+            }
+            if (!template.isFargate() && instances != null) {
+                byConstraint.putAll(placeable(template, instances));
+            }
+            plans.add(new Plan(template, byConstraint, countInFlight(template, agents)));
+        }
+        return plans;
+    }
+
+    /**
+     * The tasks of the template the container instances could take, in total and by each constraint alone.
+     */
+    private static Map<Constraint, Integer> placeable(ECSTaskTemplate template, List<ContainerInstance> instances) {
+        Map<Constraint, Integer> totals = new EnumMap<>(Constraint.class);
+        if (instances.isEmpty()) {
+            totals.put(Constraint.INSTANCES, 0);
+            return totals;
+        }
+        int placeable = ECSTemplateSelector.countPlaceable(template, instances);
+        for (ContainerInstance instance : instances) {
+            for (Map.Entry<Constraint, Integer> entry : ECSTemplateSelector.placeableOn(template, instance).entrySet()) {
+                Integer total = totals.get(entry.getKey());
+                totals.put(entry.getKey(), (total == null ? 0 : total) + entry.getValue());
+            }
+        }
+        if (totals.isEmpty() || placeable < Collections.min(totals.values())) {
+            // no single resource explains the total, the instances are full in different ways
+            totals.put(Constraint.INSTANCES, placeable);
+        }
+        return totals;
+    }
+
+    private static int countInFlight(ECSTaskTemplate template, List<ECSSlave> agents) {
+        int inFlight = 0;
+        for (ECSSlave agent : agents) {
+            ECSTaskTemplate agentTemplate = agent.getHelper().getTemplate();
+            if (agentTemplate != null && template.getTemplateName().equals(agentTemplate.getTemplateName())
+                    && ECSInitializingSlavesResolver.isInitializing(agent.getHelper().getTaskState())) {
+                inFlight++;
+            }
+        }
+        return inFlight;
+    }
+
+    @Nonnull
+    static JSONObject toJson(@Nonnull ECSCloud cloud, @Nonnull List<Plan> plans) {
+        JSONArray templates = new JSONArray();
+        for (Plan plan : plans) {
+            JSONObject byConstraint = new JSONObject();
+            for (Map.Entry<Constraint, Integer> entry : plan.getByConstraint().entrySet()) {
+                byConstraint.element(entry.getKey().name(), entry.getValue());
+            }
+            templates.add(new JSONObject()
+                    .element("template", plan.getTemplateName())
+                    .element("label", plan.getLabel())
+                    .element("launchType", plan.getLaunchType())
+                    .element("available", plan.getAvailable() != null ? plan.getAvailable() : JSONNull.getInstance())
+                    .element("constraint", plan.getConstraint() != null ? plan.getConstraint().name() : JSONNull.getInstance())
+                    .element("byConstraint", byConstraint)
+                    .element("inFlight", plan.getInFlight()));
+        }
+        return new JSONObject()
+                .element("cloud", cloud.name)
+                .element("cluster", cloud.getCluster())
+                .element("maxSlaves", cloud.getMaxSlaves())
+                .element("templates", templates);
+    }
+
+    /**
+     * The capacity left for one template.
+     */
+    static final class Plan {
+        private final String templateName;
+        private final String label;
+        private final String launchType;
+        private final Map<Constraint, Integer> byConstraint;
+        private final int inFlight;
+
+        Plan(ECSTaskTemplate template, Map<Constraint, Integer> byConstraint, int inFlight) {
+            this.templateName = template.getTemplateName();
+            this.label = template.getLabel();
+            this.launchType = template.getLaunchType();
+            this.byConstraint = byConstraint;
+            this.inFlight = inFlight;
+        }
+
+        String getTemplateName() {
+            return templateName;
+        }
+
+        String getLabel() {
+            return label;
+        }
+
+        String getLaunchType() {
+            return launchType;
+        }
+
+        /**
+         * How many agents the cluster could take by each constraint alone.
+         */
+        Map<Constraint, Integer> getByConstraint() {
+            return Collections.unmodifiableMap(byConstraint);
+        }
+
+        /**
+         * @return how many more agents could be placed, null if nothing limits them, e.g. Fargate without a maximum.
+         */
+        @CheckForNull
+        Integer getAvailable() {
+            return byConstraint.isEmpty() ? null : Collections.min(byConstraint.values());
+        }
+
+        /**
+         * @return the constraint which allows the fewest agents, the first one of {@link Constraint} among equals.
+         */
+        @CheckForNull
+        Constraint getConstraint() {
+            Constraint binding = null;
+            for (Map.Entry<Constraint, Integer> entry : byConstraint.entrySet()) {
+                if (binding == null || entry.getValue() < byConstraint.get(binding)) {
+                    binding = entry.getKey();
+                }
+            }
+            return binding;
+        }
+
+        /**
+         * Agents of the template which are being launched and may not hold their resources yet.
+         */
+        int getInFlight() {
+            return inFlight;
+        }
+    }
+}
@@ -13,4 +13,5 @@ interface ECSClient {
     ListTasksResult listTasks(ListTasksRequest request);
     DescribeTasksResult describeTasks(DescribeTasksRequest request);
     RunTaskResult runTask(RunTaskRequest request);
+    StartTaskResult startTask(StartTaskRequest request);
 }
@@ -25,27 +25,38 @@
 
 package com.cloudbees.jenkins.plugins.amazonecs;
 
+import com.amazonaws.AmazonClientException;
 import com.amazonaws.regions.Region;
 import com.amazonaws.regions.RegionUtils;
 import com.cloudbees.jenkins.plugins.awscredentials.AWSCredentialsHelper;
 import com.cloudbees.jenkins.plugins.awscredentials.AmazonWebServicesCredentials;
 
 import hudson.Extension;
+import hudson.Util;
 import hudson.model.Computer;
 import hudson.model.Descriptor;
 import hudson.model.Label;
+import hudson.model.Node;
 import hudson.slaves.Cloud;
 import hudson.slaves.NodeProvisioner;
 import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
+import jenkins.model.Jenkins;
 import jenkins.model.JenkinsLocationConfiguration;
+import net.sf.json.JSONObject;
 import org.apache.commons.lang.StringUtils;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -71,6 +82,19 @@ public class ECSCloud extends Cloud {
     private String jenkinsUrl;
     private int slaveTimoutInSeconds;
     private int maxSlaves;
+    private boolean reclaimIdleCapacity;
+    private boolean consolidateInstances;
+    private int jobAffinitySeconds;
+    private String autoScalingGroupName;
+    private boolean persistLaunchHistory;
+    private String otlpEndpoint;
+    private transient ECSService ecsService;
+    private transient ECSAutoScaler autoScaler;
+    private transient Map<String, ECSLaunchCircuitBreaker> circuitBreakers;
+    private transient Map<String, ECSLaunchStats> launchStats;
+    private transient ECSLaunchHistory launchHistory;
+    private transient ECSTaskDefinitionRegistrar taskDefinitionRegistrar;
+    private transient ECSTracer tracer;
 
     @DataBoundConstructor
     public ECSCloud(String name, String cluster, String regionName) {
@@ -83,8 +107,166 @@ public class ECSCloud extends Cloud {
         LOGGER.log(Level.INFO, "Create cloud {0} on ECS cluster {1} on the region {2}", new Object[]{name, cluster, regionName});
     }
 
-    ECSService getEcsService() {
-        return JenkinsWrapper.getECSService(credentialsId, regionName);
+    /**
+     * The service is kept for the lifetime of the cloud, so that periodic work does not build a new AWS client on
+     * every run. Saving the configuration creates a new cloud and with it a new service.
+     */
+    synchronized ECSService getEcsService() {
+        if (ecsService == null) {
+            ecsService = JenkinsWrapper.getECSService(credentialsId, regionName);
+        }
+        return ecsService;
+    }
+
+    /**
+     * @return the auto scaler of the Auto Scaling group of the cluster, null if no group is configured.
+     */
+    @CheckForNull
+    synchronized ECSAutoScaler getAutoScaler() {
+        if (StringUtils.isBlank(autoScalingGroupName)) {
+            return null;
+        }
+        if (autoScaler == null) {
+            autoScaler = new ECSAutoScaler(this);
+        }
+        return autoScaler;
+    }
+
+    /**
+     * The launch circuit breaker of the template, which starts out closed whenever the cloud is (re)configured.
+     */
+    @Nonnull
+    synchronized ECSLaunchCircuitBreaker getCircuitBreaker(@Nonnull ECSTaskTemplate template) {
+        if (circuitBreakers == null) {
+            circuitBreakers = new HashMap<>();
+        }
+        ECSLaunchCircuitBreaker breaker = circuitBreakers.get(template.getTemplateName());
+        if (breaker == null) {
+            breaker = new ECSLaunchCircuitBreaker(template.getTemplateName());
+            circuitBreakers.put(template.getTemplateName(), breaker);
+        }
+        return breaker;
+    }
+
+    /**
+     * The recent launch times of the template.
+     */
+    @Nonnull
+    synchronized ECSLaunchStats getLaunchStats(@Nonnull ECSTaskTemplate template) {
+        if (launchStats == null) {
+            launchStats = new HashMap<>();
+        }
+        ECSLaunchStats stats = launchStats.get(template.getTemplateName());
+        if (stats == null) {
+            stats = new ECSLaunchStats();
+            launchStats.put(template.getTemplateName(), stats);
+        }
+        return stats;
+    }
+
+    /**
+     * Keeps the task definitions of the templates registered for the current configuration.
+     */
+    @Nonnull
+    synchronized ECSTaskDefinitionRegistrar getTaskDefinitionRegistrar() {
+        if (taskDefinitionRegistrar == null) {
+            taskDefinitionRegistrar = new ECSTaskDefinitionRegistrar(this);
+        }
+        return taskDefinitionRegistrar;
+    }
+
+    /**
+     * Traces agent launches to the OpenTelemetry collector of the cloud, if one is configured.
+     */
+    @Nonnull
+    synchronized ECSTracer getTracer() {
+        if (tracer == null) {
+            tracer = new ECSTracer(otlpEndpoint, Computer.threadPoolForRemoting);
+        }
+        return tracer;
+    }
+
+    /**
+     * Why the task definitions of templates could not be registered, by template name, for the config page.
+     */
+    public SortedMap<String, String> getTaskDefinitionErrors() {
+        return getTaskDefinitionRegistrar().getErrors();
+    }
+
+    /**
+     * The recent launches of all templates, read from disk the first time if the history is persisted.
+     */
+    @Nonnull
+    public synchronized ECSLaunchHistory getLaunchHistory() {
+        if (launchHistory == null) {
+            launchHistory = ECSLaunchHistory.load(persistLaunchHistory
+                    ? ECSLaunchHistory.getFile(JenkinsWrapper.getInstance().getRootDir(), name) : null);
+        }
+        return launchHistory;
+    }
+
+    /**
+     * The recent launch times of all templates by template name, for the cloud page.
+     */
+    public Map<String, ECSLaunchStats> getLaunchStatistics() {
+        Map<String, ECSLaunchStats> statistics = new LinkedHashMap<>();
+        for (ECSTaskTemplate template : getTemplates()) {
+            statistics.put(template.getTemplateName(), getLaunchStats(template));
+        }
+        return statistics;
+    }
+
+    /**
+     * The ECS API calls made by this cloud since it was configured, per operation.
+     */
+    public SortedMap<String, Long> getApiCallCounts() {
+        return getEcsService().getApiCallCounts();
+    }
+
+    /**
+     * The count, latency and errors of the ECS API calls made by this cloud since it was configured, per operation.
+     */
+    public ECSApiMetrics getApiMetrics() {
+        return getEcsService().getApiMetrics();
+    }
+
+    /**
+     * The launch circuit breakers of all templates, for the cloud page.
+     */
+    public List<ECSLaunchCircuitBreaker> getCircuitBreakers() {
+        List<ECSLaunchCircuitBreaker> breakers = new ArrayList<>();
+        for (ECSTaskTemplate template : getTemplates()) {
+            breakers.add(getCircuitBreaker(template));
+        }
+        return breakers;
+    }
+
+    /**
+     * Serves at <code>/cloud/&lt;name&gt;/capacity</code> how many more agents of each template the cluster could take
+     * right now, what limits them and how many are being launched, see {@link ECSCapacityPlanner}. Nothing is launched.
+     */
+    public void doCapacity(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        JenkinsWrapper.getInstance().checkPermission(Jenkins.ADMINISTER);
+        JSONObject plan;
+        try {
+            plan = ECSCapacityPlanner.toJson(this, new ECSCapacityPlanner(this).plan());
+        } catch (AmazonClientException e) {
+            LOGGER.log(Level.WARNING, "Could not plan the capacity of cloud " + name, e);
+            rsp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Could not describe cluster " + cluster + ": " + e.getMessage());
+            return;
+        }
+        rsp.setContentType("application/json;charset=UTF-8");
+        rsp.getWriter().print(plan.toString(2));
+    }
+
+    /**
+     * Serves the provisioning health of the cloud at <code>/cloud/&lt;name&gt;/status</code>, from memory only, see
+     * {@link ECSCloudStatus}.
+     */
+    public void doStatus(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        JenkinsWrapper.getInstance().checkPermission(Jenkins.ADMINISTER);
+        rsp.setContentType("application/json;charset=UTF-8");
+        rsp.getWriter().print(ECSCloudStatus.toJson(this, getAgents(), ECSTaskStopper.get(), System.currentTimeMillis()).toString(2));
     }
 
     private ECSInitializingSlavesResolver initializingSlavesResolver() {
@@ -99,6 +281,25 @@ public class ECSCloud extends Cloud {
         return cluster;
     }
 
+    /**
+     * The <code>startedBy</code> value of the tasks launched by this cloud, which is how they are told apart from
+     * other tasks in the cluster. It starts with a hash of the Jenkins URL of the cloud, so that the orphaned task
+     * reaper never stops the tasks of a cloud of the same name on another controller sharing the cluster. ECS allows up
+     * to 36 letters, numbers, hyphens and underscores.
+     */
+    String getTaskStartedBy() {
+        String controller = Util.getDigestOf(StringUtils.defaultString(jenkinsUrl)).substring(0, 8);
+        return StringUtils.left(("jenkins-" + controller + "-" + name).replaceAll("[^a-zA-Z0-9_-]", "-"), 36);
+    }
+
+    /**
+     * The <code>startedBy</code> value of the image pre-pull tasks, which must differ from {@link #getTaskStartedBy()}
+     * so that they are not mistaken for orphaned agent tasks.
+     */
+    String getPrePullStartedBy() {
+        return StringUtils.left(("prepull-" + name).replaceAll("[^a-zA-Z0-9_-]", "-"), 36);
+    }
+
     //region Templates
     @Nonnull
     public List<ECSTaskTemplate> getTemplates() {
@@ -125,9 +326,10 @@ public class ECSCloud extends Cloud {
     }
 
     @DataBoundSetter
-    public void setCredentialsId(String credentialsId)
+    public synchronized void setCredentialsId(String credentialsId)
     {
         this.credentialsId=credentialsId;
+        this.ecsService=null;
     }
 
     public ECSCloud withCredentialsId(String credentialsId)
@@ -192,6 +394,108 @@ public class ECSCloud extends Cloud {
     }
     //endregion
 
+    //region ReclaimIdleCapacity
+    public boolean isReclaimIdleCapacity() {
+        return reclaimIdleCapacity;
+    }
+
+    @DataBoundSetter
+    public void setReclaimIdleCapacity(boolean reclaimIdleCapacity) {
+        this.reclaimIdleCapacity = reclaimIdleCapacity;
+    }
+
+    public ECSCloud withReclaimIdleCapacity(boolean reclaimIdleCapacity)
+    {
+        setReclaimIdleCapacity(reclaimIdleCapacity);
+        return this;
+    }
+    //endregion
+
+    //region ConsolidateInstances
+    public boolean isConsolidateInstances() {
+        return consolidateInstances;
+    }
+
+    @DataBoundSetter
+    public void setConsolidateInstances(boolean consolidateInstances) {
+        this.consolidateInstances = consolidateInstances;
+    }
+
+    public ECSCloud withConsolidateInstances(boolean consolidateInstances)
+    {
+        setConsolidateInstances(consolidateInstances);
+        return this;
+    }
+    //endregion
+
+    //region JobAffinitySeconds
+    public int getJobAffinitySeconds() {
+        return jobAffinitySeconds;
+    }
+
+    @DataBoundSetter
+    public void setJobAffinitySeconds(int jobAffinitySeconds) {
+        this.jobAffinitySeconds = jobAffinitySeconds;
+    }
+
+    public ECSCloud withJobAffinitySeconds(int jobAffinitySeconds)
+    {
+        setJobAffinitySeconds(jobAffinitySeconds);
+        return this;
+    }
+    //endregion
+
+    //region AutoScalingGroupName
+    public String getAutoScalingGroupName() {
+        return autoScalingGroupName;
+    }
+
+    @DataBoundSetter
+    public void setAutoScalingGroupName(String autoScalingGroupName) {
+        this.autoScalingGroupName = StringUtils.trimToNull(autoScalingGroupName);
+    }
+
+    public ECSCloud withAutoScalingGroupName(String autoScalingGroupName)
+    {
+        setAutoScalingGroupName(autoScalingGroupName);
+        return this;
+    }
+    //endregion
+
+    //region persistLaunchHistory
+    public boolean isPersistLaunchHistory() {
+        return persistLaunchHistory;
+    }
+
+    @DataBoundSetter
+    public void setPersistLaunchHistory(boolean persistLaunchHistory) {
+        this.persistLaunchHistory = persistLaunchHistory;
+    }
+
+    public ECSCloud withPersistLaunchHistory(boolean persistLaunchHistory)
+    {
+        setPersistLaunchHistory(persistLaunchHistory);
+        return this;
+    }
+    //endregion
+
+    //region otlpEndpoint
+    public String getOtlpEndpoint() {
+        return otlpEndpoint;
+    }
+
+    @DataBoundSetter
+    public void setOtlpEndpoint(String otlpEndpoint) {
+        this.otlpEndpoint = StringUtils.trimToNull(otlpEndpoint);
+    }
+
+    public ECSCloud withOtlpEndpoint(String otlpEndpoint)
+    {
+        setOtlpEndpoint(otlpEndpoint);
+        return this;
+    }
+    //endregion
+
     // region Jenkins URl
     public String getJenkinsUrl() {
         return jenkinsUrl;
@@ -236,27 +540,141 @@ public class ECSCloud extends Cloud {
         return null;
     }
 
+    /**
+     * All templates whose labels match, in configuration order.
+     */
+    @Nonnull
+    public List<ECSTaskTemplate> getTemplates(Label label) {
+        List<ECSTaskTemplate> matching = new ArrayList<>();
+        if (label == null) {
+            return matching;
+        }
+        for (ECSTaskTemplate t : getTemplates()) {
+            if (label.matches(t.getLabelSet())) {
+                matching.add(t);
+            }
+        }
+        return matching;
+    }
+
+
+    /**
+     * The ECS agents of this cloud which currently exist in Jenkins.
+     */
+    @Nonnull
+    List<ECSSlave> getAgents() {
+        List<ECSSlave> agents = new ArrayList<>();
+        for (Node node : JenkinsWrapper.getInstance().getNodes()) {
+            if (node instanceof ECSSlave) {
+                try {
+                    ECSCloud cloud = ((ECSSlave) node).getCloud();
+                    if (cloud != null && name.equals(cloud.name)) {
+                        agents.add((ECSSlave) node);
+                    }
+                } catch (IllegalStateException e) {
+                    LOGGER.log(Level.FINE, "Cloud of agent {0} has been removed", node.getNodeName());
+                }
+            }
+        }
+        return agents;
+    }
+
+    /**
+     * Starts an agent from the template outside of the regular provisioning, to replace one which is going away.
+     * Returns right away, the capacity is checked in the background and only once, so that the caller, e.g. the
+     * task monitor, is not held up while a draining cluster has no room.
+     */
+    void provisionReplacement(@Nonnull ECSTaskTemplate template) {
+        ECSLaunchCircuitBreaker breaker = getCircuitBreaker(template);
+        if (!breaker.allowLaunch(System.currentTimeMillis())) {
+            LOGGER.log(Level.WARNING, "Cannot start a replacement agent for template {0}, its launches keep failing", template.getTemplateName());
+            return;
+        }
+        Computer.threadPoolForRemoting.submit(() -> {
+            try {
+                Future<Node> agent = launch(template, null, breaker, false);
+                if (agent == null) {
+                    LOGGER.log(Level.WARNING, "Cannot start a replacement agent for template {0}, cloud {1} is at its limit", new Object[]{template.getTemplateName(), name});
+                    return;
+                }
+                LOGGER.log(Level.INFO, "Will provision replacement {0}", template.getDisplayName());
+                JenkinsWrapper.getInstance().addNode(agent.get());
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Could not start a replacement agent for template " + template.getTemplateName(), e);
+            }
+        });
+    }
+
+    /**
+     * Finds the template an agent was created from, by template name and label since templates are not persisted
+     * with the agent.
+     */
+    ECSTaskTemplate findTemplate(String templateName, String label) {
+        for (ECSTaskTemplate t : getTemplates()) {
+            if (StringUtils.equals(t.getTemplateName(), templateName) && StringUtils.equals(t.getLabel(), label)) {
+                return t;
+            }
+        }
+        return null;
+    }
 
     @Override
     public Collection<NodeProvisioner.PlannedNode> provision(Label label, int excessWorkload) {
         try {
-            Set<String> allInProvisioning = initializingSlavesResolver().getInitializingECSSlaves(label);
+            ECSInitializingSlavesResolver resolver = initializingSlavesResolver();
+            Set<String> allInProvisioning = resolver.getInitializingECSSlaves(label);
             LOGGER.log(Level.FINE, () -> "Excess Workload : " + excessWorkload);
             LOGGER.log(Level.FINE, () -> "INITIALIZING ECS Agents : " + allInProvisioning.size());
             int toBeProvisioned = Math.max(0, excessWorkload - allInProvisioning.size());
             LOGGER.log(Level.INFO, "Excess workload after pending ECS agents: {0}", toBeProvisioned);
 
             List<NodeProvisioner.PlannedNode> r = new ArrayList<>();
-            final ECSTaskTemplate template = getTemplate(label);
+            List<ECSTaskTemplate> candidates = getTemplates(label);
+            ECSAutoScaler scaler = getAutoScaler();
+            ECSTemplateSelector selector = new ECSTemplateSelector(this, candidates,
+                    toBeProvisioned > 0 && needsHeadroom(candidates, scaler) ? getEcsService().describeContainerInstances(cluster) : null,
+                    resolver.countInitializingByTemplate(label));
 
             for (int i = 1; i <= toBeProvisioned; i++) {
-                if (!getEcsService().checkIfAdditionalSlaveCanBeProvisioned(cluster, template, maxSlaves)) {
+                ECSTaskTemplate template = selector.next();
+                if (template == null) {
                     break;
                 }
+                // only the last candidate waits for capacity, the others give way to a template which has room now
+                boolean lastCandidate = selector.getRemaining() == 1;
+                if (!lastCandidate && !selector.hasCapacity(template)) {
+                    LOGGER.log(Level.FINE, "Not provisioning {0}, the cluster has no room for it", template.getDisplayName());
+                    selector.exclude(template);
+                    i--;
+                    continue;
+                }
+                ECSLaunchCircuitBreaker breaker = getCircuitBreaker(template);
+                if (!breaker.allowLaunch(System.currentTimeMillis())) {
+                    LOGGER.log(Level.INFO, "Not provisioning {0}, its launches keep failing", template.getDisplayName());
+                    selector.exclude(template);
+                    i--;
+                    continue;
+                }
+                if (reclaimIdleCapacity && !selector.hasCapacity(template)) {
+                    ECSIdleCapacityReclaimer.reclaim(template, getAgents());
+                }
+                Future<Node> agent = launch(template, label, breaker, lastCandidate);
+                if (agent == null) {
+                    selector.exclude(template);
+                    i--;
+                    continue;
+                }
                 LOGGER.log(Level.INFO, "Will provision {0}, for label: {1}", new Object[]{template.getDisplayName(), label});
 
-                r.add(new NodeProvisioner.PlannedNode(template.getDisplayName(), Computer.threadPoolForRemoting
-                        .submit(new ProvisioningCallback(this, template)), 1));
+                r.add(new NodeProvisioner.PlannedNode(template.getDisplayName(), agent, 1));
+            }
+
+            if (scaler != null) {
+                for (ECSTaskTemplate template : candidates) {
+                    if (!selector.hasCapacity(template)) {
+                        scaler.requestCapacity(template, selector.getPlanned(template));
+                    }
+                }
             }
             return r;
         } catch (Exception e) {
@@ -265,6 +683,53 @@ public class ECSCloud extends Cloud {
         }
     }
 
+    /**
+     * Starts creating an agent from the template if the cluster and the maximum number of agents have room for it.
+     * The launch must have been allowed by the circuit breaker of the template, a probe is handed back to it when
+     * there is no room.
+     *
+     * @param waitForCapacity whether to wait up to the launch timeout of the template for the cluster to have room.
+     * @return the agent being created, or null if there is no room for it.
+     */
+    @CheckForNull
+    private Future<Node> launch(@Nonnull ECSTaskTemplate template, @CheckForNull Label label, @Nonnull ECSLaunchCircuitBreaker breaker,
+                                boolean waitForCapacity) {
+        boolean probe = breaker.getState() == ECSLaunchCircuitBreaker.State.HALF_OPEN;
+        ECSSpan launchSpan = getTracer().startTrace("ECS agent launch")
+                .setAttribute("ecs.cloud", name)
+                .setAttribute("ecs.cluster", cluster)
+                .setAttribute("ecs.template", template.getTemplateName())
+                .setAttribute("jenkins.label", String.valueOf(label));
+        ECSSpan capacitySpan = launchSpan.startChild("capacity check");
+        boolean canProvision;
+        try (ECSSpan.Scope scope = capacitySpan.makeCurrent()) {
+            canProvision = getEcsService().checkIfAdditionalSlaveCanBeProvisioned(cluster, template, maxSlaves, waitForCapacity);
+        } finally {
+            capacitySpan.end();
+        }
+        if (!canProvision) {
+            launchSpan.end("No capacity for another agent");
+            if (probe) {
+                breaker.cancelProbe();
+            }
+            return null;
+        }
+        return Computer.threadPoolForRemoting.submit(new ProvisioningCallback(this, template, launchSpan));
+    }
+
+    /**
+     * Whether the free capacity of the cluster is needed to provision the candidates, which costs a describe of all
+     * container instances: to pick between several templates, or to reclaim or scale up capacity for EC2 templates.
+     */
+    private boolean needsHeadroom(List<ECSTaskTemplate> candidates, @CheckForNull ECSAutoScaler scaler) {
+        for (ECSTaskTemplate template : candidates) {
+            if (!template.isFargate()) {
+                return candidates.size() > 1 || reclaimIdleCapacity || scaler != null;
+            }
+        }
+        return false;
+    }
+
     @Extension
     public static class DescriptorImpl extends Descriptor<Cloud> {
 
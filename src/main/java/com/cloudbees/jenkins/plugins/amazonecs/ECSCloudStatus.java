@@ -0,0 +1,141 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import javax.annotation.Nonnull;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The provisioning health of a cloud as JSON: its agents by launch state, the launches in flight, the recent failed
+ * launches by class, the circuit breakers of its templates, its ECS API calls, errors and throttles, and how the
+ * {@link ECSTaskStopper} shared by all clouds is doing.
+ *
+ * Everything comes from what the cloud keeps in memory, no ECS API is called, so the status can be polled often.
+ */
+final class ECSCloudStatus {
+
+    /**
+     * How far back the launch history counts as recent.
+     */
+    static final long RECENT_MINUTES = Long.getLong(ECSCloudStatus.class.getName() + ".recentMinutes", 60);
+
+    /**
+     * The class of failures of launches which ended before their task was stopped by ECS, e.g. because RunTask failed.
+     * Other failed launches are counted by the {@link ECSTaskFailure.Category} their stopped task was classified as.
+     */
+    static final String LAUNCH_FAILURE = "LAUNCH";
+
+    private ECSCloudStatus() {
+    }
+
+    @Nonnull
+    static JSONObject toJson(@Nonnull ECSCloud cloud, @Nonnull List<ECSSlave> agents, @Nonnull ECSTaskStopper stopper, long now) {
+        Map<ECSSlaveHelper.State, Integer> byState = new EnumMap<>(ECSSlaveHelper.State.class);
+        for (ECSSlaveHelper.State state : ECSSlaveHelper.State.values()) {
+            byState.put(state, 0);
+        }
+        JSONArray inFlight = new JSONArray();
+        for (ECSSlave agent : agents) {
+            ECSSlaveHelper helper = agent.getHelper();
+            ECSSlaveHelper.State state = helper.getTaskState();
+            if (state != null) {
+                byState.put(state, byState.get(state) + 1);
+            }
+            if (ECSInitializingSlavesResolver.isInitializing(state)) {
+                ECSTaskTemplate template = helper.getTemplate();
+                JSONObject launch = new JSONObject()
+                        .element("agent", agent.getNodeName())
+                        .element("template", template != null ? template.getTemplateName() : null)
+                        .element("state", state.name())
+                        .element("taskArn", helper.getTaskArn());
+                ECSLaunchRecord record = ECSLaunchTimelines.get(agent.getNodeName());
+                if (record != null) {
+                    launch.element("started", record.getStarted())
+                            .element("seconds", TimeUnit.MILLISECONDS.toSeconds(now - record.getStarted()));
+                }
+                inFlight.add(launch);
+            }
+        }
+        JSONObject agentsByState = new JSONObject();
+        for (Map.Entry<ECSSlaveHelper.State, Integer> entry : byState.entrySet()) {
+            agentsByState.element(entry.getKey().name(), entry.getValue());
+        }
+
+        int succeeded = 0;
+        Map<String, Integer> failures = new TreeMap<>();
+        long recent = now - TimeUnit.MINUTES.toMillis(RECENT_MINUTES);
+        for (ECSLaunchRecord record : cloud.getLaunchHistory().getRecords()) {
+            if (record.getStarted() < recent) {
+                continue;
+            }
+            if (record.getOutcome() == ECSLaunchRecord.Outcome.SUCCEEDED) {
+                succeeded++;
+            } else if (record.getOutcome() == ECSLaunchRecord.Outcome.FAILED) {
+                String failureClass = record.getFailureCategory() != null ? record.getFailureCategory().name() : LAUNCH_FAILURE;
+                Integer count = failures.get(failureClass);
+                failures.put(failureClass, count == null ? 1 : count + 1);
+            }
+        }
+        int failed = 0;
+        for (int count : failures.values()) {
+            failed += count;
+        }
+
+        boolean degraded = false;
+        JSONArray breakers = new JSONArray();
+        for (ECSLaunchCircuitBreaker breaker : cloud.getCircuitBreakers()) {
+            degraded |= breaker.getState() != ECSLaunchCircuitBreaker.State.CLOSED;
+            breakers.add(new JSONObject()
+                    .element("template", breaker.getTemplateName())
+                    .element("state", breaker.getState().name())
+                    .element("consecutiveFailures", breaker.getConsecutiveFailures())
+                    .element("openUntil", breaker.getOpenUntil())
+                    .element("lastFailure", breaker.getLastFailure()));
+        }
+
+        JSONObject api = new JSONObject();
+        for (Map.Entry<String, ECSApiMetrics.Operation> entry : cloud.getApiMetrics().getOperations().entrySet()) {
+            api.element(entry.getKey(), new JSONObject()
+                    .element("calls", entry.getValue().getCalls())
+                    .element("errors", entry.getValue().getErrorCount())
+                    .element("throttles", entry.getValue().getThrottles()));
+        }
+
+        JSONArray stopFailures = new JSONArray();
+        for (ECSTaskStopper.Result result : stopper.getRecentResults()) {
+            if (result.getOutcome() == ECSTaskStopper.Outcome.FAILED) {
+                stopFailures.add(new JSONObject()
+                        .element("taskArn", result.getTaskArn())
+                        .element("cluster", result.getClusterArn())
+                        .element("attempts", result.getAttempts())
+                        .element("error", result.getError())
+                        .element("timestamp", result.getTimestamp()));
+            }
+        }
+
+        return new JSONObject()
+                .element("cloud", cloud.name)
+                .element("cluster", cloud.getCluster())
+                .element("degraded", degraded)
+                .element("agents", agentsByState)
+                .element("inFlight", inFlight)
+                .element("recentLaunches", new JSONObject()
+                        .element("minutes", RECENT_MINUTES)
+                        .element("succeeded", succeeded)
+                        .element("failed", failed)
+                        .element("failures", failures))
+                .element("circuitBreakers", breakers)
+                .element("api", api)
+                .element("taskStopper", new JSONObject()
+                        .element("pending", stopper.getPendingCount())
+                        .element("stopped", stopper.getStoppedCount())
+                        .element("failed", stopper.getFailedCount())
+                        .element("throttled", stopper.getThrottledCount())
+                        .element("recentFailures", stopFailures));
+    }
+}
@@ -1,5 +1,6 @@
 package com.cloudbees.jenkins.plugins.amazonecs;
 
+import hudson.slaves.OfflineCause;
 
 public interface ECSComputer {
     ECSSlave getECSNode();
@@ -9,4 +10,5 @@ public interface ECSComputer {
     long getIdleStartMilliseconds();
     boolean isIdle();
     void setAcceptingTasks(boolean acceptingTasks);
+    void setTemporarilyOffline(boolean temporarilyOffline, OfflineCause cause);
 }
@@ -0,0 +1,106 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Frees cluster capacity for a template by removing idle agents of other templates.
+ *
+ * Agents which are kept around by {@link ECSTaskTemplate#getIdleTerminationMinutes()} hold on to their cpu and memory
+ * reservation, so builds for another label can starve until the launch timeout even though nothing is running. When
+ * the cloud opts in, the agents that have been idle the longest on one container instance are stopped until their
+ * reservations add up to what the waiting template needs, since a task can only use what is freed on a single instance.
+ */
+final class ECSIdleCapacityReclaimer {
+
+    private static final Logger LOGGER = Logger.getLogger(ECSIdleCapacityReclaimer.class.getName());
+
+    private ECSIdleCapacityReclaimer() {
+    }
+
+    /**
+     * Stops idle agents of other templates to make room for one task of the given template.
+     *
+     * @return the agents which were stopped, none if the idle agents together would not free enough capacity.
+     */
+    static List<ECSSlave> reclaim(@Nonnull ECSTaskTemplate template, @Nonnull Collection<ECSSlave> agents) {
+        List<ECSSlave> evicted = selectEvictions(template, agents);
+        for (ECSSlave agent : evicted) {
+            LOGGER.log(Level.INFO, "Stopping idle agent {0} to free capacity for template {1}",
+                    new Object[]{agent.getNodeName(), template.getTemplateName()});
+            agent.getHelper().setTaskState(ECSSlaveHelper.State.STOPPING);
+        }
+        return evicted;
+    }
+
+    /**
+     * Picks the container instance on which the fewest idle agents free enough capacity for the template, and the
+     * longest idle agents on it.
+     */
+    static List<ECSSlave> selectEvictions(@Nonnull ECSTaskTemplate template, @Nonnull Collection<ECSSlave> agents) {
+        List<ECSSlave> candidates = new ArrayList<>();
+        for (ECSSlave agent : agents) {
+            if (isEvictable(agent, template)) {
+                candidates.add(agent);
+            }
+        }
+        candidates.sort((a, b) -> Long.compare(a.getECSComputer().getIdleStartMilliseconds(), b.getECSComputer().getIdleStartMilliseconds()));
+        Map<String, List<ECSSlave>> byInstance = new LinkedHashMap<>();
+        for (ECSSlave candidate : candidates) {
+            byInstance.computeIfAbsent(candidate.getHelper().getContainerInstanceArn(), arn -> new ArrayList<>()).add(candidate);
+        }
+
+        List<ECSSlave> evicted = null;
+        for (List<ECSSlave> instanceCandidates : byInstance.values()) {
+            List<ECSSlave> instanceEvictions = selectEvictionsOnInstance(template, instanceCandidates);
+            if (instanceEvictions != null && (evicted == null || instanceEvictions.size() < evicted.size())) {
+                evicted = instanceEvictions;
+            }
+        }
+        if (evicted == null) {
+            LOGGER.log(Level.FINE, "Idle agents cannot free enough capacity on any container instance for template {0}", template.getTemplateName());
+            return new ArrayList<>();
+        }
+        return evicted;
+    }
+
+    /**
+     * @return the longest idle agents of one container instance whose reservations add up to what the template needs,
+     * or null if all of them together do not.
+     */
+    private static List<ECSSlave> selectEvictionsOnInstance(ECSTaskTemplate template, List<ECSSlave> candidates) {
+        List<ECSSlave> evicted = new ArrayList<>();
+        int cpu = 0;
+        int memory = 0;
+        for (ECSSlave candidate : candidates) {
+            if (cpu >= template.getCpu() && memory >= template.getMemoryConstraint()) {
+                break;
+            }
+            ECSTaskTemplate candidateTemplate = candidate.getHelper().getTemplate();
+            cpu += candidateTemplate.getCpu();
+            memory += candidateTemplate.getMemoryConstraint();
+            evicted.add(candidate);
+        }
+        return cpu >= template.getCpu() && memory >= template.getMemoryConstraint() ? evicted : null;
+    }
+
+    private static boolean isEvictable(ECSSlave agent, ECSTaskTemplate template) {
+        ECSSlaveHelper helper = agent.getHelper();
+        ECSComputer computer = agent.getECSComputer();
+        if (helper == null || computer == null || helper.getTaskState() != ECSSlaveHelper.State.RUNNING || !computer.isIdle()) {
+            return false;
+        }
+        ECSTaskTemplate agentTemplate = helper.getTemplate();
+        return agentTemplate != null
+                && helper.getContainerInstanceArn() != null
+                && !template.getTemplateName().equals(agentTemplate.getTemplateName())
+                && !agentTemplate.isFargate()
+                && !agentTemplate.isSingleRunTask();
+    }
+}
@@ -0,0 +1,177 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.ecs.model.ContainerInstance;
+import com.amazonaws.services.ecs.model.Task;
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import hudson.slaves.Cloud;
+import jenkins.model.Jenkins;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+/**
+ * Keeps the images of the EC2 templates with image pre-pull enabled cached on every container instance of their
+ * cluster, so that agent tasks on freshly scaled instances do not wait for the image to be pulled.
+ *
+ * Every minute the container instances of the cluster are compared with the images already pulled onto them. A short
+ * lived task with the image of the template is started on each instance which joined the cluster since, and on every
+ * instance once the image of a template changes. An image only counts as pulled once its task has stopped without an
+ * image pull error, a failed pull is started again on the next pass.
+ */
+public final class ECSImagePrePuller {
+
+    private static final Logger LOGGER = Logger.getLogger(ECSImagePrePuller.class.getName());
+
+    /** Images pulled per container instance ARN, per cluster. */
+    private final Map<String, Map<String, Set<String>>> pulledImages = new HashMap<>();
+    /** Pre-pull tasks which have not been seen stopped yet, per task ARN, per cluster. */
+    private final Map<String, Map<String, PendingPull>> pendingPulls = new HashMap<>();
+
+    /**
+     * Pre-pulls the images of the templates of the cloud onto the container instances which do not have them yet.
+     */
+    synchronized void prePull(@Nonnull ECSCloud cloud) {
+        List<ECSTaskTemplate> templates = new ArrayList<>();
+        for (ECSTaskTemplate template : cloud.getTemplates()) {
+            // the image of an overridden task definition is not known without describing it
+            if (template.isPrePullImage() && !template.isFargate() && template.getTaskDefinitionOverride() == null) {
+                templates.add(template);
+            }
+        }
+        if (templates.isEmpty()) {
+            return;
+        }
+        ECSService service = cloud.getEcsService();
+        Map<String, Set<String>> previouslyPulled = pulledImages.get(cloud.getCluster());
+        Map<String, Set<String>> pulled = new HashMap<>();
+        for (ContainerInstance instance : service.describeContainerInstances(cloud.getCluster())) {
+            if ("ACTIVE".equals(instance.getStatus()) && Boolean.TRUE.equals(instance.getAgentConnected())) {
+                Set<String> images = previouslyPulled == null ? null : previouslyPulled.get(instance.getContainerInstanceArn());
+                pulled.put(instance.getContainerInstanceArn(), images == null ? new HashSet<>() : images);
+            }
+        }
+        pulledImages.put(cloud.getCluster(), pulled);
+        Map<String, PendingPull> pending = pendingPulls.get(cloud.getCluster());
+        if (pending == null) {
+            pending = new HashMap<>();
+            pendingPulls.put(cloud.getCluster(), pending);
+        }
+        checkPendingPulls(service, cloud.getCluster(), pending, pulled);
+
+        for (ECSTaskTemplate template : templates) {
+            List<String> missing = new ArrayList<>();
+            for (Map.Entry<String, Set<String>> entry : pulled.entrySet()) {
+                if (!entry.getValue().contains(template.getImage()) && !isPulling(pending, entry.getKey(), template.getImage())) {
+                    missing.add(entry.getKey());
+                }
+            }
+            if (missing.isEmpty()) {
+                continue;
+            }
+            LOGGER.log(Level.INFO, "Pre-pulling image {0} of template {1} on {2} container instance(s)",
+                    new Object[]{template.getImage(), template.getTemplateName(), missing.size()});
+            try {
+                for (Task task : service.prePullImage(cloud, template, missing)) {
+                    pending.put(task.getTaskArn(), new PendingPull(task.getContainerInstanceArn(), template.getImage()));
+                }
+            } catch (AmazonClientException e) {
+                LOGGER.log(Level.WARNING, "Could not pre-pull image " + template.getImage() + " of template " + template.getTemplateName(), e);
+            }
+        }
+    }
+
+    /**
+     * Counts the images of the pre-pull tasks which stopped without an image pull error as pulled, and forgets the
+     * pre-pull tasks which failed or which ECS does not know anymore so that they are started again.
+     */
+    private static void checkPendingPulls(ECSService service, String cluster, Map<String, PendingPull> pending, Map<String, Set<String>> pulled) {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<String> missingTaskArns = new ArrayList<>();
+        for (Task task : service.describeTasks(cluster, pending.keySet(), missingTaskArns)) {
+            if (!"STOPPED".equals(task.getLastStatus())) {
+                continue;
+            }
+            PendingPull pull = pending.remove(task.getTaskArn());
+            if (pull == null) {
+                continue;
+            }
+            ECSTaskFailure failure = ECSTaskFailure.classify(task);
+            if (failure.getCategory() == ECSTaskFailure.Category.IMAGE_PULL) {
+                LOGGER.log(Level.WARNING, "Could not pre-pull image {0} on {1}: {2}", new Object[]{pull.image, pull.containerInstanceArn, failure.getReason()});
+                continue;
+            }
+            Set<String> images = pulled.get(pull.containerInstanceArn);
+            if (images != null) {
+                images.add(pull.image);
+            }
+        }
+        for (String taskArn : missingTaskArns) {
+            pending.remove(taskArn);
+        }
+    }
+
+    private static boolean isPulling(Map<String, PendingPull> pending, String containerInstanceArn, String image) {
+        for (PendingPull pull : pending.values()) {
+            if (pull.containerInstanceArn.equals(containerInstanceArn) && pull.image.equals(image)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class PendingPull {
+        private final String containerInstanceArn;
+        private final String image;
+
+        private PendingPull(String containerInstanceArn, String image) {
+            this.containerInstanceArn = containerInstanceArn;
+            this.image = image;
+        }
+    }
+
+    @Extension
+    public static final class PrePullWork extends AsyncPeriodicWork {
+
+        private final ECSImagePrePuller prePuller = new ECSImagePrePuller();
+
+        public PrePullWork() {
+            super("ECS image pre-pull");
+        }
+
+        @Override
+        public long getRecurrencePeriod() {
+            return MINUTES.toMillis(1);
+        }
+
+        @Override
+        protected void execute(TaskListener listener) {
+            Jenkins jenkins = JenkinsWrapper.getInstance();
+            if (jenkins == null) {
+                return;
+            }
+            for (Cloud c : jenkins.clouds) {
+                if (c instanceof ECSCloud) {
+                    try {
+                        prePuller.prePull((ECSCloud) c);
+                    } catch (RuntimeException e) {
+                        LOGGER.log(Level.WARNING, "Failed to pre-pull images for cloud " + c.name, e);
+                    }
+                }
+            }
+        }
+    }
+}
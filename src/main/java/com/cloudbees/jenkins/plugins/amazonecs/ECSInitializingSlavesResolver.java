@@ -5,7 +5,9 @@ import hudson.model.Label;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import static com.cloudbees.jenkins.plugins.amazonecs.ECSSlaveHelper.*;
@@ -15,6 +17,13 @@ class ECSInitializingSlavesResolver {
 
     private static final Set<State> initializingStates = new HashSet<>(Arrays.asList(State.INITIALIZING, State.TASK_DEFINITION_CREATED, State.TASK_LAUNCHED, State.TASK_CREATED));
 
+    /**
+     * Whether an agent in this state is still being launched.
+     */
+    static boolean isInitializing(@CheckForNull State state) {
+        return initializingStates.contains(state);
+    }
+
     /**
      * Returns the agents in provisioning for the current label.
      *
@@ -30,7 +39,7 @@ class ECSInitializingSlavesResolver {
             for (Object node : nodes) {
                 if (ECSSlave.class.isInstance(node)) {
                     ECSSlave slave = (ECSSlave) node;
-                    if (initializingStates.contains(slave.getHelper().getTaskState())) {
+                    if (isInitializing(slave.getHelper().getTaskState())) {
                         result.add(slave.getNodeName());
                     }
                 }
@@ -39,6 +48,29 @@ class ECSInitializingSlavesResolver {
         return result;
     }
 
+    /**
+     * Counts the agents in provisioning for the current label by the name of their template.
+     *
+     * @param label The label being checked
+     * @return The number of agents in provisioning, by template name.
+     */
+    @Nonnull
+    Map<String, Integer> countInitializingByTemplate(@CheckForNull Label label) {
+        Map<String, Integer> result = new HashMap<>();
+        if (label != null) {
+            for (Object node : getNodes(label)) {
+                if (ECSSlave.class.isInstance(node)) {
+                    ECSSlaveHelper helper = ((ECSSlave) node).getHelper();
+                    if (isInitializing(helper.getTaskState()) && helper.getTemplate() != null) {
+                        Integer count = result.get(helper.getTemplate().getTemplateName());
+                        result.put(helper.getTemplate().getTemplateName(), count == null ? 1 : count + 1);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
     Object[] getNodes(Label label)
     {
         return label.getNodes().toArray();
@@ -0,0 +1,96 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import javax.annotation.Nonnull;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+/**
+ * Orders idle termination so that container instances empty out instead of each keeping a single agent.
+ *
+ * The idle timeout of an agent is scaled by how many agents of the cloud share its container instance, relative to the
+ * busiest instance. Agents on sparse instances are therefore removed first, while agents on the busiest instance keep
+ * the full idle timeout of their template.
+ *
+ * The retention strategy checks every agent in turn, so the agents by instance of a cloud are counted once per
+ * {@link #LOAD_MILLIS} and shared by the checks of one pass rather than counted for every agent.
+ */
+final class ECSInstanceConsolidator {
+
+    private static final long MIN_IDLE_TIMEOUT_MILLIS = MINUTES.toMillis(1);
+
+    static final long LOAD_MILLIS = Long.getLong(ECSInstanceConsolidator.class.getName() + ".loadMillis", 10000);
+
+    private static final Map<ECSCloud, Load> LOADS = new WeakHashMap<>();
+
+    private ECSInstanceConsolidator() {
+    }
+
+    static long getIdleTimeoutMillis(@Nonnull ECSSlave agent, @Nonnull Collection<ECSSlave> agents, long idleTimeoutMillis) {
+        return new Load(agents, 0).getIdleTimeoutMillis(agent, idleTimeoutMillis);
+    }
+
+    static long getIdleTimeoutMillis(@Nonnull ECSSlave agent, @Nonnull ECSCloud cloud, long idleTimeoutMillis, long now) {
+        return getLoad(cloud, now).getIdleTimeoutMillis(agent, idleTimeoutMillis);
+    }
+
+    /**
+     * The agents by instance of the cloud, counted again once they are older than {@link #LOAD_MILLIS}.
+     */
+    @Nonnull
+    static Load getLoad(@Nonnull ECSCloud cloud, long now) {
+        synchronized (LOADS) {
+            Load load = LOADS.get(cloud);
+            if (load == null || now - load.countedAt > LOAD_MILLIS) {
+                load = new Load(cloud.getAgents(), now);
+                LOADS.put(cloud, load);
+            }
+            return load;
+        }
+    }
+
+    static Map<String, Integer> countAgentsByInstance(@Nonnull Collection<ECSSlave> agents) {
+        Map<String, Integer> result = new HashMap<>();
+        for (ECSSlave agent : agents) {
+            ECSSlaveHelper helper = agent.getHelper();
+            if (helper == null || helper.getContainerInstanceArn() == null || helper.getTaskState() == ECSSlaveHelper.State.STOPPING) {
+                continue;
+            }
+            Integer count = result.get(helper.getContainerInstanceArn());
+            result.put(helper.getContainerInstanceArn(), count == null ? 1 : count + 1);
+        }
+        return result;
+    }
+
+    /**
+     * How many agents of a cloud each container instance runs, and how many the busiest one runs.
+     */
+    static final class Load {
+        private final long countedAt;
+        private final Map<String, Integer> agentsByInstance;
+        private final int busiest;
+
+        Load(@Nonnull Collection<ECSSlave> agents, long countedAt) {
+            this.countedAt = countedAt;
+            this.agentsByInstance = countAgentsByInstance(agents);
+            int max = 1;
+            for (int count : agentsByInstance.values()) {
+                max = Math.max(max, count);
+            }
+            this.busiest = max;
+        }
+
+        long getIdleTimeoutMillis(@Nonnull ECSSlave agent, long idleTimeoutMillis) {
+            String instance = agent.getHelper().getContainerInstanceArn();
+            if (instance == null) {
+                return idleTimeoutMillis;
+            }
+            Integer load = agentsByInstance.get(instance);
+            long scaled = idleTimeoutMillis * (load == null ? 1 : load) / busiest;
+            return Math.min(idleTimeoutMillis, Math.max(MIN_IDLE_TIMEOUT_MILLIS, scaled));
+        }
+    }
+}
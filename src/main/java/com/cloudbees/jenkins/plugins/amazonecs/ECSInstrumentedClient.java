@@ -0,0 +1,104 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonWebServiceResult;
+import com.amazonaws.services.ecs.model.*;
+
+import java.util.function.Supplier;
+
+/**
+ * Records the ECS API calls made through the wrapped client in {@link ECSApiMetrics}: how many there were, how long
+ * they took and how they failed, to show how many calls launches and periodic work cost.
+ * During a traced launch, each call is also a span of the launch trace, see {@link ECSSpan}.
+ */
+final class ECSInstrumentedClient implements ECSClient {
+
+    private final ECSClient delegate;
+    private final ECSApiMetrics metrics;
+
+    ECSInstrumentedClient(ECSClient delegate, ECSApiMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Makes the call, recording it in the metrics and, during a traced launch, as a child of the current span with
+     * the ECS request ID.
+     */
+    private <T> T call(String operation, Supplier<T> call) {
+        ECSSpan span = ECSSpan.current().startChild("ECS " + operation)
+                .setAttribute("rpc.system", "aws-api")
+                .setAttribute("rpc.service", "ECS")
+                .setAttribute("rpc.method", operation);
+        long started = System.nanoTime();
+        try {
+            T result = call.get();
+            metrics.record(operation, System.nanoTime() - started, null);
+            if (result instanceof AmazonWebServiceResult && ((AmazonWebServiceResult<?>) result).getSdkResponseMetadata() != null) {
+                span.setAttribute("aws.request_id", ((AmazonWebServiceResult<?>) result).getSdkResponseMetadata().getRequestId());
+            }
+            span.end();
+            return result;
+        } catch (RuntimeException e) {
+            metrics.record(operation, System.nanoTime() - started, e);
+            if (e instanceof AmazonServiceException) {
+                span.setAttribute("aws.request_id", ((AmazonServiceException) e).getRequestId());
+            }
+            span.end(ECSApiMetrics.getErrorType(e));
+            throw e;
+        }
+    }
+
+    @Override
+    public ListClustersResult listClusters(ListClustersRequest request) {
+        return call("ListClusters", () -> delegate.listClusters(request));
+    }
+
+    @Override
+    public void stopTask(StopTaskRequest request) {
+        call("StopTask", () -> {
+            delegate.stopTask(request);
+            return null;
+        });
+    }
+
+    @Override
+    public RegisterTaskDefinitionResult registerTaskDefinition(RegisterTaskDefinitionRequest request) {
+        return call("RegisterTaskDefinition", () -> delegate.registerTaskDefinition(request));
+    }
+
+    @Override
+    public DescribeTaskDefinitionResult describeTaskDefinition(DescribeTaskDefinitionRequest request) {
+        return call("DescribeTaskDefinition", () -> delegate.describeTaskDefinition(request));
+    }
+
+    @Override
+    public ListContainerInstancesResult listContainerInstances(ListContainerInstancesRequest request) {
+        return call("ListContainerInstances", () -> delegate.listContainerInstances(request));
+    }
+
+    @Override
+    public DescribeContainerInstancesResult describeContainerInstances(DescribeContainerInstancesRequest request) {
+        return call("DescribeContainerInstances", () -> delegate.describeContainerInstances(request));
+    }
+
+    @Override
+    public ListTasksResult listTasks(ListTasksRequest request) {
+        return call("ListTasks", () -> delegate.listTasks(request));
+    }
+
+    @Override
+    public DescribeTasksResult describeTasks(DescribeTasksRequest request) {
+        return call("DescribeTasks", () -> delegate.describeTasks(request));
+    }
+
+    @Override
+    public RunTaskResult runTask(RunTaskRequest request) {
+        return call("RunTask", () -> delegate.runTask(request));
+    }
+
+    @Override
+    public StartTaskResult startTask(StartTaskRequest request) {
+        return call("StartTask", () -> delegate.startTask(request));
+    }
+}
@@ -0,0 +1,186 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import hudson.Extension;
+import hudson.model.AbstractProject;
+import hudson.model.Item;
+import hudson.model.Label;
+import hudson.model.Node;
+import hudson.model.Queue;
+import hudson.model.queue.CauseOfBlockage;
+import hudson.model.queue.QueueTaskDispatcher;
+import hudson.scm.NullSCM;
+import hudson.scm.SCM;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Routes queued builds to a reused ECS agent which last ran the same job or checked out the same repository, so that
+ * its workspace and dependency caches are warm.
+ *
+ * While such an agent is idle, other agents of the cloud do not take the build. Once the build has been buildable for
+ * longer than {@link ECSCloud#getJobAffinitySeconds()} it goes to any agent.
+ *
+ * The dispatcher is asked for every agent and buildable item while the queue is locked, so the agents of a cloud are
+ * indexed by their last job and repository once per {@link #INDEX_MILLIS} rather than listed for every check.
+ */
+@Extension
+public class ECSJobAffinityDispatcher extends QueueTaskDispatcher {
+
+    private static final Logger LOGGER = Logger.getLogger(ECSJobAffinityDispatcher.class.getName());
+
+    static final long INDEX_MILLIS = Long.getLong(ECSJobAffinityDispatcher.class.getName() + ".indexMillis", 1000);
+
+    private static final Map<ECSCloud, WarmAgentIndex> INDEXES = new WeakHashMap<>();
+
+    @Override
+    public CauseOfBlockage canTake(Node node, Queue.BuildableItem item) {
+        if (!(node instanceof ECSSlave)) {
+            return null;
+        }
+        ECSSlave agent = (ECSSlave) node;
+        ECSCloud cloud;
+        try {
+            cloud = agent.getCloud();
+        } catch (IllegalStateException e) {
+            return null;
+        }
+        if (cloud == null || cloud.getJobAffinitySeconds() <= 0
+                || System.currentTimeMillis() - item.buildableStartMilliseconds > SECONDS.toMillis(cloud.getJobAffinitySeconds())) {
+            return null;
+        }
+        ECSSlave warm = getIndex(cloud, System.currentTimeMillis()).findWarmAgent(agent, getJobKey(item.task), getRepositoryKey(item.task), item.getAssignedLabel());
+        if (warm == null) {
+            return null;
+        }
+        LOGGER.log(Level.FINE, "Keeping {0} for warm agent {1} instead of {2}", new Object[]{item.task.getFullDisplayName(), warm.getNodeName(), agent.getNodeName()});
+        return new WaitingForWarmAgent(warm.getNodeName());
+    }
+
+    /**
+     * The index of the agents of the cloud, built again once it is older than {@link #INDEX_MILLIS}.
+     */
+    @Nonnull
+    static WarmAgentIndex getIndex(@Nonnull ECSCloud cloud, long now) {
+        synchronized (INDEXES) {
+            WarmAgentIndex index = INDEXES.get(cloud);
+            if (index == null || now - index.builtAt > INDEX_MILLIS) {
+                index = new WarmAgentIndex(cloud.getAgents(), now);
+                INDEXES.put(cloud, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * @return an idle agent other than the candidate which last ran the job or repository, or null if the candidate is
+     * itself warm for it or there is no such agent.
+     */
+    @CheckForNull
+    static ECSSlave findWarmAgent(@Nonnull List<ECSSlave> agents, @Nonnull ECSSlave candidate, String jobKey, String repositoryKey, Label label) {
+        return new WarmAgentIndex(agents, System.currentTimeMillis()).findWarmAgent(candidate, jobKey, repositoryKey, label);
+    }
+
+    private static boolean isAvailable(ECSSlave agent, Label label) {
+        ECSSlaveHelper helper = agent.getHelper();
+        ECSComputer computer = agent.getECSComputer();
+        if (helper == null || computer == null || helper.getTaskState() != ECSSlaveHelper.State.RUNNING
+                || !computer.isOnline() || !computer.isIdle()) {
+            return false;
+        }
+        ECSTaskTemplate template = helper.getTemplate();
+        return label == null || (template != null && label.matches(template.getLabelSet()));
+    }
+
+    @CheckForNull
+    static String getJobKey(Queue.Task task) {
+        Queue.Task owner = task.getOwnerTask();
+        return owner instanceof Item ? ((Item) owner).getFullName() : null;
+    }
+
+    @CheckForNull
+    static String getRepositoryKey(Queue.Task task) {
+        Queue.Task owner = task.getOwnerTask();
+        if (owner instanceof AbstractProject) {
+            SCM scm = ((AbstractProject<?, ?>) owner).getScm();
+            if (scm != null && !(scm instanceof NullSCM)) {
+                return scm.getKey();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The agents of a cloud by the job they last ran and the repository they last checked out. Whether an agent is
+     * still idle and warm is checked when it is looked up, so an index which is a little out of date only misses
+     * agents which became warm since it was built.
+     */
+    static final class WarmAgentIndex {
+        private final long builtAt;
+        private final Map<String, List<ECSSlave>> byJob = new HashMap<>();
+        private final Map<String, List<ECSSlave>> byRepository = new HashMap<>();
+
+        WarmAgentIndex(@Nonnull Collection<ECSSlave> agents, long builtAt) {
+            this.builtAt = builtAt;
+            for (ECSSlave agent : agents) {
+                ECSSlaveHelper helper = agent.getHelper();
+                if (helper == null) {
+                    continue;
+                }
+                if (helper.getLastJob() != null) {
+                    byJob.computeIfAbsent(helper.getLastJob(), key -> new ArrayList<>()).add(agent);
+                }
+                if (helper.getLastRepository() != null) {
+                    byRepository.computeIfAbsent(helper.getLastRepository(), key -> new ArrayList<>()).add(agent);
+                }
+            }
+        }
+
+        @CheckForNull
+        ECSSlave findWarmAgent(@Nonnull ECSSlave candidate, String jobKey, String repositoryKey, Label label) {
+            if (candidate.getHelper().isWarmFor(jobKey, repositoryKey)) {
+                return null;
+            }
+            for (ECSSlave agent : get(byJob, jobKey)) {
+                if (agent != candidate && isAvailable(agent, label) && agent.getHelper().isWarmFor(jobKey, null)) {
+                    return agent;
+                }
+            }
+            for (ECSSlave agent : get(byRepository, repositoryKey)) {
+                if (agent != candidate && isAvailable(agent, label) && agent.getHelper().isWarmFor(null, repositoryKey)) {
+                    return agent;
+                }
+            }
+            return null;
+        }
+
+        private static List<ECSSlave> get(Map<String, List<ECSSlave>> agents, String key) {
+            List<ECSSlave> result = key == null ? null : agents.get(key);
+            return result == null ? Collections.<ECSSlave>emptyList() : result;
+        }
+    }
+
+    static final class WaitingForWarmAgent extends CauseOfBlockage {
+        private final String agentName;
+
+        WaitingForWarmAgent(String agentName) {
+            this.agentName = agentName;
+        }
+
+        @Override
+        public String getShortDescription() {
+            return "Waiting for " + agentName + ", which last ran this job";
+        }
+    }
+}
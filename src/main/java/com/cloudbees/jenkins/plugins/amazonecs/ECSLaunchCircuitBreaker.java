@@ -0,0 +1,133 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import javax.annotation.CheckForNull;
+import java.util.Date;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Stops provisioning for a template whose launches keep failing, e.g. because of a bad image or IAM role, instead of
+ * burning cluster capacity and API quota on launches which are bound to fail.
+ *
+ * The breaker opens after {@link #FAILURE_THRESHOLD} consecutive failed launches. Once the backoff has passed a single
+ * probe launch is let through: the breaker closes when it succeeds, and opens again with twice the backoff, up to
+ * {@link #MAX_BACKOFF_MILLIS}, when it fails. A probe which has neither succeeded nor failed after
+ * {@link #PROBE_TIMEOUT_MILLIS}, e.g. because its agent could not be created, is given up and another one let through.
+ */
+public final class ECSLaunchCircuitBreaker {
+
+    private static final Logger LOGGER = Logger.getLogger(ECSLaunchCircuitBreaker.class.getName());
+
+    static final int FAILURE_THRESHOLD = Integer.getInteger(ECSLaunchCircuitBreaker.class.getName() + ".failureThreshold", 3);
+    static final long INITIAL_BACKOFF_MILLIS = SECONDS.toMillis(Integer.getInteger(ECSLaunchCircuitBreaker.class.getName() + ".backoffSeconds", 60));
+    static final long MAX_BACKOFF_MILLIS = MINUTES.toMillis(30);
+    static final long PROBE_TIMEOUT_MILLIS = MINUTES.toMillis(Integer.getInteger(ECSLaunchCircuitBreaker.class.getName() + ".probeTimeoutMinutes", 15));
+
+    public enum State {CLOSED, OPEN, HALF_OPEN}
+
+    private final String templateName;
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long backoffMillis;
+    private long openUntil;
+    private long probeDeadline;
+    private String lastFailure;
+
+    ECSLaunchCircuitBreaker(String templateName) {
+        this.templateName = templateName;
+    }
+
+    /**
+     * @return whether a task may be launched now. Lets a single probe through once an open breaker has backed off.
+     */
+    synchronized boolean allowLaunch(long now) {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (now < openUntil) {
+                    return false;
+                }
+                LOGGER.log(Level.INFO, "Launching a probe for template {0}", templateName);
+                state = State.HALF_OPEN;
+                probeDeadline = now + PROBE_TIMEOUT_MILLIS;
+                return true;
+            default:
+                if (now < probeDeadline) {
+                    return false;
+                }
+                LOGGER.log(Level.WARNING, "Probe for template {0} did not finish in time, launching another one", templateName);
+                probeDeadline = now + PROBE_TIMEOUT_MILLIS;
+                return true;
+        }
+    }
+
+    /**
+     * The probe which was just let through is not launched after all, e.g. because the cluster has no room for it.
+     * The next launch is let through as the probe instead.
+     */
+    synchronized void cancelProbe() {
+        if (state == State.HALF_OPEN) {
+            state = State.OPEN;
+        }
+    }
+
+    synchronized void recordSuccess() {
+        if (state != State.CLOSED) {
+            LOGGER.log(Level.INFO, "Closing circuit breaker of template {0}, launch succeeded", templateName);
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        backoffMillis = 0;
+        openUntil = 0;
+    }
+
+    synchronized void recordFailure(long now, String reason) {
+        consecutiveFailures++;
+        lastFailure = reason;
+        if (state == State.HALF_OPEN) {
+            backoffMillis = Math.min(MAX_BACKOFF_MILLIS, backoffMillis * 2);
+        } else if (state == State.CLOSED && consecutiveFailures >= FAILURE_THRESHOLD) {
+            backoffMillis = INITIAL_BACKOFF_MILLIS;
+        } else {
+            return;
+        }
+        state = State.OPEN;
+        openUntil = now + backoffMillis;
+        LOGGER.log(Level.WARNING, "Opening circuit breaker of template {0} for {1}s after {2} consecutive failed launches, last: {3}",
+                new Object[]{templateName, MILLISECONDS.toSeconds(backoffMillis), consecutiveFailures, reason});
+    }
+
+    public String getTemplateName() {
+        return templateName;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    /**
+     * @return when the next probe may be launched, 0 unless the breaker is open.
+     */
+    public synchronized long getOpenUntil() {
+        return state == State.OPEN ? openUntil : 0;
+    }
+
+    @CheckForNull
+    public Date getOpenUntilDate() {
+        long until = getOpenUntil();
+        return until > 0 ? new Date(until) : null;
+    }
+
+    public synchronized String getLastFailure() {
+        return lastFailure;
+    }
+}
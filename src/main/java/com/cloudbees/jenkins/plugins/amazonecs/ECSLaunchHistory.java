@@ -0,0 +1,98 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import hudson.XmlFile;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The last {@link #MAX_RECORDS_PER_TEMPLATE} launches of every template of a cloud, newest first, optionally saved to
+ * <code>$JENKINS_HOME/amazon-ecs/launch-history-&lt;cloud&gt;.xml</code> so that it survives a restart.
+ */
+public final class ECSLaunchHistory {
+
+    private static final Logger LOGGER = Logger.getLogger(ECSLaunchHistory.class.getName());
+
+    static final int MAX_RECORDS_PER_TEMPLATE = Integer.getInteger(ECSLaunchHistory.class.getName() + ".size", 20);
+
+    private final LinkedList<ECSLaunchRecord> records = new LinkedList<>();
+    private transient XmlFile file;
+
+    ECSLaunchHistory() {
+    }
+
+    /**
+     * @param file where the history is kept, null to keep it in memory only.
+     */
+    @Nonnull
+    static ECSLaunchHistory load(@CheckForNull XmlFile file) {
+        ECSLaunchHistory history = null;
+        if (file != null && file.exists()) {
+            try {
+                history = (ECSLaunchHistory) file.read();
+            } catch (IOException | ClassCastException ex) {
+                LOGGER.log(Level.WARNING, "Could not read launch history " + file, ex);
+            }
+        }
+        if (history == null) {
+            history = new ECSLaunchHistory();
+        }
+        history.file = file;
+        return history;
+    }
+
+    static XmlFile getFile(File rootDir, String cloudName) {
+        return new XmlFile(new File(new File(rootDir, "amazon-ecs"), "launch-history-" + cloudName.replaceAll("[^a-zA-Z0-9_.-]", "_") + ".xml"));
+    }
+
+    /**
+     * Adds a finished launch, dropping the oldest launch of the same template once it has too many.
+     */
+    void add(@Nonnull ECSLaunchRecord record) {
+        synchronized (this) {
+            records.addFirst(record);
+            int count = 0;
+            for (Iterator<ECSLaunchRecord> it = records.iterator(); it.hasNext(); ) {
+                if (it.next().getTemplateName().equals(record.getTemplateName()) && ++count > MAX_RECORDS_PER_TEMPLATE) {
+                    it.remove();
+                }
+            }
+        }
+        save();
+    }
+
+    private void save() {
+        if (file == null) {
+            return;
+        }
+        try {
+            synchronized (this) {
+                file.write(this);
+            }
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Could not save launch history " + file, ex);
+        }
+    }
+
+    public synchronized List<ECSLaunchRecord> getRecords() {
+        return new ArrayList<>(records);
+    }
+
+    public synchronized List<ECSLaunchRecord> getRecords(String templateName) {
+        List<ECSLaunchRecord> matching = new ArrayList<>();
+        for (ECSLaunchRecord record : records) {
+            if (record.getTemplateName().equals(templateName)) {
+                matching.add(record);
+            }
+        }
+        return matching;
+    }
+}
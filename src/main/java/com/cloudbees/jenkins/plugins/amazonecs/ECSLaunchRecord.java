@@ -0,0 +1,271 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import com.cloudbees.jenkins.plugins.amazonecs.ECSSlaveHelper.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * One agent launch as shown on the cloud page: how long each phase took, how it ended and where the task ran.
+ * The launch timeline of the agent also shows when each state was entered and every poll of the task status.
+ */
+public final class ECSLaunchRecord {
+
+    public enum Outcome {IN_PROGRESS, SUCCEEDED, FAILED}
+
+    /**
+     * At most this many polls of the task status are kept, the last ones, as a slow start can take hundreds.
+     */
+    static final int MAX_POLLS = 120;
+
+    private final String templateName;
+    private final String nodeName;
+    private final String cluster;
+    private final long started;
+    private long taskDefinitionMillis;
+    private long runTaskMillis;
+    private long taskStartMillis;
+    private long agentConnectMillis;
+    private Outcome outcome = Outcome.IN_PROGRESS;
+    private String stopReason;
+    private ECSTaskFailure.Category failureCategory;
+    private String taskArn;
+    private String containerInstanceArn;
+    private int retries;
+    private boolean hedged;
+    private String taskDefinitionArn;
+    // null in records saved before the timeline was recorded
+    private List<Transition> transitions;
+    private List<Poll> polls;
+    private int droppedPolls;
+
+    ECSLaunchRecord(String templateName, String nodeName, String cluster, long started) {
+        this.templateName = templateName;
+        this.nodeName = nodeName;
+        this.cluster = cluster;
+        this.started = started;
+    }
+
+    /**
+     * Adds the time spent in a launch state, states are visited again when a launch is retried.
+     */
+    void addPhase(State phase, long millis) {
+        switch (phase) {
+            case INITIALIZING:
+                taskDefinitionMillis += millis;
+                break;
+            case TASK_DEFINITION_CREATED:
+                runTaskMillis += millis;
+                break;
+            case TASK_CREATED:
+                taskStartMillis += millis;
+                break;
+            case TASK_LAUNCHED:
+                agentConnectMillis += millis;
+                break;
+            default:
+                break;
+        }
+    }
+
+    synchronized void addTransition(State state, long at) {
+        if (transitions == null) {
+            transitions = new ArrayList<>();
+        }
+        transitions.add(new Transition(state, at));
+    }
+
+    synchronized void addPoll(long started, long millis, String lastStatus) {
+        if (polls == null) {
+            polls = new ArrayList<>();
+        }
+        polls.add(new Poll(started, millis, lastStatus));
+        if (polls.size() > MAX_POLLS) {
+            polls.remove(0);
+            droppedPolls++;
+        }
+    }
+
+    void setTaskDefinitionArn(String taskDefinitionArn) {
+        this.taskDefinitionArn = taskDefinitionArn;
+    }
+
+    void finish(Outcome outcome, String stopReason) {
+        this.outcome = outcome;
+        this.stopReason = stopReason;
+    }
+
+    void setFailureCategory(ECSTaskFailure.Category failureCategory) {
+        this.failureCategory = failureCategory;
+    }
+
+    void setTask(String taskArn, String containerInstanceArn) {
+        this.taskArn = taskArn;
+        if (containerInstanceArn != null) {
+            this.containerInstanceArn = containerInstanceArn;
+        }
+    }
+
+    void setRetries(int retries) {
+        this.retries = retries;
+    }
+
+    void setHedged(boolean hedged) {
+        this.hedged = hedged;
+    }
+
+    public String getTemplateName() {
+        return templateName;
+    }
+
+    public String getNodeName() {
+        return nodeName;
+    }
+
+    public String getCluster() {
+        return cluster;
+    }
+
+    public long getStarted() {
+        return started;
+    }
+
+    public Date getStartedDate() {
+        return new Date(started);
+    }
+
+    public long getTaskDefinitionMillis() {
+        return taskDefinitionMillis;
+    }
+
+    public long getRunTaskMillis() {
+        return runTaskMillis;
+    }
+
+    public long getTaskStartMillis() {
+        return taskStartMillis;
+    }
+
+    public long getAgentConnectMillis() {
+        return agentConnectMillis;
+    }
+
+    public long getTotalMillis() {
+        return taskDefinitionMillis + runTaskMillis + taskStartMillis + agentConnectMillis;
+    }
+
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    public String getStopReason() {
+        return stopReason;
+    }
+
+    /**
+     * @return how the last stopped task of the launch was classified, null if none of its tasks was stopped by ECS.
+     */
+    ECSTaskFailure.Category getFailureCategory() {
+        return failureCategory;
+    }
+
+    public String getTaskArn() {
+        return taskArn;
+    }
+
+    public String getContainerInstanceArn() {
+        return containerInstanceArn;
+    }
+
+    public int getRetries() {
+        return retries;
+    }
+
+    public boolean isHedged() {
+        return hedged;
+    }
+
+    public String getTaskDefinitionArn() {
+        return taskDefinitionArn;
+    }
+
+    /**
+     * @return the family and revision of the task definition, e.g. <code>maven-java:12</code>.
+     */
+    public String getTaskDefinitionRevision() {
+        return taskDefinitionArn == null ? null : taskDefinitionArn.substring(taskDefinitionArn.lastIndexOf('/') + 1);
+    }
+
+    public synchronized List<Transition> getTransitions() {
+        return transitions == null ? Collections.<Transition>emptyList() : new ArrayList<>(transitions);
+    }
+
+    public synchronized List<Poll> getPolls() {
+        return polls == null ? Collections.<Poll>emptyList() : new ArrayList<>(polls);
+    }
+
+    /**
+     * @return how many of the first polls are not kept, see {@link #MAX_POLLS}.
+     */
+    public synchronized int getDroppedPolls() {
+        return droppedPolls;
+    }
+
+    /**
+     * The launch entered a state.
+     */
+    public static final class Transition {
+        private final State state;
+        private final long at;
+
+        Transition(State state, long at) {
+            this.state = state;
+            this.at = at;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        public long getAt() {
+            return at;
+        }
+
+        public Date getAtDate() {
+            return new Date(at);
+        }
+    }
+
+    /**
+     * One DescribeTasks poll while waiting for the task to run.
+     */
+    public static final class Poll {
+        private final long started;
+        private final long millis;
+        private final String lastStatus;
+
+        Poll(long started, long millis, String lastStatus) {
+            this.started = started;
+            this.millis = millis;
+            this.lastStatus = lastStatus;
+        }
+
+        public long getStarted() {
+            return started;
+        }
+
+        public Date getStartedDate() {
+            return new Date(started);
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        public String getLastStatus() {
+            return lastStatus;
+        }
+    }
+}
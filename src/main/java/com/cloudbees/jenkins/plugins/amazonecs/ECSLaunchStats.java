@@ -0,0 +1,87 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import java.util.Arrays;
+
+/**
+ * Recent launch times of a template, from RunTask until the task is RUNNING, and the share of those launches which got
+ * a spare task because they were slow.
+ */
+public final class ECSLaunchStats {
+
+    static final int WINDOW = 100;
+    static final int MIN_SAMPLES = 10;
+    static final int MAX_HEDGE_PERCENT = Integer.getInteger(ECSLaunchStats.class.getName() + ".maxHedgePercent", 10);
+
+    private final long[] durations = new long[WINDOW];
+    private final boolean[] hedged = new boolean[WINDOW];
+    private int count;
+    private int next;
+    private int hedgesInFlight;
+
+    synchronized void record(long durationMillis, boolean wasHedged) {
+        durations[next] = durationMillis;
+        hedged[next] = wasHedged;
+        next = (next + 1) % WINDOW;
+        count = Math.min(WINDOW, count + 1);
+    }
+
+    /**
+     * @return the launch time below which the given percentage of the recent launches finished, or -1 while fewer
+     * than {@link #MIN_SAMPLES} launches have been observed.
+     */
+    synchronized long getPercentile(int percent) {
+        if (count < MIN_SAMPLES) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(durations, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percent / 100.0 * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, index))];
+    }
+
+    /**
+     * Reserves a spare task if the share of hedged launches stays within {@link #MAX_HEDGE_PERCENT}. The reservation
+     * must be released with {@link #releaseHedge()} once the launch has ended, however it ended.
+     */
+    synchronized boolean tryHedge() {
+        if (count < MIN_SAMPLES) {
+            return false;
+        }
+        int hedges = hedgesInFlight;
+        for (int i = 0; i < count; i++) {
+            if (hedged[i]) {
+                hedges++;
+            }
+        }
+        if ((hedges + 1) * 100 > MAX_HEDGE_PERCENT * count) {
+            return false;
+        }
+        hedgesInFlight++;
+        return true;
+    }
+
+    /**
+     * Releases a spare task reserved by {@link #tryHedge()}.
+     */
+    synchronized void releaseHedge() {
+        if (hedgesInFlight > 0) {
+            hedgesInFlight--;
+        }
+    }
+
+    public long getP50() {
+        return getPercentile(50);
+    }
+
+    public long getP90() {
+        return getPercentile(90);
+    }
+
+    public long getP99() {
+        return getPercentile(99);
+    }
+
+    public synchronized int getCount() {
+        return count;
+    }
+}
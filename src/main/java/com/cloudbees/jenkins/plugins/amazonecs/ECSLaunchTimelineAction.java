@@ -0,0 +1,45 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import hudson.model.Action;
+
+import javax.annotation.CheckForNull;
+
+/**
+ * The launch timeline of one agent: when it entered each launch state, where its task ran and how long every poll of
+ * the task status took, to explain why a build waited for its agent.
+ */
+public class ECSLaunchTimelineAction implements Action {
+
+    private final String nodeName;
+
+    ECSLaunchTimelineAction(String nodeName) {
+        this.nodeName = nodeName;
+    }
+
+    @Override
+    public String getIconFileName() {
+        return getRecord() != null ? "clock.png" : null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Launch Timeline";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "launch-timeline";
+    }
+
+    public String getNodeName() {
+        return nodeName;
+    }
+
+    /**
+     * @return the record of the last launch of the agent, null if it is not known, e.g. after a restart.
+     */
+    @CheckForNull
+    public ECSLaunchRecord getRecord() {
+        return ECSLaunchTimelines.get(nodeName);
+    }
+}
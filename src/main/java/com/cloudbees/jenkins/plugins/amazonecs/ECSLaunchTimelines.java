@@ -0,0 +1,132 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import hudson.Extension;
+import hudson.model.Action;
+import hudson.model.Computer;
+import hudson.model.RootAction;
+import hudson.model.TransientComputerActionFactory;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the launch record of every agent, so that its launch timeline can be shown on the agent page and, for
+ * {@link #RETENTION_MINUTES} after the agent has been removed, at <code>/ecs-launch-timeline/&lt;agent&gt;/</code>.
+ */
+@Extension
+public class ECSLaunchTimelines implements RootAction {
+
+    static final String URL_NAME = "ecs-launch-timeline";
+
+    static final long RETENTION_MINUTES = Long.getLong(ECSLaunchTimelines.class.getName() + ".retentionMinutes", 60);
+    static final int MAX_TIMELINES = Integer.getInteger(ECSLaunchTimelines.class.getName() + ".size", 1000);
+
+    private static final Map<String, Timeline> TIMELINES = new LinkedHashMap<>();
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return null;
+    }
+
+    @Override
+    public String getUrlName() {
+        return URL_NAME;
+    }
+
+    /**
+     * Serves the timeline of an agent, which may have been removed already, to whoever may see the agent details.
+     */
+    @CheckForNull
+    public ECSLaunchTimelineAction getDynamic(String nodeName) {
+        JenkinsWrapper.getInstance().checkPermission(Computer.EXTENDED_READ);
+        return get(nodeName) != null ? new ECSLaunchTimelineAction(nodeName) : null;
+    }
+
+    /**
+     * Starts keeping the record of a launch, replacing the one of an earlier launch of the same agent.
+     */
+    static void register(@Nonnull ECSLaunchRecord record) {
+        synchronized (TIMELINES) {
+            purge(System.currentTimeMillis());
+            TIMELINES.remove(record.getNodeName());
+            TIMELINES.put(record.getNodeName(), new Timeline(record));
+        }
+    }
+
+    /**
+     * The agent has been removed, its record is kept for {@link #RETENTION_MINUTES} more.
+     */
+    static void removed(@CheckForNull String nodeName, long now) {
+        synchronized (TIMELINES) {
+            Timeline timeline = TIMELINES.get(nodeName);
+            if (timeline != null && timeline.removed == 0) {
+                timeline.removed = now;
+            }
+        }
+    }
+
+    @CheckForNull
+    static ECSLaunchRecord get(@CheckForNull String nodeName) {
+        synchronized (TIMELINES) {
+            purge(System.currentTimeMillis());
+            Timeline timeline = TIMELINES.get(nodeName);
+            return timeline != null ? timeline.record : null;
+        }
+    }
+
+    /**
+     * Drops the records of agents removed too long ago and, above {@link #MAX_TIMELINES}, the oldest records.
+     */
+    static void purge(long now) {
+        synchronized (TIMELINES) {
+            long expired = now - TimeUnit.MINUTES.toMillis(RETENTION_MINUTES);
+            int excess = TIMELINES.size() - MAX_TIMELINES;
+            for (Iterator<Timeline> it = TIMELINES.values().iterator(); it.hasNext(); ) {
+                Timeline timeline = it.next();
+                if (excess-- > 0 || (timeline.removed != 0 && timeline.removed < expired)) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    static void clear() {
+        synchronized (TIMELINES) {
+            TIMELINES.clear();
+        }
+    }
+
+    private static final class Timeline {
+        private final ECSLaunchRecord record;
+        private long removed;
+
+        private Timeline(ECSLaunchRecord record) {
+            this.record = record;
+        }
+    }
+
+    /**
+     * Adds the launch timeline to the page of every ECS agent.
+     */
+    @Extension
+    public static class ComputerActionFactory extends TransientComputerActionFactory {
+        @Override
+        public Collection<? extends Action> createFor(Computer target) {
+            if (target instanceof ECSComputerImpl) {
+                return Collections.singletonList(new ECSLaunchTimelineAction(target.getName()));
+            }
+            return Collections.emptyList();
+        }
+    }
+}
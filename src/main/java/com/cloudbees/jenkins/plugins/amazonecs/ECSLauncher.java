@@ -1,6 +1,7 @@
 package com.cloudbees.jenkins.plugins.amazonecs;
 
 import com.amazonaws.services.ecs.model.*;
+import com.amazonaws.AmazonClientException;
 import hudson.AbortException;
 import hudson.model.TaskListener;
 import hudson.slaves.JNLPLauncher;
@@ -8,6 +9,8 @@ import hudson.slaves.SlaveComputer;
 
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -15,6 +18,7 @@ import com.cloudbees.jenkins.plugins.amazonecs.ECSSlaveHelper.State;
 import org.apache.commons.lang.StringUtils;
 
 import static com.cloudbees.jenkins.plugins.amazonecs.ECSSlaveHelper.State.*;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static java.util.logging.Level.*;
 
 class ECSLauncher extends JNLPLauncher {
@@ -49,6 +53,8 @@ class ECSLauncher extends JNLPLauncher {
 
     static final class ECSSlaveLaunchWorkflow {
 
+        private static final int MAX_LAUNCH_RETRIES = 2;
+
         private final Object waitHandle=new Object();
         private final ECSComputer computer;
         private final TaskListener listener;
@@ -60,6 +66,18 @@ class ECSLauncher extends JNLPLauncher {
         private TaskDefinition taskDefinition;
         private String taskArn;
         private State state;
+        private int retries;
+        private final List<String> excludedInstanceIds = new ArrayList<>();
+        private String failureReason;
+        private ECSTaskFailure launchFailure;
+        private String spareTaskArn;
+        private String spareContainerInstanceArn;
+        private boolean hedged;
+        private boolean hedgeReserved;
+        private ECSLaunchRecord record;
+        private long phaseStarted;
+        private ECSSpan span = ECSSpan.NOOP;
+        private ECSSpan phaseSpan = ECSSpan.NOOP;
 
         ECSSlaveLaunchWorkflow(ECSComputer computer, TaskListener listener) {
             this.computer = computer;
@@ -95,6 +113,10 @@ class ECSLauncher extends JNLPLauncher {
                 }
                 service = cloud.getEcsService();
                 logger = listener.getLogger();
+                phaseStarted = System.currentTimeMillis();
+                record = new ECSLaunchRecord(template.getTemplateName(), nodeName, cloud.getCluster(), phaseStarted);
+                ECSLaunchTimelines.register(record);
+                startTrace(nodeName);
                 setTaskState(INITIALIZING);
             } catch (IllegalStateException ex) {
                 LOGGER.log(WARNING, "Error launching slave: " + StringUtils.defaultIfBlank(nodeName,"{Null}"), ex);
@@ -105,24 +127,21 @@ class ECSLauncher extends JNLPLauncher {
         private void createTaskDefinition() {
             TaskDefinition definition;
             try {
-                if (template.getTaskDefinitionOverride() == null) {
-                    definition = service.registerTemplate(slave.getCloud(), template);
-                } else {
-                    LOGGER.log(FINE, "Attempting to find task definition family or ARN: {0}", template.getTaskDefinitionOverride());
-
-                    definition = service.findTaskDefinition(template.getTaskDefinitionOverride());
-                    if (definition == null) {
-                        LOGGER.log(WARNING,"Could not find task definition family or ARN: " + template.getTaskDefinitionOverride());
-                        setTaskState(STOPPING);
-                        return;
-                    }
-
-                    LOGGER.log(FINE, "Found task definition: {0}", definition.getTaskDefinitionArn());
+                definition = cloud.getTaskDefinitionRegistrar().getTaskDefinition(template);
+                if (definition == null) {
+                    setTaskState(STOPPING);
+                    return;
                 }
+                LOGGER.log(FINE, "Using task definition: {0}", definition.getTaskDefinitionArn());
             } catch (ServerException | ClientException | InvalidParameterException | ClusterNotFoundException ex) {
                 LOGGER.log(Level.WARNING, "Error Creating Task Definition for Label: " + template.getLabel(), ex);
                 setTaskState(STOPPING);
                 return;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                LOGGER.log(Level.WARNING, "Interrupted while waiting for the task definition of template " + template.getTemplateName(), ex);
+                setTaskState(STOPPING);
+                return;
             }
             setTaskDefinition(definition);
             setTaskState(TASK_DEFINITION_CREATED);
@@ -134,13 +153,27 @@ class ECSLauncher extends JNLPLauncher {
             try {
                 LOGGER.log(Level.INFO, "RUNNING task definition {0} on slave {1}", new Object[]{taskDefinition.getTaskDefinitionArn(), slave.getNodeName()});
 
-                String taskarn = service.runEcsTask(slave, template, cloud.getCluster(), slave.getHelper().getDockerRunCommand(), taskDefinition);
+                String taskarn;
+                if (template.isBatchLaunch() && retries == 0) {
+                    taskarn = ECSTaskBatcher.runTask(service, cloud, template, taskDefinition, slave);
+                } else if (template.isHedgeLaunches()) {
+                    taskarn = runClaimingTask();
+                } else {
+                    taskarn = service.runEcsTask(slave, template, cloud.getCluster(), slave.getHelper().getDockerRunCommand(), taskDefinition, excludedInstanceIds);
+                }
                 LOGGER.log(Level.INFO, "Slave {0} - Slave Task Started : {1}",
                         new Object[]{slave.getNodeName(), taskarn});
                 setTaskArn(taskarn);
                 setTaskState(TASK_CREATED);
             } catch (ServerException | ClientException | AbortException | UnsupportedFeatureException | PlatformUnknownException | PlatformTaskDefinitionIncompatibilityException | AccessDeniedException | BlockedException | InvalidParameterException | ClusterNotFoundException ex) {
                 LOGGER.log(Level.WARNING, "Slave " + slave.getNodeName() + " - Cannot create ECS Task", ex);
+                cloud.getTaskDefinitionRegistrar().invalidate(template);
+                launchFailure = ECSTaskFailure.classify(ex.getClass().getSimpleName() + ": " + ex.getMessage());
+                failureReason = launchFailure.toString();
+                setTaskState(STOPPING);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                LOGGER.log(Level.WARNING, "Slave " + slave.getNodeName() + " - Interrupted while waiting for batch of ECS Tasks", ex);
                 setTaskState(STOPPING);
             }
         }
@@ -152,29 +185,190 @@ class ECSLauncher extends JNLPLauncher {
                 try {
                     int i = 0;
                     int j = template.getSlaveLaunchTimeoutSeconds();
+                    long launchStarted = System.currentTimeMillis();
                     // wait for Pod to be running
                     while (i++ < j && state == TASK_CREATED) {
-                        String status = service.getTaskStatus(cloud, taskArn);
+                        ECSSpan poll = phaseSpan.startChild("status poll");
+                        long pollStarted = System.currentTimeMillis();
+                        Task task;
+                        try (ECSSpan.Scope scope = poll.makeCurrent()) {
+                            task = service.describeTask(cloud, taskArn);
+                        } catch (RuntimeException ex) {
+                            poll.end(ECSApiMetrics.getErrorType(ex));
+                            throw ex;
+                        }
+                        String status = task == null ? "UNKNOWN" : task.getLastStatus();
+                        record.addPoll(pollStarted, System.currentTimeMillis() - pollStarted, status);
+                        poll.setAttribute("ecs.task.last_status", status).end();
+
+                        boolean spareRunning = false;
+                        if (spareTaskArn != null) {
+                            Task spare = service.describeTask(cloud, spareTaskArn);
+                            String spareStatus = spare == null ? "UNKNOWN" : spare.getLastStatus();
+                            if (spareStatus.equals("STOPPED") || spareStatus.equals("DEPROVISIONING")) {
+                                LOGGER.log(INFO, "Spare task: {0} has been Stopped", spareTaskArn);
+                                ECSAgentClaimAction.cancel(spareTaskArn);
+                                spareTaskArn = null;
+                            } else {
+                                spareRunning = spareStatus.equals("RUNNING");
+                                spareContainerInstanceArn = spare.getContainerInstanceArn();
+                            }
+                        }
 
                         if (status.equals("STOPPED") || status.equals("DEPROVISIONING")) {
                             LOGGER.log(INFO, "Task: {0} has been Stopped",taskArn);
-                            setTaskState(STOPPING);
+                            if (spareTaskArn != null) {
+                                logger.printf("Task %s stopped, continuing with spare task %s%n", taskArn, spareTaskArn);
+                                ECSAgentClaimAction.cancel(taskArn);
+                                setTaskArn(spareTaskArn);
+                                spareTaskArn = null;
+                                continue;
+                            }
+                            record.setTask(taskArn, task == null ? null : task.getContainerInstanceArn());
+                            taskStopped(task);
                             return;
                         }
 
-                        if (status.equals("RUNNING")) {
+                        if (status.equals("RUNNING") || spareRunning) {
+                            // with a spare task both tasks are kept until one of them has claimed the agent and connected
+                            if (status.equals("RUNNING")) {
+                                record.setTask(taskArn, task.getContainerInstanceArn());
+                                slave.getHelper().setContainerInstanceArn(task.getContainerInstanceArn());
+                                span.setAttribute("ecs.container_instance_arn", task.getContainerInstanceArn());
+                            }
+                            cloud.getLaunchStats(template).record(System.currentTimeMillis() - launchStarted, hedged);
+                            releaseHedge();
                             setTaskState(TASK_LAUNCHED);
                             return;
                         }
+                        if (template.isHedgeLaunches() && !hedged) {
+                            hedge(System.currentTimeMillis() - launchStarted);
+                        }
                         LOGGER.log(FINE, "Waiting for Task to be running ({1}/{2}): {0}: Current State: {3}", new Object[]{taskArn, i, j, status});
                         logger.printf("Waiting for Task to be running (%2$s/%3$s): %1$s%n", taskArn, i, j);
                         waitHandle.wait(1000);
                     }
+                    stopSpareTask();
+                    if (state == TASK_CREATED) {
+                        LOGGER.log(WARNING, "Slave {0} - Task {1} not RUNNING after {2}s", new Object[]{slave.getNodeName(), taskArn, j});
+                        launchFailure = new ECSTaskFailure(ECSTaskFailure.Category.RESOURCE, ECSTaskFailure.Action.GIVE_UP, "Task not RUNNING after " + j + " s");
+                        failureReason = launchFailure.getReason();
+                        record.setFailureCategory(launchFailure.getCategory());
+                        logger.printf("Task %s is not RUNNING after %d s, giving up%n", taskArn, j);
+                        setTaskState(STOPPING);
+                    }
                 } catch (ServerException | ClientException | InvalidParameterException | ClusterNotFoundException | InterruptedException ex) {
                     LOGGER.log(SEVERE, "Error Getting Task Status: " + taskArn, ex);
+                    stopSpareTask();
                     setTaskState(STOPPING);
+                } finally {
+                    releaseHedge();
+                }
+            }
+        }
+
+        /**
+         * Starts a task which claims the agent identity through {@link ECSAgentClaimAction} instead of getting it on
+         * the command line, so that of the tasks of a hedged launch only the first one to claim it can connect.
+         */
+        private String runClaimingTask() throws AbortException {
+            String token = ECSAgentClaimAction.newToken();
+            String arn = service.runEcsTasks(cloud, template, 1, taskDefinition, token, excludedInstanceIds).get(0);
+            ECSAgentClaimAction.register(arn, slave.getNodeName(), token,
+                    System.currentTimeMillis() + SECONDS.toMillis((long) template.getSlaveLaunchTimeoutSeconds() + cloud.getSlaveTimoutInSeconds()));
+            return arn;
+        }
+
+        /**
+         * Starts a spare task for the agent once its task has been pending for longer than the 90th percentile of the
+         * recent launches of the template, so that a slow instance does not hold up the build.
+         */
+        private void hedge(long pendingMillis) {
+            ECSLaunchStats stats = cloud.getLaunchStats(template);
+            long p90 = stats.getPercentile(90);
+            if (p90 < 0 || pendingMillis < p90 || !stats.tryHedge()) {
+                return;
+            }
+            hedged = true;
+            hedgeReserved = true;
+            try {
+                spareTaskArn = runClaimingTask();
+                LOGGER.log(INFO, "Slave {0} - Task {1} pending for {2}ms (p90 {3}ms), started spare task {4}",
+                        new Object[]{slave.getNodeName(), taskArn, pendingMillis, p90, spareTaskArn});
+                logger.printf("Task %s is slow to start, started spare task %s%n", taskArn, spareTaskArn);
+            } catch (AbortException | AmazonClientException ex) {
+                LOGGER.log(WARNING, "Slave " + slave.getNodeName() + " - Cannot start spare task", ex);
+                releaseHedge();
+            }
+        }
+
+        private void releaseHedge() {
+            if (hedgeReserved) {
+                hedgeReserved = false;
+                cloud.getLaunchStats(template).releaseHedge();
+            }
+        }
+
+        private void stopSpareTask() {
+            if (spareTaskArn != null) {
+                LOGGER.log(INFO, "Stopping spare task {0} of slave {1}", new Object[]{spareTaskArn, slave.getNodeName()});
+                ECSAgentClaimAction.cancel(spareTaskArn);
+                service.deleteTaskAsync(spareTaskArn, cloud.getCluster());
+                spareTaskArn = null;
+            }
+        }
+
+        /**
+         * Keeps the task of a hedged launch which claimed the agent and connected, and stops the other one.
+         */
+        private void keepConnectedTask() {
+            if (spareTaskArn == null) {
+                return;
+            }
+            if (spareTaskArn.equals(ECSAgentClaimAction.getClaimingTask(slave.getNodeName()))) {
+                logger.printf("Spare task %s connected first, stopping task %s%n", spareTaskArn, taskArn);
+                ECSAgentClaimAction.cancel(taskArn);
+                service.deleteTaskAsync(taskArn, cloud.getCluster());
+                setTaskArn(spareTaskArn);
+                record.setTask(spareTaskArn, spareContainerInstanceArn);
+                slave.getHelper().setContainerInstanceArn(spareContainerInstanceArn);
+                spareTaskArn = null;
+            } else {
+                stopSpareTask();
+            }
+        }
+
+        /**
+         * Decides from the classified stop reason whether the launch is retried right away, retried on another container
+         * instance or given up, and tells the agent log why.
+         */
+        private void taskStopped(Task task) {
+            ECSTaskFailure failure = ECSTaskFailure.classify(task);
+            launchFailure = failure;
+            failureReason = failure.toString();
+            if (record != null) {
+                record.setFailureCategory(failure.getCategory());
+            }
+            LOGGER.log(WARNING, "Slave {0} - Task {1} stopped: {2}", new Object[]{slave.getNodeName(), taskArn, failure});
+            logger.printf("Task %s stopped: %s%n", taskArn, failure);
+
+            if (failure.getAction() == ECSTaskFailure.Action.GIVE_UP || retries >= MAX_LAUNCH_RETRIES) {
+                logger.printf("Giving up launching agent %s%n", slave.getNodeName());
+                setTaskState(STOPPING);
+                return;
+            }
+            retries++;
+            launchFailure = null;
+            ECSAgentClaimAction.cancel(taskArn);
+            if (failure.getAction() == ECSTaskFailure.Action.RETRY_ELSEWHERE && task.getContainerInstanceArn() != null) {
+                String instanceId = service.getEc2InstanceId(cloud.getCluster(), task.getContainerInstanceArn());
+                if (instanceId != null) {
+                    excludedInstanceIds.add(instanceId);
                 }
             }
+            logger.printf("Retrying launch (%d/%d)%s%n", retries, MAX_LAUNCH_RETRIES,
+                    excludedInstanceIds.isEmpty() ? "" : " avoiding instances " + excludedInstanceIds);
+            setTaskState(TASK_DEFINITION_CREATED);
         }
 
         private void waitForAgentToConnect() {
@@ -185,10 +379,12 @@ class ECSLauncher extends JNLPLauncher {
                     while (i++ < j && state == TASK_LAUNCHED) {
                         if (slave.getECSComputer() == null) {
                             LOGGER.log(WARNING, "Node was deleted, computer is null");
+                            stopSpareTask();
                             setTaskState(STOPPING);
                             return;
                         }
                         if (computer.isOnline()) {
+                            keepConnectedTask();
                             setTaskState(RUNNING);
                             return;
                         }
@@ -198,16 +394,45 @@ class ECSLauncher extends JNLPLauncher {
                     }
 
                     LOGGER.log(WARNING, "Agent " + slave.getNodeName() + " is not connected after " + cloud.getSlaveTimoutInSeconds() + " attempts. STOPPING Slave.");
+                    stopSpareTask();
                     setTaskState(STOPPING);
                 } catch (InterruptedException ex) {
                     Thread.currentThread().interrupt();
                     LOGGER.log(SEVERE, "Error Waiting for Agent to connect: " + slave.getNodeName(), ex);
+                    stopSpareTask();
                     setTaskState(STOPPING);
                 }
             }
         }
 
 
+        /**
+         * Adds the new state and the time spent in the previous state to the launch record, and adds the record to the
+         * launch history of the cloud once the launch has ended.
+         */
+        private void recordPhase(State previous, State state) {
+            if (record == null) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            record.addTransition(state, now);
+            if (previous != null) {
+                record.addPhase(previous, now - phaseStarted);
+            }
+            phaseStarted = now;
+            if (state == RUNNING || state == STOPPING) {
+                record.setRetries(retries);
+                record.setHedged(hedged);
+                if (state == RUNNING) {
+                    record.finish(ECSLaunchRecord.Outcome.SUCCEEDED, null);
+                } else {
+                    record.finish(ECSLaunchRecord.Outcome.FAILED, failureReason != null ? failureReason : "Launch failed in state " + previous);
+                }
+                cloud.getLaunchHistory().add(record);
+                record = null;
+            }
+        }
+
         private void saveSlave() {
             try {
                 slave.save();
@@ -218,36 +443,100 @@ class ECSLauncher extends JNLPLauncher {
 
         private void setTaskDefinition(TaskDefinition taskDefinition) {
             this.taskDefinition = taskDefinition;
+            span.setAttribute("ecs.task_definition_arn", taskDefinition.getTaskDefinitionArn());
+            record.setTaskDefinitionArn(taskDefinition.getTaskDefinitionArn());
         }
 
         private void setTaskArn(String taskArn) {
             this.taskArn = taskArn;
+            span.setAttribute("ecs.task_arn", taskArn);
+            record.setTask(taskArn, null);
             slave.getHelper().setTaskArn(taskArn);
+            slave.getHelper().setClusterArn(cloud.getCluster());
         }
 
-        private void setTaskState(State state) {
-            this.state = state;
+        /**
+         * Continues the trace started when the agent was provisioned, or starts one for an agent provisioned otherwise.
+         */
+        private void startTrace(String nodeName) {
+            ECSSpan provisioned = slave.getHelper().getLaunchSpan();
+            if (provisioned != null && provisioned.isRecording()) {
+                span = provisioned;
+            } else {
+                span = cloud.getTracer().startTrace("ECS agent launch")
+                        .setAttribute("ecs.cloud", cloud.name)
+                        .setAttribute("ecs.cluster", cloud.getCluster())
+                        .setAttribute("ecs.template", template.getTemplateName());
+            }
+            span.setAttribute("jenkins.node", nodeName);
+            slave.getHelper().setLaunchSpan(null);
+        }
 
-            slave.getHelper().setTaskState(state);
-            switch (this.state) {
+        /**
+         * Ends the span of the previous state and starts the one of the new state, and ends the trace once the launch
+         * has ended.
+         */
+        private void tracePhase(State state, String failure) {
+            phaseSpan.end(failure);
+            phaseSpan = ECSSpan.NOOP;
+            switch (state) {
                 case INITIALIZING:
-                    createTaskDefinition();
+                    phaseSpan = span.startChild("register task definition");
                     break;
                 case TASK_DEFINITION_CREATED:
-                    runTask();
+                    phaseSpan = span.startChild("run task").setAttribute("ecs.launch.retry", retries);
                     break;
                 case TASK_CREATED:
-                    waitForTaskToRun();
+                    phaseSpan = span.startChild("wait for task");
                     break;
                 case TASK_LAUNCHED:
-                    waitForAgentToConnect();
+                    phaseSpan = span.startChild("agent connect");
                     break;
                 case RUNNING:
-                    saveSlave();
+                case STOPPING:
+                    span.setAttribute("ecs.launch.state", state.name()).end(failure);
                     break;
                 default:
                     break;
+            }
+        }
+
+        private void setTaskState(State state) {
+            State previous = this.state;
+            this.state = state;
+            recordPhase(previous, state);
+            String failure = state == STOPPING ? (failureReason != null ? failureReason : "Launch failed in state " + previous) : null;
+            tracePhase(state, failure);
+            if (state == RUNNING) {
+                cloud.getCircuitBreaker(template).recordSuccess();
+            } else if (state == STOPPING && launchFailure != null && launchFailure.isLaunchFailure()) {
+                // interrupted waits, removed agents and stops nobody can classify say nothing about the template
+                cloud.getCircuitBreaker(template).recordFailure(System.currentTimeMillis(), failure);
+            }
+
+            slave.getHelper().setTaskState(state);
+            try (ECSSpan.Scope scope = phaseSpan.makeCurrent()) {
+                switch (this.state) {
+                    case INITIALIZING:
+                        createTaskDefinition();
+                        break;
+                    case TASK_DEFINITION_CREATED:
+                        runTask();
+                        break;
+                    case TASK_CREATED:
+                        saveSlave();
+                        waitForTaskToRun();
+                        break;
+                    case TASK_LAUNCHED:
+                        waitForAgentToConnect();
+                        break;
+                    case RUNNING:
+                        saveSlave();
+                        break;
+                    default:
+                        break;
 
+                }
             }
         }
 
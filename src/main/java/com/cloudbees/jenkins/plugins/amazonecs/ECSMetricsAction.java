@@ -0,0 +1,111 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import hudson.Extension;
+import hudson.model.RootAction;
+import hudson.slaves.Cloud;
+import jenkins.model.Jenkins;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serves the ECS API metrics of all ECS clouds in the Prometheus text format at <code>/ecs-metrics/prometheus</code>,
+ * with the cloud, region and operation as labels, so that the API pressure of a controller can be scraped without
+ * the Metrics plugin.
+ */
+@Extension
+public class ECSMetricsAction implements RootAction {
+
+    static final String URL_NAME = "ecs-metrics";
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return null;
+    }
+
+    @Override
+    public String getUrlName() {
+        return URL_NAME;
+    }
+
+    public void doPrometheus(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        Jenkins jenkins = JenkinsWrapper.getInstance();
+        jenkins.checkPermission(Jenkins.ADMINISTER);
+        List<ECSCloud> clouds = new ArrayList<>();
+        for (Cloud cloud : jenkins.clouds) {
+            if (cloud instanceof ECSCloud) {
+                clouds.add((ECSCloud) cloud);
+            }
+        }
+        rsp.setContentType("text/plain; version=0.0.4; charset=UTF-8");
+        PrintWriter writer = rsp.getWriter();
+        writePrometheus(writer, clouds);
+        writer.flush();
+    }
+
+    static void writePrometheus(PrintWriter out, List<ECSCloud> clouds) {
+        line(out, "# HELP jenkins_ecs_api_calls_total ECS API calls.");
+        line(out, "# TYPE jenkins_ecs_api_calls_total counter");
+        for (ECSCloud cloud : clouds) {
+            for (Map.Entry<String, ECSApiMetrics.Operation> entry : cloud.getApiMetrics().getOperations().entrySet()) {
+                line(out, "jenkins_ecs_api_calls_total{" + labels(cloud, entry.getKey()) + "} " + entry.getValue().getCalls());
+            }
+        }
+        line(out, "# HELP jenkins_ecs_api_errors_total Failed ECS API calls, by error code.");
+        line(out, "# TYPE jenkins_ecs_api_errors_total counter");
+        for (ECSCloud cloud : clouds) {
+            for (Map.Entry<String, ECSApiMetrics.Operation> entry : cloud.getApiMetrics().getOperations().entrySet()) {
+                for (Map.Entry<String, Long> error : entry.getValue().getErrors().entrySet()) {
+                    line(out, "jenkins_ecs_api_errors_total{" + labels(cloud, entry.getKey()) + ",error=\"" + escape(error.getKey()) + "\"} " + error.getValue());
+                }
+            }
+        }
+        line(out, "# HELP jenkins_ecs_api_throttles_total ECS API calls which failed because they were throttled.");
+        line(out, "# TYPE jenkins_ecs_api_throttles_total counter");
+        for (ECSCloud cloud : clouds) {
+            for (Map.Entry<String, ECSApiMetrics.Operation> entry : cloud.getApiMetrics().getOperations().entrySet()) {
+                line(out, "jenkins_ecs_api_throttles_total{" + labels(cloud, entry.getKey()) + "} " + entry.getValue().getThrottles());
+            }
+        }
+        line(out, "# HELP jenkins_ecs_api_latency_seconds Duration of ECS API calls, including retries by the SDK.");
+        line(out, "# TYPE jenkins_ecs_api_latency_seconds histogram");
+        for (ECSCloud cloud : clouds) {
+            for (Map.Entry<String, ECSApiMetrics.Operation> entry : cloud.getApiMetrics().getOperations().entrySet()) {
+                String labels = labels(cloud, entry.getKey());
+                long[] buckets = entry.getValue().getCumulativeBuckets();
+                for (int i = 0; i < ECSApiMetrics.LATENCY_BUCKETS.length; i++) {
+                    line(out, "jenkins_ecs_api_latency_seconds_bucket{" + labels + ",le=\"" + ECSApiMetrics.LATENCY_BUCKETS[i] + "\"} " + buckets[i]);
+                }
+                line(out, "jenkins_ecs_api_latency_seconds_bucket{" + labels + ",le=\"+Inf\"} " + buckets[buckets.length - 1]);
+                line(out, "jenkins_ecs_api_latency_seconds_sum{" + labels + "} " + entry.getValue().getTotalSeconds());
+                line(out, "jenkins_ecs_api_latency_seconds_count{" + labels + "} " + buckets[buckets.length - 1]);
+            }
+        }
+    }
+
+    /**
+     * The format needs <code>\n</code> line endings on every platform.
+     */
+    private static void line(PrintWriter out, String line) {
+        out.print(line);
+        out.print('\n');
+    }
+
+    private static String labels(ECSCloud cloud, String operation) {
+        return "cloud=\"" + escape(cloud.name) + "\",region=\"" + escape(cloud.getRegionName()) + "\",operation=\"" + escape(operation) + "\"";
+    }
+
+    private static String escape(String value) {
+        return String.valueOf(value).replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
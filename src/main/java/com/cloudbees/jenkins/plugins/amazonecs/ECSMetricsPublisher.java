@@ -0,0 +1,65 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import hudson.slaves.Cloud;
+import jenkins.metrics.api.Metrics;
+import jenkins.model.Jenkins;
+
+import java.util.Map;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+/**
+ * Publishes the ECS API metrics of all ECS clouds to the Metrics plugin, when it is installed, as gauges named
+ * <code>jenkins.ecs.api.&lt;cloud&gt;.&lt;region&gt;.&lt;operation&gt;.&lt;metric&gt;</code>.
+ *
+ * The gauges are registered again every minute, so that new clouds and operations show up and the gauges of removed
+ * or reconfigured clouds go away.
+ */
+@Extension(optional = true)
+public final class ECSMetricsPublisher extends AsyncPeriodicWork {
+
+    static final String PREFIX = "jenkins.ecs.api";
+
+    public ECSMetricsPublisher() {
+        super("ECS API metrics");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return MINUTES.toMillis(1);
+    }
+
+    @Override
+    protected void execute(TaskListener listener) {
+        Jenkins jenkins = JenkinsWrapper.getInstance();
+        MetricRegistry registry = Metrics.metricRegistry();
+        if (jenkins == null || registry == null) {
+            return;
+        }
+        registry.removeMatching((name, metric) -> name.startsWith(PREFIX + "."));
+        for (Cloud c : jenkins.clouds) {
+            if (c instanceof ECSCloud) {
+                register(registry, (ECSCloud) c);
+            }
+        }
+    }
+
+    static void register(MetricRegistry registry, ECSCloud cloud) {
+        for (Map.Entry<String, ECSApiMetrics.Operation> entry : cloud.getApiMetrics().getOperations().entrySet()) {
+            final ECSApiMetrics.Operation operation = entry.getValue();
+            String name = MetricRegistry.name(PREFIX, cloud.name, cloud.getRegionName(), entry.getKey());
+            registry.register(MetricRegistry.name(name, "calls"), (Gauge<Long>) operation::getCalls);
+            registry.register(MetricRegistry.name(name, "errors"), (Gauge<Long>) operation::getErrorCount);
+            registry.register(MetricRegistry.name(name, "throttles"), (Gauge<Long>) operation::getThrottles);
+            registry.register(MetricRegistry.name(name, "latency", "mean"), (Gauge<Long>) operation::getMeanMillis);
+            for (final String type : operation.getErrors().keySet()) {
+                registry.register(MetricRegistry.name(name, "errors", type), (Gauge<Long>) () -> operation.getErrors().get(type));
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import com.amazonaws.services.ecs.model.Task;
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Node;
+import hudson.model.TaskListener;
+import hudson.slaves.Cloud;
+import jenkins.model.Jenkins;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Stops tasks which were started by an {@link ECSCloud} but do not belong to any ECS agent anymore, e.g. because the
+ * controller was restarted or the launch was abandoned while the task was starting.
+ *
+ * Tasks are recognised by the <code>startedBy</code> value of their cloud and are only stopped once they are older than
+ * the time an agent may take to launch and connect, so that tasks which are still being handed to their agent are kept.
+ *
+ * Besides the cluster of the cloud, the clusters its agents were started in are searched too, and remembered until
+ * they have no tasks of the cloud left, so that orphans are reaped after the cluster of a cloud was changed. A
+ * previous cluster is only known from the agents, so once Jenkins restarts without an agent in it, its orphans have
+ * to be stopped by hand.
+ */
+@Extension
+public class ECSOrphanedTaskReaper extends AsyncPeriodicWork {
+
+    private static final Logger LOGGER = Logger.getLogger(ECSOrphanedTaskReaper.class.getName());
+
+    private static final long MIN_GRACE_PERIOD_MILLIS = MINUTES.toMillis(10);
+
+    private static final Map<String, Set<String>> PREVIOUS_CLUSTERS = new ConcurrentHashMap<>();
+
+    public ECSOrphanedTaskReaper() {
+        super("ECS orphaned task reaper");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return MINUTES.toMillis(5);
+    }
+
+    @Override
+    protected void execute(TaskListener listener) {
+        Jenkins jenkins = JenkinsWrapper.getInstance();
+        if (jenkins == null) {
+            return;
+        }
+        Set<String> liveTaskArns = getLiveTaskArns(jenkins.getNodes());
+        Map<String, Set<String>> agentClusters = getAgentClusters(jenkins.getNodes());
+        for (Cloud cloud : jenkins.clouds) {
+            if (cloud instanceof ECSCloud) {
+                try {
+                    Set<String> clusters = agentClusters.get(cloud.name);
+                    reap((ECSCloud) cloud, clusters != null ? clusters : new HashSet<>(), liveTaskArns, System.currentTimeMillis());
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Failed to look for orphaned tasks of cloud " + cloud.name, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * The tasks of all ECS agents, no matter which cloud they belong to, so that clouds sharing a cluster and a
+     * truncated <code>startedBy</code> value never stop each other's tasks.
+     */
+    static Set<String> getLiveTaskArns(Collection<? extends Node> nodes) {
+        Set<String> taskArns = new HashSet<>();
+        for (Node node : nodes) {
+            if (node instanceof ECSSlave) {
+                ECSSlaveHelper helper = ((ECSSlave) node).getHelper();
+                if (helper != null && helper.getTaskArn() != null) {
+                    taskArns.add(helper.getTaskArn());
+                }
+            }
+        }
+        return taskArns;
+    }
+
+    /**
+     * The clusters the ECS agents were started in, by the name of their cloud.
+     */
+    static Map<String, Set<String>> getAgentClusters(Collection<? extends Node> nodes) {
+        Map<String, Set<String>> clusters = new HashMap<>();
+        for (Node node : nodes) {
+            if (node instanceof ECSSlave) {
+                ECSSlaveHelper helper = ((ECSSlave) node).getHelper();
+                try {
+                    ECSCloud cloud = ((ECSSlave) node).getCloud();
+                    if (helper != null && cloud != null) {
+                        clusters.computeIfAbsent(cloud.name, k -> new HashSet<>()).add(helper.getClusterArn(cloud));
+                    }
+                } catch (IllegalStateException e) {
+                    LOGGER.log(Level.FINE, "Cloud of agent {0} has been removed", node.getNodeName());
+                }
+            }
+        }
+        return clusters;
+    }
+
+    /**
+     * @param agentClusters the clusters the agents of the cloud were started in.
+     * @return the ARNs of the tasks queued to be stopped.
+     */
+    static List<String> reap(ECSCloud cloud, Set<String> agentClusters, Set<String> liveTaskArns, long now) {
+        Set<String> previous = PREVIOUS_CLUSTERS.computeIfAbsent(cloud.name, k -> ConcurrentHashMap.newKeySet());
+        previous.addAll(agentClusters);
+        previous.remove(cloud.getCluster());
+        Set<String> clusters = new LinkedHashSet<>();
+        clusters.add(cloud.getCluster());
+        clusters.addAll(previous);
+
+        List<String> orphans = new ArrayList<>();
+        for (String cluster : clusters) {
+            List<String> taskArns = cloud.getEcsService().getTasksStartedBy(cluster, cloud.getTaskStartedBy());
+            if (taskArns.isEmpty()) {
+                previous.remove(cluster);
+            }
+            orphans.addAll(reap(cloud, cluster, taskArns, liveTaskArns, now));
+        }
+        return orphans;
+    }
+
+    private static List<String> reap(ECSCloud cloud, String cluster, List<String> taskArns, Set<String> liveTaskArns, long now) {
+        ECSService service = cloud.getEcsService();
+        List<String> candidates = new ArrayList<>();
+        for (String taskArn : taskArns) {
+            if (!liveTaskArns.contains(taskArn)) {
+                candidates.add(taskArn);
+            }
+        }
+        List<String> orphans = new ArrayList<>();
+        if (candidates.isEmpty()) {
+            return orphans;
+        }
+
+        long gracePeriod = getGracePeriodMillis(cloud);
+        for (Task task : service.describeTasks(cluster, candidates)) {
+            if (task.getCreatedAt() != null && now - task.getCreatedAt().getTime() > gracePeriod && !"STOPPED".equals(task.getLastStatus())) {
+                LOGGER.log(Level.INFO, "Stopping orphaned task {0} of cloud {1} in cluster {2}, created at {3}", new Object[]{task.getTaskArn(), cloud.name, cluster, task.getCreatedAt()});
+                service.deleteTaskAsync(task.getTaskArn(), cluster);
+                orphans.add(task.getTaskArn());
+            }
+        }
+        return orphans;
+    }
+
+    private static long getGracePeriodMillis(ECSCloud cloud) {
+        int launchTimeout = 0;
+        for (ECSTaskTemplate template : cloud.getTemplates()) {
+            launchTimeout = Math.max(launchTimeout, template.getSlaveLaunchTimeoutSeconds());
+        }
+        return Math.max(MIN_GRACE_PERIOD_MILLIS, SECONDS.toMillis((long) launchTimeout + cloud.getSlaveTimoutInSeconds()));
+    }
+}
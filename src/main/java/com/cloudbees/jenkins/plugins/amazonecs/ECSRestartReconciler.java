@@ -0,0 +1,145 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import com.amazonaws.services.ecs.model.Task;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.model.Node;
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Brings the ECS agents which were persisted before a restart of Jenkins back in line with their tasks.
+ *
+ * The tasks of all agents of a cloud are described in one batched pass. Agents whose task is still running are kept,
+ * their agent process reconnects by itself, and they are removed if it does not within the connection timeout of the
+ * cloud. Agents whose task is still starting get the launch timeout of their template on top of it. Agents whose task
+ * is gone, or which never got a task, are removed.
+ */
+public final class ECSRestartReconciler {
+
+    private static final Logger LOGGER = Logger.getLogger(ECSRestartReconciler.class.getName());
+
+    private static final Set<String> LIVE_STATUSES = new HashSet<>(Arrays.asList("PROVISIONING", "PENDING", "ACTIVATING", "RUNNING"));
+
+    private ECSRestartReconciler() {
+    }
+
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static void reconcileAfterRestart() {
+        Jenkins jenkins = JenkinsWrapper.getInstance();
+        if (jenkins == null) {
+            return;
+        }
+        Map<ECSCloud, List<ECSSlave>> agentsByCloud = new HashMap<>();
+        for (Node node : jenkins.getNodes()) {
+            if (!(node instanceof ECSSlave)) {
+                continue;
+            }
+            ECSSlave slave = (ECSSlave) node;
+            try {
+                ECSCloud cloud = slave.getCloud();
+                List<ECSSlave> agents = agentsByCloud.get(cloud);
+                if (agents == null) {
+                    agents = new ArrayList<>();
+                    agentsByCloud.put(cloud, agents);
+                }
+                agents.add(slave);
+            } catch (IllegalStateException e) {
+                LOGGER.log(Level.INFO, "Removing agent {0}, its cloud does not exist anymore", slave.getNodeName());
+                remove(slave, "Cloud has been removed");
+            }
+        }
+        for (Map.Entry<ECSCloud, List<ECSSlave>> entry : agentsByCloud.entrySet()) {
+            try {
+                for (Map.Entry<ECSSlave, Integer> reattached : reconcile(entry.getKey(), entry.getValue()).entrySet()) {
+                    scheduleConnectCheck(reattached.getKey(), reattached.getValue());
+                }
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Failed to reconcile the agents of cloud " + entry.getKey().name, e);
+            }
+        }
+    }
+
+    /**
+     * @return the agents whose task is still running or starting and which are kept, with how many seconds they have
+     * to connect.
+     */
+    static Map<ECSSlave, Integer> reconcile(ECSCloud cloud, List<ECSSlave> agents) {
+        Map<String, List<String>> taskArnsByCluster = new HashMap<>();
+        for (ECSSlave agent : agents) {
+            ECSSlaveHelper helper = agent.getHelper();
+            if (helper.getTaskArn() != null) {
+                String cluster = helper.getClusterArn(cloud);
+                List<String> taskArns = taskArnsByCluster.get(cluster);
+                if (taskArns == null) {
+                    taskArns = new ArrayList<>();
+                    taskArnsByCluster.put(cluster, taskArns);
+                }
+                taskArns.add(helper.getTaskArn());
+            }
+        }
+
+        Map<String, Task> tasks = new HashMap<>();
+        for (Map.Entry<String, List<String>> entry : taskArnsByCluster.entrySet()) {
+            for (Task task : cloud.getEcsService().describeTasks(entry.getKey(), entry.getValue())) {
+                tasks.put(task.getTaskArn(), task);
+            }
+        }
+
+        Map<ECSSlave, Integer> reattached = new LinkedHashMap<>();
+        for (ECSSlave agent : agents) {
+            ECSSlaveHelper helper = agent.getHelper();
+            Task task = helper.getTaskArn() == null ? null : tasks.get(helper.getTaskArn());
+            if (task != null && LIVE_STATUSES.contains(task.getLastStatus()) && !"STOPPED".equals(task.getDesiredStatus())) {
+                LOGGER.log(Level.INFO, "Reattaching agent {0} to task {1} ({2})", new Object[]{agent.getNodeName(), task.getTaskArn(), task.getLastStatus()});
+                helper.setTaskState(ECSSlaveHelper.State.RUNNING);
+                reattached.put(agent, getConnectTimeoutSeconds(cloud, helper.getTemplate(), task));
+            } else if (helper.getTaskArn() == null) {
+                remove(agent, "No task had been started before the restart");
+            } else {
+                remove(agent, task == null ? "Task is unknown to ECS" : task.getStoppedReason());
+            }
+        }
+        LOGGER.log(Level.INFO, "Cloud {0}: reattached {1} of {2} agents after restart", new Object[]{cloud.name, reattached.size(), agents.size()});
+        return reattached;
+    }
+
+    /**
+     * A task which is not RUNNING yet still has to pull its image and start its agent process before it can connect.
+     */
+    static int getConnectTimeoutSeconds(ECSCloud cloud, ECSTaskTemplate template, Task task) {
+        if ("RUNNING".equals(task.getLastStatus()) || template == null) {
+            return cloud.getSlaveTimoutInSeconds();
+        }
+        return template.getSlaveLaunchTimeoutSeconds() + cloud.getSlaveTimoutInSeconds();
+    }
+
+    private static void remove(ECSSlave agent, String reason) {
+        try {
+            ECSSlaveHelper helper = agent.getHelper();
+            if (helper != null) {
+                helper.taskStopped(reason);
+            } else {
+                agent.terminate();
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Failed to remove agent " + agent.getNodeName(), e);
+        }
+    }
+
+    private static void scheduleConnectCheck(ECSSlave agent, int timeoutSeconds) {
+        Timer.get().schedule(() -> {
+            ECSComputer computer = agent.getECSComputer();
+            if (agent.getHelper().getTaskState() == ECSSlaveHelper.State.RUNNING && (computer == null || !computer.isOnline())) {
+                LOGGER.log(Level.WARNING, "Agent {0} did not reconnect within {1}s after restart. STOPPING Slave.", new Object[]{agent.getNodeName(), timeoutSeconds});
+                agent.getHelper().setTaskState(ECSSlaveHelper.State.STOPPING);
+            }
+        }, timeoutSeconds, SECONDS);
+    }
+}
@@ -27,6 +27,7 @@ package com.cloudbees.jenkins.plugins.amazonecs;
 
 import com.amazonaws.ClientConfiguration;
 import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.client.builder.AwsClientBuilder;
 import com.amazonaws.services.ecs.AmazonECS;
 import com.amazonaws.services.ecs.AmazonECSClient;
 import com.amazonaws.services.ecs.AmazonECSClientBuilder;
@@ -47,8 +48,12 @@ import java.util.logging.Logger;
  */
 public class ECSService {
     private static final Logger LOGGER = Logger.getLogger(ECSService.class.getName());
+    private static final int MAX_DESCRIBE_TASKS = 100;
+    private static final int MAX_DESCRIBE_CONTAINER_INSTANCES = 100;
+    private static final int MAX_START_TASK_CONTAINER_INSTANCES = 10;
 
     private ECSClient client;
+    private final ECSApiMetrics apiMetrics = new ECSApiMetrics();
     private final String credentialsId;
     private final String regionName;
 
@@ -59,21 +64,42 @@ public class ECSService {
 
     ECSService(AWSCredentialsProvider credentialsProvider, String regionName) {
         this("", regionName);
-        this.client = new ECSClientImpl(credentialsProvider, regionName);
+        this.client = instrument(new ECSClientImpl(credentialsProvider, regionName));
     }
 
     void init(ECSClient client)
     {
-        this.client=client;
+        this.client=instrument(client);
     }
 
     private synchronized ECSClient getAmazonECSClient() {
         if (client == null) {
-            client = new ECSClientImpl(credentialsId, regionName);
+            client = instrument(new ECSClientImpl(credentialsId, regionName));
         }
         return client;
     }
 
+    private ECSClient instrument(ECSClient client) {
+        if (client instanceof ECSClientImpl) {
+            ((ECSClientImpl) client).apiMetrics = apiMetrics;
+        }
+        return new ECSInstrumentedClient(client, apiMetrics);
+    }
+
+    /**
+     * @return the number of ECS API calls per operation made by this service.
+     */
+    SortedMap<String, Long> getApiCallCounts() {
+        return apiMetrics.getCallCounts();
+    }
+
+    /**
+     * @return the count, latency and errors of the ECS API calls per operation made by this service.
+     */
+    ECSApiMetrics getApiMetrics() {
+        return apiMetrics;
+    }
+
     public List<String> getClusterArns(){
         final List<String> allClusterArns = new ArrayList<>();
         String lastToken = null;
@@ -89,12 +115,24 @@ public class ECSService {
     void deleteTask(String taskArn, String clusterArn) {
         LOGGER.log(Level.INFO, "Delete ECS Slave task: {0}", taskArn);
         try {
-            getAmazonECSClient().stopTask(new StopTaskRequest().withTask(taskArn).withCluster(clusterArn));
+            stopTask(taskArn, clusterArn);
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "Couldn't stop task arn " + taskArn + " caught exception: " + e.getMessage(), e);
         }
     }
 
+    /**
+     * Queues the task to be stopped by the {@link ECSTaskStopper} and returns without waiting for ECS.
+     */
+    void deleteTaskAsync(String taskArn, String clusterArn) {
+        LOGGER.log(Level.INFO, "Queue delete of ECS Slave task: {0}", taskArn);
+        ECSTaskStopper.get().stop(this, taskArn, clusterArn);
+    }
+
+    void stopTask(String taskArn, String clusterArn) {
+        getAmazonECSClient().stopTask(new StopTaskRequest().withTask(taskArn).withCluster(clusterArn));
+    }
+
     /**
      * Looks whether the latest task definition matches the desired one. If yes, returns the full TaskDefinition of the existing one.
      * If no, register a new task definition with desired parameters and returns the new TaskDefinition.
@@ -115,6 +153,36 @@ public class ECSService {
     }
 
 
+    /**
+     * Starts a task which only pulls the image of the template on each of the container instances, registering its
+     * task definition first if there is none for the current image.
+     *
+     * @return the tasks which were started, with the container instance each was started on.
+     */
+    List<Task> prePullImage(final ECSCloud cloud, final ECSTaskTemplate template, Collection<String> containerInstanceArns) {
+        String familyName = fullQualifiedTemplateName(cloud, template) + "-prepull";
+        TaskDefinition definition = findTaskDefinition(familyName);
+        if (definition == null || !template.getImage().equals(definition.getContainerDefinitions().get(0).getImage())) {
+            definition = getAmazonECSClient().registerTaskDefinition(template.createPrePullTaskDefinitionRequest(familyName)).getTaskDefinition();
+            LOGGER.log(Level.INFO, "Created pre-pull Task Definition: {0}", definition.getTaskDefinitionArn());
+        }
+        List<String> instanceArns = new ArrayList<>(containerInstanceArns);
+        List<Task> started = new ArrayList<>();
+        for (int i = 0; i < instanceArns.size(); i += MAX_START_TASK_CONTAINER_INSTANCES) {
+            List<String> batch = instanceArns.subList(i, Math.min(i + MAX_START_TASK_CONTAINER_INSTANCES, instanceArns.size()));
+            StartTaskResult result = getAmazonECSClient().startTask(new StartTaskRequest()
+                    .withCluster(cloud.getCluster())
+                    .withTaskDefinition(definition.getTaskDefinitionArn())
+                    .withContainerInstances(batch)
+                    .withStartedBy(cloud.getPrePullStartedBy()));
+            started.addAll(result.getTasks());
+            for (Failure failure : result.getFailures()) {
+                LOGGER.log(Level.WARNING, "Could not pre-pull image {0} on {1}: {2}", new Object[]{template.getImage(), failure.getArn(), failure.getReason()});
+            }
+        }
+        return started;
+    }
+
     /**
      * Finds the task definition for the specified family or ARN, or null if none is found.
      * The parameter may be a task definition family, family with revision, or full task definition ARN.
@@ -135,6 +203,14 @@ public class ECSService {
     }
 
     boolean checkIfAdditionalSlaveCanBeProvisioned(String cluster, ECSTaskTemplate template, int maxSlaves) {
+        return checkIfAdditionalSlaveCanBeProvisioned(cluster, template, maxSlaves, true);
+    }
+
+    /**
+     * @param waitForResources whether to wait up to the launch timeout of the template for the cluster to have room,
+     *                         or to check the container instances only once.
+     */
+    boolean checkIfAdditionalSlaveCanBeProvisioned(String cluster, ECSTaskTemplate template, int maxSlaves, boolean waitForResources) {
         if (maxSlaves != 0) {
             List<String> allRunningTasks = getRunningTasks(cluster);
             LOGGER.log(Level.INFO, "ECS Slaves INITIALIZING/ RUNNING: {0}", allRunningTasks.size());
@@ -143,7 +219,10 @@ public class ECSService {
                 return false;
             }
         }
-        return template.isFargate() || areSufficientClusterResourcesAvailable(template, cluster);
+        if (template.isFargate()) {
+            return true;
+        }
+        return waitForResources ? areSufficientClusterResourcesAvailable(template, cluster) : isCapacityAvailable(template, cluster);
     }
 
     List<String> getRunningTasks(String cluster) {
@@ -159,18 +238,77 @@ public class ECSService {
         return allTaskArns;
     }
 
+    /**
+     * Lists the tasks in the cluster that were started with the given <code>startedBy</code> value and have not been
+     * stopped yet.
+     */
+    List<String> getTasksStartedBy(String cluster, String startedBy) {
+        ListTasksRequest request = new ListTasksRequest().withCluster(cluster).withStartedBy(startedBy);
+        final List<String> allTaskArns = new ArrayList<>();
+        String lastToken = null;
+        do {
+            ListTasksResult result = getAmazonECSClient().listTasks(request.withNextToken(lastToken));
+            allTaskArns.addAll(result.getTaskArns());
+            lastToken = result.getNextToken();
+        } while (lastToken != null);
+        return allTaskArns;
+    }
+
+    /**
+     * Describes any number of tasks, in as few DescribeTasks calls as the limit of 100 tasks per call allows.
+     * Tasks which ECS does not know anymore are missing from the result.
+     */
+    List<Task> describeTasks(String cluster, Collection<String> taskArns) {
+        return describeTasks(cluster, taskArns, new ArrayList<>());
+    }
+
+    /**
+     * Describes any number of tasks like {@link #describeTasks(String, Collection)}, and collects the tasks which ECS
+     * reports as <code>MISSING</code>, as opposed to tasks which could not be described for another reason.
+     */
+    List<Task> describeTasks(String cluster, Collection<String> taskArns, Collection<String> missingTaskArns) {
+        final List<Task> tasks = new ArrayList<>();
+        final List<String> arns = new ArrayList<>(taskArns);
+        for (int from = 0; from < arns.size(); from += MAX_DESCRIBE_TASKS) {
+            List<String> batch = arns.subList(from, Math.min(from + MAX_DESCRIBE_TASKS, arns.size()));
+            DescribeTasksResult result = getAmazonECSClient().describeTasks(new DescribeTasksRequest().withCluster(cluster).withTasks(batch));
+            tasks.addAll(result.getTasks());
+            for (Failure failure : result.getFailures()) {
+                if ("MISSING".equals(failure.getReason())) {
+                    missingTaskArns.add(failure.getArn());
+                } else {
+                    LOGGER.log(Level.FINE, "Could not describe task {0}: {1}", new Object[]{failure.getArn(), failure.getReason()});
+                }
+            }
+        }
+        return tasks;
+    }
+
     String getTaskStatus(ECSCloud cloud, String taskArn) {
+        Task task = describeTask(cloud, taskArn);
+        return task == null ? "UNKNOWN" : task.getLastStatus();
+    }
+
+    /**
+     * @return the task, including the stopped reasons of the task and its containers, or null if ECS does not know it.
+     */
+    @CheckForNull
+    Task describeTask(ECSCloud cloud, String taskArn) {
         DescribeTasksRequest request = new DescribeTasksRequest();
         request.setCluster(cloud.getCluster());
         request.setTasks(Arrays.asList(taskArn));
 
         DescribeTasksResult result = getAmazonECSClient().describeTasks(request);
-        if (result.getTasks().isEmpty()) {
-            return "UNKNOWN";
-        }
-        else {
-            return result.getTasks().get(0).getLastStatus();
-        }
+        return result.getTasks().isEmpty() ? null : result.getTasks().get(0);
+    }
+
+    /**
+     * @return the id of the EC2 instance behind the container instance, or null if it is unknown.
+     */
+    @CheckForNull
+    String getEc2InstanceId(String clusterArn, String containerInstanceArn) {
+        List<ContainerInstance> instances = describeContainerInstances(clusterArn, Collections.singletonList(containerInstanceArn));
+        return instances.isEmpty() ? null : instances.get(0).getEc2InstanceId();
     }
 
     private String fullQualifiedTemplateName(final ECSCloud cloud, final ECSTaskTemplate template) {
@@ -178,6 +316,13 @@ public class ECSService {
     }
 
     String runEcsTask(final ECSSlave slave, final ECSTaskTemplate template, String clusterArn, Collection<String> command, TaskDefinition taskDefinition) throws AbortException {
+        return runEcsTask(slave, template, clusterArn, command, taskDefinition, Collections.<String>emptyList());
+    }
+
+    /**
+     * Runs the agent task, keeping it off the given EC2 instances, e.g. ones on which an earlier attempt failed.
+     */
+    String runEcsTask(final ECSSlave slave, final ECSTaskTemplate template, String clusterArn, Collection<String> command, TaskDefinition taskDefinition, Collection<String> excludedInstanceIds) throws AbortException {
         KeyValuePair envNodeName = new KeyValuePair();
         envNodeName.setName("SLAVE_NODE_NAME");
         envNodeName.setValue(slave.getECSComputer().getName());
@@ -202,8 +347,79 @@ public class ECSService {
                                 .withCommand(command)
                                 .withEnvironment(envNodeName)
                                 .withEnvironment(envNodeSecret)))
+                .withStartedBy(slave.getCloud().getTaskStartedBy())
                 .withCluster(clusterArn);
 
+        applyNetworkConfiguration(req, template);
+        applyPlacementStrategy(req, slave.getCloud(), template);
+        applyExcludedInstances(req, template, excludedInstanceIds);
+        final RunTaskResult runTaskResult = getAmazonECSClient().runTask(req);
+
+
+        if (!runTaskResult.getFailures().isEmpty()) {
+            LOGGER.log(Level.WARNING, "Slave {0} - Failure to run task with definition {1} on ECS cluster {2}", new Object[]{slave.getNodeName(), taskDefinition.getTaskDefinitionArn(), clusterArn});
+            for (Failure failure : runTaskResult.getFailures()) {
+                LOGGER.log(Level.WARNING, "Slave {0} - Failure reason={1}, arn={2}", new Object[]{slave.getNodeName(), failure.getReason(), failure.getArn()});
+            }
+            throw new AbortException("Failed to run slave container " + slave.getNodeName() + ": " + getReasons(runTaskResult.getFailures()));
+        }
+        return runTaskResult.getTasks().get(0).getTaskArn();
+    }
+
+    /**
+     * Starts up to {@link ECSTaskBatcher#MAX_BATCH_SIZE} identical tasks with a single RunTask call. The containers do not
+     * get an agent identity on the command line, they claim one at boot through {@link ECSAgentClaimAction}.
+     *
+     * @return the ARNs of the tasks which were started, which may be fewer than requested.
+     */
+    List<String> runEcsTasks(final ECSCloud cloud, final ECSTaskTemplate template, int count, TaskDefinition taskDefinition, String claimToken) throws AbortException {
+        return runEcsTasks(cloud, template, count, taskDefinition, claimToken, Collections.<String>emptyList());
+    }
+
+    /**
+     * Starts tasks which claim their agent identity, keeping them off the given EC2 instances.
+     */
+    List<String> runEcsTasks(final ECSCloud cloud, final ECSTaskTemplate template, int count, TaskDefinition taskDefinition, String claimToken, Collection<String> excludedInstanceIds) throws AbortException {
+        String slaveContainerName = taskDefinition.getContainerDefinitions().get(0).getName();
+
+        ContainerOverride containerOverride = new ContainerOverride()
+                .withName(slaveContainerName)
+                .withEnvironment(new KeyValuePair().withName("JENKINS_URL").withValue(cloud.getJenkinsUrl()))
+                .withEnvironment(new KeyValuePair().withName("JENKINS_ECS_CLAIM_URL").withValue(ECSAgentClaimAction.getClaimUrl(cloud.getJenkinsUrl())))
+                .withEnvironment(new KeyValuePair().withName("JENKINS_ECS_CLAIM_TOKEN").withValue(claimToken));
+        if (StringUtils.isNotBlank(cloud.getTunnel())) {
+            containerOverride.withEnvironment(new KeyValuePair().withName("JENKINS_TUNNEL").withValue(cloud.getTunnel()));
+        }
+
+        RunTaskRequest req = new RunTaskRequest()
+                .withTaskDefinition(taskDefinition.getTaskDefinitionArn())
+                .withLaunchType(LaunchType.fromValue(template.getLaunchType()))
+                .withCount(count)
+                .withOverrides(new TaskOverride().withContainerOverrides(containerOverride))
+                .withStartedBy(cloud.getTaskStartedBy())
+                .withCluster(cloud.getCluster());
+
+        applyNetworkConfiguration(req, template);
+        applyPlacementStrategy(req, cloud, template);
+        applyExcludedInstances(req, template, excludedInstanceIds);
+        final RunTaskResult runTaskResult = getAmazonECSClient().runTask(req);
+
+        for (Failure failure : runTaskResult.getFailures()) {
+            LOGGER.log(Level.WARNING, "Batch of {0} - Failure reason={1}, arn={2}", new Object[]{count, failure.getReason(), failure.getArn()});
+        }
+        if (runTaskResult.getTasks().isEmpty()) {
+            throw new AbortException("Failed to run any of " + count + " slave containers with definition " + taskDefinition.getTaskDefinitionArn() + ": " + getReasons(runTaskResult.getFailures()));
+        }
+
+        List<String> taskArns = new ArrayList<>();
+        for (Task task : runTaskResult.getTasks()) {
+            taskArns.add(task.getTaskArn());
+        }
+        LOGGER.log(Level.INFO, "Started {0} of {1} tasks with definition {2}", new Object[]{taskArns.size(), count, taskDefinition.getTaskDefinitionArn()});
+        return taskArns;
+    }
+
+    private void applyNetworkConfiguration(RunTaskRequest req, ECSTaskTemplate template) {
         if (template.isFargate()) {
             AwsVpcConfiguration awsVpcConfiguration = new AwsVpcConfiguration();
             awsVpcConfiguration.setAssignPublicIp(template.getAssignPublicIp() ? "ENABLED" : "DISABLED");
@@ -215,17 +431,36 @@ public class ECSService {
 
             req.withNetworkConfiguration(networkConfiguration);
         }
-        final RunTaskResult runTaskResult = getAmazonECSClient().runTask(req);
+    }
 
+    /**
+     * Packs agents onto the busiest container instances when the cloud consolidates instances, so that lightly used
+     * instances empty out and can be scaled in.
+     */
+    private void applyPlacementStrategy(RunTaskRequest req, ECSCloud cloud, ECSTaskTemplate template) {
+        if (cloud.isConsolidateInstances() && !template.isFargate()) {
+            req.withPlacementStrategy(new PlacementStrategy().withType(PlacementStrategyType.Binpack).withField("memory"));
+        }
+    }
 
-        if (!runTaskResult.getFailures().isEmpty()) {
-            LOGGER.log(Level.WARNING, "Slave {0} - Failure to run task with definition {1} on ECS cluster {2}", new Object[]{slave.getNodeName(), taskDefinition.getTaskDefinitionArn(), clusterArn});
-            for (Failure failure : runTaskResult.getFailures()) {
-                LOGGER.log(Level.WARNING, "Slave {0} - Failure reason={1}, arn={2}", new Object[]{slave.getNodeName(), failure.getReason(), failure.getArn()});
+    private void applyExcludedInstances(RunTaskRequest req, ECSTaskTemplate template, Collection<String> excludedInstanceIds) {
+        if (!template.isFargate()) {
+            for (String instanceId : excludedInstanceIds) {
+                req.withPlacementConstraints(new PlacementConstraint().withType(PlacementConstraintType.MemberOf).withExpression("ec2InstanceId != " + instanceId));
             }
-            throw new AbortException("Failed to run slave container " + slave.getNodeName());
         }
-        return runTaskResult.getTasks().get(0).getTaskArn();
+    }
+
+    /**
+     * The reasons RunTask gave for the tasks it did not start, e.g. <code>RESOURCE:MEMORY</code>, so that the launcher
+     * can classify them.
+     */
+    private static String getReasons(List<Failure> failures) {
+        Set<String> reasons = new LinkedHashSet<>();
+        for (Failure failure : failures) {
+            reasons.add(failure.getReason());
+        }
+        return StringUtils.join(reasons, ", ");
     }
 
     boolean areSufficientClusterResourcesAvailable(ECSTaskTemplate template, String clusterArn) {
@@ -235,10 +470,7 @@ public class ECSService {
         Object waitHandle = new Object();
         synchronized (waitHandle) {
             while (i++ < j && !hasEnoughResources) {
-                List<String> containerArns = getContainerArns(clusterArn);
-                DescribeContainerInstancesResult containerInstancesDesc = getAmazonECSClient().describeContainerInstances(new DescribeContainerInstancesRequest().withContainerInstances(containerArns).withCluster(clusterArn));
-                LOGGER.log(Level.INFO, "Found {0} instances", containerInstancesDesc.getContainerInstances().size());
-                hasEnoughResources = areEnoughResourcesAvailable(template, containerInstancesDesc);
+                hasEnoughResources = isCapacityAvailable(template, clusterArn);
 
                 if (!hasEnoughResources) {
                     try {
@@ -261,25 +493,44 @@ public class ECSService {
         return true;
     }
 
-    private boolean areEnoughResourcesAvailable(ECSTaskTemplate template,  DescribeContainerInstancesResult containerInstancesDesc) {
-        boolean hasEnoughResources=false;
-        for (ContainerInstance instance : containerInstancesDesc.getContainerInstances()) {
-            LOGGER.log(Level.INFO, "Resources found in instance {1}: {0}", new Object[]{instance.getRemainingResources(), instance.getContainerInstanceArn()});
-            int memoryResource = 0;
-            int cpuResource = 0;
-            for (Resource resource : instance.getRemainingResources()) {
-                if ("MEMORY".equals(resource.getName())) {
-                    memoryResource = resource.getIntegerValue();
-                } else if ("CPU".equals(resource.getName())) {
-                    cpuResource = resource.getIntegerValue();
-                }
-            }
+    /**
+     * Checks once, without waiting, whether any container instance of the cluster can place a task of the template.
+     */
+    boolean isCapacityAvailable(ECSTaskTemplate template, String clusterArn) {
+        List<ContainerInstance> containerInstances = describeContainerInstances(clusterArn);
+        LOGGER.log(Level.INFO, "Found {0} instances", containerInstances.size());
+        return areEnoughResourcesAvailable(template, containerInstances);
+    }
 
+    /**
+     * Describes container instances of the cluster, in batches of at most {@value #MAX_DESCRIBE_CONTAINER_INSTANCES}.
+     */
+    List<ContainerInstance> describeContainerInstances(String clusterArn) {
+        return describeContainerInstances(clusterArn, getContainerArns(clusterArn));
+    }
+
+    List<ContainerInstance> describeContainerInstances(String clusterArn, Collection<String> containerInstanceArns) {
+        List<String> containerArns = new ArrayList<>(containerInstanceArns);
+        List<ContainerInstance> containerInstances = new ArrayList<>();
+        for (int i = 0; i < containerArns.size(); i += MAX_DESCRIBE_CONTAINER_INSTANCES) {
+            List<String> batch = containerArns.subList(i, Math.min(i + MAX_DESCRIBE_CONTAINER_INSTANCES, containerArns.size()));
+            DescribeContainerInstancesResult result = getAmazonECSClient().describeContainerInstances(new DescribeContainerInstancesRequest().withContainerInstances(batch).withCluster(clusterArn));
+            containerInstances.addAll(result.getContainerInstances());
+        }
+        return containerInstances;
+    }
 
-            LOGGER.log(Level.INFO, "Instance {0} has {1}mb of free memory. {2}mb are required", new Object[]{instance.getContainerInstanceArn(), memoryResource, template.getMemoryConstraint()});
-            LOGGER.log(Level.INFO, "Instance {0} has {1} units of free cpu. {2} units are required", new Object[]{instance.getContainerInstanceArn(), cpuResource, template.getCpu()});
-            if (memoryResource >= template.getMemoryConstraint()
-                    && cpuResource >= template.getCpu()) {
+    /**
+     * Whether any of the container instances could place a task of the template, by the checks of
+     * {@link ECSTemplateSelector#placeableOn}, which include the fixed host ports of the template.
+     */
+    private boolean areEnoughResourcesAvailable(ECSTaskTemplate template, List<ContainerInstance> containerInstances) {
+        boolean hasEnoughResources=false;
+        for (ContainerInstance instance : containerInstances) {
+            LOGGER.log(Level.INFO, "Resources found in instance {1}: {0}", new Object[]{instance.getRemainingResources(), instance.getContainerInstanceArn()});
+            Map<ECSCapacityPlanner.Constraint, Integer> placeable = ECSTemplateSelector.placeableOn(template, instance);
+            LOGGER.log(Level.INFO, "Instance {0} could place {1} task(s) of template {2}", new Object[]{instance.getContainerInstanceArn(), placeable, template.getTemplateName()});
+            if (placeable.isEmpty() || Collections.min(placeable.values()) > 0) {
                 hasEnoughResources = true;
                 break;
             }
@@ -302,9 +553,17 @@ public class ECSService {
 
     public static class ECSClientImpl implements ECSClient
     {
+        /**
+         * Overrides the ECS endpoint, e.g. to run against a local fake of ECS.
+         */
+        static final String ENDPOINT = System.getProperty(ECSService.class.getName() + ".endpoint");
+
         private final String credentialsId;
         private final String regionName;
         private AWSCredentialsProvider provider;
+        private String endpoint = ENDPOINT;
+        private ClientConfiguration clientConfiguration;
+        private ECSApiMetrics apiMetrics;
         private AmazonECS client;
 
         ECSClientImpl(String credentialsId, String regionName) {
@@ -319,12 +578,27 @@ public class ECSService {
             this.provider=provider;
         }
 
+        ECSClientImpl(AWSCredentialsProvider provider, String regionName, String endpoint, ClientConfiguration clientConfiguration)
+        {
+            this(provider, regionName);
+            this.endpoint=endpoint;
+            this.clientConfiguration=clientConfiguration;
+        }
+
         private synchronized AmazonECS getAmazonECSClient() {
             if(client==null) {
-                ClientConfiguration clientConfiguration=JenkinsWrapper.getClientConfiguration();
+                ClientConfiguration configuration=clientConfiguration != null ? clientConfiguration : JenkinsWrapper.getClientConfiguration();
 
                 AWSCredentialsProvider credentials = getCredentials(credentialsId);
-                final AmazonECSClientBuilder builder = AmazonECSClient.builder().withClientConfiguration(clientConfiguration).withRegion(regionName);
+                final AmazonECSClientBuilder builder = AmazonECSClient.builder().withClientConfiguration(configuration);
+                if (StringUtils.isNotBlank(endpoint)) {
+                    builder.withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(endpoint, regionName));
+                } else {
+                    builder.withRegion(regionName);
+                }
+                if (apiMetrics != null) {
+                    builder.withMetricsCollector(apiMetrics.getThrottledAttemptsCollector());
+                }
                 if (credentials != null) {
                     builder.withCredentials(credentials);
                     // no credentials provided, rely on com.amazonaws.auth.DefaultAWSCredentialsProviderChain
@@ -386,5 +660,9 @@ public class ECSService {
         public RunTaskResult runTask(RunTaskRequest request) {
             return getAmazonECSClient().runTask(request);
         }
+
+        public StartTaskResult startTask(StartTaskRequest request) {
+            return getAmazonECSClient().startTask(request);
+        }
     }
 }
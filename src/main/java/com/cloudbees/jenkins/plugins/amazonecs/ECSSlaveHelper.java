@@ -1,9 +1,12 @@
 package com.cloudbees.jenkins.plugins.amazonecs;
 
+import hudson.model.Queue;
 import hudson.remoting.VirtualChannel;
+import hudson.slaves.OfflineCause;
 import org.apache.commons.lang.RandomStringUtils;
 import org.apache.commons.lang.StringUtils;
 
+import javax.annotation.CheckForNull;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -23,14 +26,32 @@ public class ECSSlaveHelper
 
     private final ECSSlave slave;
     private final String name;
-    private final ECSTaskTemplate template;
+    /**
+     * Not persisted with the node, resolved again from the cloud by name and label after a restart.
+     */
+    private transient ECSTaskTemplate template;
+    private final String templateName;
+    private final String templateLabel;
     private String taskArn;
+    private String clusterArn;
+    private String containerInstanceArn;
+    private String lastJob;
+    private String lastRepository;
+    private transient boolean instanceDraining;
     private State taskState;
+    /**
+     * The trace of the launch, started when the agent was provisioned. Not persisted, a launch after a restart of
+     * Jenkins starts a new trace.
+     */
+    private transient ECSSpan launchSpan;
+    private String stoppedReason;
 
     public ECSSlaveHelper(ECSSlave slave, String name, ECSTaskTemplate template) {
         this.slave=slave;
         this.name=name;
         this.template=template;
+        this.templateName=template != null ? template.getTemplateName() : null;
+        this.templateLabel=template != null ? template.getLabel() : null;
         taskState= NONE;
     }
 
@@ -52,13 +73,107 @@ public class ECSSlaveHelper
     }
 
     public ECSTaskTemplate getTemplate() {
+        if (template == null && (templateName != null || templateLabel != null)) {
+            try {
+                template = slave.getCloud().findTemplate(templateName, templateLabel);
+            } catch (IllegalStateException e) {
+                LOGGER.log(Level.FINE, "Cloud of agent {0} has been removed", name);
+            }
+        }
         return template;
     }
 
+    @CheckForNull
+    ECSSpan getLaunchSpan() {
+        return launchSpan;
+    }
+
+    void setLaunchSpan(@CheckForNull ECSSpan launchSpan) {
+        this.launchSpan = launchSpan;
+    }
+
     void setTaskArn(String taskArn) {
         this.taskArn = taskArn;
     }
 
+    String getTaskArn() {
+        return taskArn;
+    }
+
+    void setClusterArn(String clusterArn) {
+        this.clusterArn = clusterArn;
+    }
+
+    /**
+     * The cluster the task was started in, which is the cluster of the cloud unless it was changed since.
+     */
+    String getClusterArn(ECSCloud cloud) {
+        return clusterArn != null ? clusterArn : cloud.getCluster();
+    }
+
+    /**
+     * The container instance the task was placed on, null for Fargate tasks or until the task has been described.
+     */
+    String getContainerInstanceArn() {
+        return containerInstanceArn;
+    }
+
+    void setContainerInstanceArn(String containerInstanceArn) {
+        this.containerInstanceArn = containerInstanceArn;
+    }
+
+    boolean isInstanceDraining() {
+        return instanceDraining;
+    }
+
+    /**
+     * Called when the container instance of the task is DRAINING, e.g. because of a Spot interruption. The agent stops
+     * accepting builds and is removed as soon as it is idle.
+     *
+     * @return false if the agent already knew its instance was draining.
+     */
+    boolean instanceDraining(String ec2InstanceId) {
+        if (instanceDraining) {
+            return false;
+        }
+        instanceDraining = true;
+        LOGGER.log(Level.WARNING, "Container instance {0} of agent {1} is draining", new Object[]{ec2InstanceId, name});
+        ECSComputer computer = slave.getECSComputer();
+        if (computer != null) {
+            computer.setAcceptingTasks(false);
+            if (computer.isIdle()) {
+                setTaskState(STOPPING);
+            }
+        }
+        return true;
+    }
+
+    String getLastJob() {
+        return lastJob;
+    }
+
+    /**
+     * Remembers the job a build of which the agent accepted, so later builds of it can be routed back here.
+     */
+    public void recordJob(Queue.Task task) {
+        lastJob = ECSJobAffinityDispatcher.getJobKey(task);
+        String repository = ECSJobAffinityDispatcher.getRepositoryKey(task);
+        if (repository != null) {
+            lastRepository = repository;
+        }
+    }
+
+    String getLastRepository() {
+        return lastRepository;
+    }
+
+    /**
+     * Whether the agent last ran the given job, or has checked out the given repository.
+     */
+    boolean isWarmFor(String job, String repository) {
+        return (job != null && job.equals(lastJob)) || (repository != null && repository.equals(lastRepository));
+    }
+
     public State getTaskState() {return taskState;}
 
     public void setTaskState(State currentState) {
@@ -83,6 +198,24 @@ public class ECSSlaveHelper
         }
     }
 
+    public String getStoppedReason() {
+        return stoppedReason;
+    }
+
+    /**
+     * Called when the task of the agent was stopped outside of Jenkins. Takes the agent offline with the reason
+     * given by ECS and removes it, without stopping the task again.
+     */
+    void taskStopped(String reason) {
+        stoppedReason = StringUtils.defaultIfBlank(reason, "Task stopped");
+        LOGGER.log(Level.WARNING, "Task {0} of agent {1} has been stopped: {2}", new Object[]{taskArn, name, stoppedReason});
+        ECSComputer computer = slave.getECSComputer();
+        if (computer != null) {
+            computer.setTemporarilyOffline(true, new TaskStoppedCause(taskArn, stoppedReason));
+        }
+        setTaskState(STOPPING);
+    }
+
     private void setSlaveToState(boolean acceptingTasks) {
         LOGGER.log(Level.INFO, "Setting Slave {0} State to {1}", new Object[]{name, taskState});
         ECSComputer computer = slave.getECSComputer();
@@ -118,20 +251,58 @@ public class ECSSlaveHelper
             LOGGER.log(Level.INFO, "Closing Channel for agent {0}", name);
             channel.close();
         }
-        if (taskArn != null && cloud != null) {
+        ECSAgentClaimAction.cancel(taskArn);
+        ECSLaunchTimelines.removed(name, System.currentTimeMillis());
+        if (taskArn != null && cloud != null && stoppedReason == null) {
             LOGGER.log(Level.INFO, "Deleting Task: {0} for agent {1}", new Object[] {taskArn, name});
-            cloud.getEcsService().deleteTask(taskArn, cloud.getCluster());
+            cloud.getEcsService().deleteTaskAsync(taskArn, getClusterArn(cloud));
         }
     }
 
     public void checkIfShouldTerminate(int idleMinutes) {
         ECSComputer computer = slave.getECSComputer();
+        if (taskState == State.RUNNING && computer != null && instanceDraining && computer.isIdle()) {
+            LOGGER.log(Level.INFO, "Computer is Idle on a draining instance. Disconnecting {0}", computer.getName());
+            setTaskState(STOPPING);
+            return;
+        }
         if (taskState == State.RUNNING && computer != null && idleMinutes != 0 && computer.isIdle()) {
             final long idleMilliseconds = System.currentTimeMillis() - computer.getIdleStartMilliseconds();
-            if (idleMilliseconds > MINUTES.toMillis(idleMinutes)) {
+            if (idleMilliseconds > getIdleTimeoutMillis(idleMinutes)) {
                 LOGGER.log(Level.INFO, "Computer is Idle. Disconnecting {0}", computer.getName());
                 setTaskState(STOPPING);
             }
         }
     }
+
+    private long getIdleTimeoutMillis(int idleMinutes) {
+        long idleTimeout = MINUTES.toMillis(idleMinutes);
+        try {
+            ECSCloud cloud = slave.getCloud();
+            if (cloud != null && cloud.isConsolidateInstances()) {
+                return ECSInstanceConsolidator.getIdleTimeoutMillis(slave, cloud, idleTimeout, System.currentTimeMillis());
+            }
+        } catch (IllegalStateException e) {
+            LOGGER.log(Level.FINE, "Cloud of agent {0} has been removed", name);
+        }
+        return idleTimeout;
+    }
+
+    /**
+     * Shown on the computer while an agent whose task was stopped outside of Jenkins is being removed.
+     */
+    static final class TaskStoppedCause extends OfflineCause {
+        private final String taskArn;
+        private final String reason;
+
+        TaskStoppedCause(String taskArn, String reason) {
+            this.taskArn = taskArn;
+            this.reason = reason;
+        }
+
+        @Override
+        public String toString() {
+            return "ECS task " + taskArn + " was stopped: " + reason;
+        }
+    }
 }
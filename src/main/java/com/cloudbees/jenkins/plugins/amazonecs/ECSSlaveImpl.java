@@ -43,7 +43,10 @@ import java.util.Objects;
 class ECSSlaveImpl extends AbstractCloudSlave implements ECSSlave {
 
     private static final long serialVersionUID = -3167989896315283037L;
-    private transient ECSSlaveHelper helper;
+    /**
+     * Persisted with the node, so that the task ARN, cluster and launch state survive a restart of Jenkins.
+     */
+    private ECSSlaveHelper helper;
     private final String cloudName;
 
     private ECSSlaveImpl(String name, ECSTaskTemplate template, String nodeDescription, String cloudName, String labelStr,
@@ -80,6 +83,16 @@ class ECSSlaveImpl extends AbstractCloudSlave implements ECSSlave {
         return helper;
     }
 
+    @Override
+    protected Object readResolve() {
+        Object result = super.readResolve();
+        if (helper == null) {
+            // agents saved before the helper was persisted do not know their task anymore
+            helper = new ECSSlaveHelper(this, name, null);
+        }
+        return result;
+    }
+
     @Override
     public AbstractCloudComputer createComputer() {
         return new ECSComputerImpl(this);
@@ -0,0 +1,193 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One step of the launch of an agent, in the trace which {@link ECSTracer} exports once the launch has ended.
+ *
+ * The span of the step a thread is working on is its current span, and the ECS API calls made meanwhile are recorded
+ * as its children by {@link ECSInstrumentedClient}. Spans of a cloud without a collector record nothing.
+ */
+final class ECSSpan {
+
+    /**
+     * Records nothing, for clouds without a collector and for work outside of a launch.
+     */
+    static final ECSSpan NOOP = new ECSSpan(null, null, "", null, "");
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final ThreadLocal<ECSSpan> CURRENT = new ThreadLocal<>();
+
+    private final ECSTracer tracer;
+    /**
+     * All spans of the trace, shared by the root span and its descendants.
+     */
+    private final List<ECSSpan> trace;
+    private final String traceId;
+    private final String spanId;
+    private final String parentSpanId;
+    private final String name;
+    private final long startNanos;
+    private final Map<String, Object> attributes = new LinkedHashMap<>();
+    private long endNanos;
+    private String error;
+
+    private ECSSpan(ECSTracer tracer, List<ECSSpan> trace, String traceId, String parentSpanId, String name) {
+        this.tracer = tracer;
+        this.trace = trace;
+        this.traceId = traceId;
+        this.spanId = tracer == null ? "" : randomId(8);
+        this.parentSpanId = parentSpanId;
+        this.name = name;
+        this.startNanos = now();
+    }
+
+    static ECSSpan root(@Nonnull ECSTracer tracer, @Nonnull String name) {
+        ECSSpan root = new ECSSpan(tracer, new ArrayList<>(), randomId(16), null, name);
+        root.trace.add(root);
+        return root;
+    }
+
+    /**
+     * @return the span the current thread is working on, or {@link #NOOP}.
+     */
+    @Nonnull
+    static ECSSpan current() {
+        ECSSpan span = CURRENT.get();
+        return span != null ? span : NOOP;
+    }
+
+    boolean isRecording() {
+        return tracer != null;
+    }
+
+    @Nonnull
+    ECSSpan startChild(@Nonnull String childName) {
+        if (!isRecording()) {
+            return NOOP;
+        }
+        ECSSpan child = new ECSSpan(tracer, trace, traceId, spanId, childName);
+        synchronized (trace) {
+            trace.add(child);
+        }
+        return child;
+    }
+
+    /**
+     * Makes this the current span of the thread until the returned scope is closed.
+     */
+    @Nonnull
+    Scope makeCurrent() {
+        final ECSSpan previous = CURRENT.get();
+        CURRENT.set(this);
+        return () -> {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        };
+    }
+
+    synchronized ECSSpan setAttribute(@Nonnull String key, @CheckForNull Object value) {
+        if (isRecording() && value != null) {
+            attributes.put(key, value);
+        }
+        return this;
+    }
+
+    void end() {
+        end(null);
+    }
+
+    /**
+     * Ends the span, as failed if an error is given. Ending the root span ends the trace and exports it.
+     */
+    void end(@CheckForNull String errorMessage) {
+        if (!isRecording()) {
+            return;
+        }
+        synchronized (this) {
+            if (endNanos != 0) {
+                return;
+            }
+            endNanos = now();
+            error = errorMessage;
+        }
+        if (parentSpanId == null) {
+            List<ECSSpan> spans;
+            synchronized (trace) {
+                spans = new ArrayList<>(trace);
+            }
+            for (ECSSpan span : spans) {
+                synchronized (span) {
+                    if (span.endNanos == 0) {
+                        span.endNanos = endNanos;
+                    }
+                }
+            }
+            tracer.export(spans);
+        }
+    }
+
+    String getTraceId() {
+        return traceId;
+    }
+
+    String getSpanId() {
+        return spanId;
+    }
+
+    @CheckForNull
+    String getParentSpanId() {
+        return parentSpanId;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    long getStartNanos() {
+        return startNanos;
+    }
+
+    synchronized long getEndNanos() {
+        return endNanos;
+    }
+
+    synchronized Map<String, Object> getAttributes() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(attributes));
+    }
+
+    @CheckForNull
+    synchronized String getError() {
+        return error;
+    }
+
+    private static long now() {
+        return TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+    }
+
+    private static String randomId(int bytes) {
+        byte[] id = new byte[bytes];
+        RANDOM.nextBytes(id);
+        StringBuilder hex = new StringBuilder(bytes * 2);
+        for (byte b : id) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
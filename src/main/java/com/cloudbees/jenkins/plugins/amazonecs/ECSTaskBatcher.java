@@ -0,0 +1,139 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import com.amazonaws.services.ecs.model.TaskDefinition;
+import hudson.AbortException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Collects the agents of a batch launch template which are started at about the same time and starts their tasks with
+ * a single RunTask call.
+ *
+ * The first agent to arrive opens a batch and waits for a short window, or until the batch is full, then runs the
+ * tasks for everybody in it. Each started task is assigned to one agent and registered with {@link ECSAgentClaimAction},
+ * so that the container can pick up its identity when it boots.
+ */
+final class ECSTaskBatcher {
+
+    private static final Logger LOGGER = Logger.getLogger(ECSTaskBatcher.class.getName());
+
+    /**
+     * RunTask starts at most 10 tasks per call.
+     */
+    static final int MAX_BATCH_SIZE = 10;
+    private static final long DEFAULT_BATCH_WINDOW_MILLIS = 500;
+
+    private static final Map<String, Batch> OPEN_BATCHES = new HashMap<>();
+
+    private ECSTaskBatcher() {
+    }
+
+    static String runTask(ECSService service, ECSCloud cloud, ECSTaskTemplate template, TaskDefinition taskDefinition, ECSSlave slave) throws AbortException, InterruptedException {
+        return runTask(service, cloud, template, taskDefinition, slave, DEFAULT_BATCH_WINDOW_MILLIS);
+    }
+
+    static String runTask(ECSService service, ECSCloud cloud, ECSTaskTemplate template, TaskDefinition taskDefinition, ECSSlave slave, long windowMillis) throws AbortException, InterruptedException {
+        String key = cloud.name + '|' + taskDefinition.getTaskDefinitionArn();
+        Batch batch;
+        int slot;
+        synchronized (OPEN_BATCHES) {
+            batch = OPEN_BATCHES.get(key);
+            if (batch == null) {
+                batch = new Batch();
+                OPEN_BATCHES.put(key, batch);
+            }
+            slot = batch.join(slave.getNodeName());
+            if (batch.size() >= MAX_BATCH_SIZE) {
+                OPEN_BATCHES.remove(key);
+                batch.close();
+            }
+        }
+
+        if (slot == 0) {
+            try {
+                batch.awaitClose(windowMillis);
+            } finally {
+                synchronized (OPEN_BATCHES) {
+                    if (OPEN_BATCHES.get(key) == batch) {
+                        OPEN_BATCHES.remove(key);
+                    }
+                    batch.close();
+                }
+                batch.launch(service, cloud, template, taskDefinition);
+            }
+        }
+        return batch.awaitTaskArn(slot);
+    }
+
+    private static final class Batch {
+        private final List<String> nodeNames = new ArrayList<>();
+        private final CountDownLatch launched = new CountDownLatch(1);
+        private boolean closed;
+        private List<String> taskArns = Collections.emptyList();
+        private Exception failure;
+
+        /**
+         * Called with the lock on {@link #OPEN_BATCHES} held, so no agent can join once the batch has been removed.
+         */
+        int join(String nodeName) {
+            nodeNames.add(nodeName);
+            return nodeNames.size() - 1;
+        }
+
+        int size() {
+            return nodeNames.size();
+        }
+
+        synchronized void close() {
+            closed = true;
+            notifyAll();
+        }
+
+        synchronized void awaitClose(long windowMillis) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + windowMillis;
+            long remaining = windowMillis;
+            while (!closed && remaining > 0) {
+                wait(remaining);
+                remaining = deadline - System.currentTimeMillis();
+            }
+        }
+
+        void launch(ECSService service, ECSCloud cloud, ECSTaskTemplate template, TaskDefinition taskDefinition) {
+            try {
+                String token = ECSAgentClaimAction.newToken();
+                long expiresAt = System.currentTimeMillis() + SECONDS.toMillis((long) template.getSlaveLaunchTimeoutSeconds() + cloud.getSlaveTimoutInSeconds());
+                LOGGER.log(Level.INFO, "Starting batch of {0} tasks for agents {1}", new Object[]{nodeNames.size(), nodeNames});
+                List<String> arns = service.runEcsTasks(cloud, template, nodeNames.size(), taskDefinition, token);
+                for (int i = 0; i < arns.size(); i++) {
+                    ECSAgentClaimAction.register(arns.get(i), nodeNames.get(i), token, expiresAt);
+                }
+                taskArns = arns;
+            } catch (AbortException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Failed to start batch of tasks for agents " + nodeNames, e);
+                failure = e;
+            } finally {
+                launched.countDown();
+            }
+        }
+
+        String awaitTaskArn(int slot) throws AbortException, InterruptedException {
+            launched.await();
+            if (slot < taskArns.size()) {
+                return taskArns.get(slot);
+            }
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            throw new AbortException(failure != null ? failure.getMessage() : "No task was started for slave container " + nodeNames.get(slot));
+        }
+    }
+}
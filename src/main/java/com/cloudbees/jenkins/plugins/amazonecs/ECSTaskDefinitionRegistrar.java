@@ -0,0 +1,168 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.ecs.model.TaskDefinition;
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.model.Computer;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
+import hudson.slaves.Cloud;
+import jenkins.model.Jenkins;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Registers, or finds, the task definitions of all templates of a cloud in the background, so that the first launch
+ * after a restart of Jenkins or a change of the configuration does not have to wait for it.
+ *
+ * Registration starts once per cloud configuration, when Jenkins has loaded its jobs and whenever the configuration
+ * is saved, and runs in parallel for all templates. A launch whose template is still being registered waits for that
+ * registration rather than registering a second revision, and a launch whose template failed registers inline again.
+ *
+ * The task definition family or ARN a template overrides its task definition with is looked up again for every
+ * launch, so that revisions registered outside of Jenkins are picked up. Looking it up in the background only reports
+ * errors early.
+ */
+public final class ECSTaskDefinitionRegistrar {
+
+    private static final Logger LOGGER = Logger.getLogger(ECSTaskDefinitionRegistrar.class.getName());
+
+    private final ECSCloud cloud;
+    private final Map<String, Future<TaskDefinition>> registrations = new ConcurrentHashMap<>();
+    private final Map<String, String> errors = new ConcurrentHashMap<>();
+    private boolean started;
+
+    ECSTaskDefinitionRegistrar(@Nonnull ECSCloud cloud) {
+        this.cloud = cloud;
+    }
+
+    /**
+     * Starts registering the task definitions of all templates, unless that has been done before.
+     */
+    synchronized void start(@Nonnull ExecutorService executor) {
+        if (started) {
+            return;
+        }
+        started = true;
+        for (final ECSTaskTemplate template : cloud.getTemplates()) {
+            Future<TaskDefinition> registration = executor.submit(() -> {
+                try {
+                    TaskDefinition definition = resolve(template);
+                    LOGGER.log(Level.INFO, "Task definition of template {0}: {1}",
+                            new Object[]{template.getTemplateName(), definition.getTaskDefinitionArn()});
+                    errors.remove(template.getTemplateName());
+                    return definition;
+                } catch (AmazonClientException | IllegalStateException ex) {
+                    LOGGER.log(Level.WARNING, "Could not register task definition of template " + template.getTemplateName(), ex);
+                    errors.put(template.getTemplateName(), ex.getMessage());
+                    throw ex;
+                }
+            });
+            if (template.getTaskDefinitionOverride() == null) {
+                registrations.put(template.getTemplateName(), registration);
+            }
+        }
+    }
+
+    /**
+     * The task definition of the template, waiting for a background registration in progress and registering inline
+     * if there is none or it failed. The task definition override of the template is looked up every time.
+     *
+     * @return null if the task definition override of the template does not exist.
+     */
+    @CheckForNull
+    TaskDefinition getTaskDefinition(@Nonnull ECSTaskTemplate template) throws InterruptedException {
+        Future<TaskDefinition> registration = template.getTaskDefinitionOverride() == null ? registrations.get(template.getTemplateName()) : null;
+        if (registration != null) {
+            try {
+                return registration.get();
+            } catch (ExecutionException ex) {
+                LOGGER.log(Level.FINE, "Background registration of template {0} failed, registering again", template.getTemplateName());
+            }
+        }
+        TaskDefinition definition;
+        try {
+            definition = resolve(template);
+        } catch (IllegalStateException ex) {
+            LOGGER.log(Level.WARNING, ex.getMessage());
+            errors.put(template.getTemplateName(), ex.getMessage());
+            return null;
+        }
+        if (template.getTaskDefinitionOverride() == null) {
+            registrations.put(template.getTemplateName(), CompletableFuture.completedFuture(definition));
+        }
+        errors.remove(template.getTemplateName());
+        return definition;
+    }
+
+    /**
+     * Forgets the task definition of the template, e.g. because it could not be run, so that the next launch
+     * registers it again.
+     */
+    void invalidate(@Nonnull ECSTaskTemplate template) {
+        registrations.remove(template.getTemplateName());
+    }
+
+    /**
+     * @return the error of the last registration per template name, for templates whose registration failed.
+     */
+    public SortedMap<String, String> getErrors() {
+        return new TreeMap<>(errors);
+    }
+
+    private TaskDefinition resolve(ECSTaskTemplate template) {
+        ECSService service = cloud.getEcsService();
+        if (template.getTaskDefinitionOverride() == null) {
+            return service.registerTemplate(cloud, template);
+        }
+        TaskDefinition definition = service.findTaskDefinition(template.getTaskDefinitionOverride());
+        if (definition == null) {
+            throw new IllegalStateException("Could not find task definition family or ARN: " + template.getTaskDefinitionOverride());
+        }
+        return definition;
+    }
+
+    static void registerAll() {
+        Jenkins jenkins = JenkinsWrapper.getInstance();
+        if (jenkins == null) {
+            return;
+        }
+        for (Cloud cloud : jenkins.clouds) {
+            if (cloud instanceof ECSCloud) {
+                ((ECSCloud) cloud).getTaskDefinitionRegistrar().start(Computer.threadPoolForRemoting);
+            }
+        }
+    }
+
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static void registerAtStartup() {
+        registerAll();
+    }
+
+    /**
+     * Saving the cloud configuration saves Jenkins with new cloud instances, whose registration has not started yet.
+     */
+    @Extension
+    public static final class ConfigurationListener extends SaveableListener {
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof Jenkins) {
+                registerAll();
+            }
+        }
+    }
+}
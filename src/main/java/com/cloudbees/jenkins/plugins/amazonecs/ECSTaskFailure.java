@@ -0,0 +1,107 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import com.amazonaws.services.ecs.model.Container;
+import com.amazonaws.services.ecs.model.Task;
+import org.apache.commons.lang.StringUtils;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Why a task stopped before its agent could connect, classified from the stopped reason of the task and the reasons of
+ * its containers, together with what the launcher should do about it.
+ */
+final class ECSTaskFailure {
+
+    enum Category {IMAGE_PULL, OUT_OF_MEMORY, RESOURCE, IAM, NETWORK, UNKNOWN}
+
+    enum Action {
+        /** Transient, launch the task again right away. */
+        RETRY,
+        /** Caused by the container instance, launch the task again on another instance. */
+        RETRY_ELSEWHERE,
+        /** Will fail the same way again, e.g. a missing image or role. */
+        GIVE_UP
+    }
+
+    private static final Pattern IMAGE_PULL = Pattern.compile("CannotPullContainer|CannotPullImage|pull image|pull access denied|manifest", Pattern.CASE_INSENSITIVE);
+    private static final Pattern IMAGE_MISSING = Pattern.compile("not found|manifest unknown|denied|unauthorized|invalid reference|does not exist", Pattern.CASE_INSENSITIVE);
+    private static final Pattern OUT_OF_MEMORY = Pattern.compile("OutOfMemory|\\bOOM", Pattern.CASE_INSENSITIVE);
+    private static final Pattern IAM = Pattern.compile("AccessDenied|not authorized|assume ?role|ExpiredToken|InvalidClientTokenId", Pattern.CASE_INSENSITIVE);
+    private static final Pattern NETWORK = Pattern.compile("\\bENI\\b|network|timeout|timed out|i/o|connection (refused|reset)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern RESOURCE = Pattern.compile("ResourceInitializationError|RESOURCE:|insufficient|Host EC2|instance.*terminated|draining", Pattern.CASE_INSENSITIVE);
+
+    private final Category category;
+    private final Action action;
+    private final String reason;
+
+    ECSTaskFailure(Category category, Action action, String reason) {
+        this.category = category;
+        this.action = action;
+        this.reason = reason;
+    }
+
+    @Nonnull
+    static ECSTaskFailure classify(Task task) {
+        if (task == null) {
+            return new ECSTaskFailure(Category.UNKNOWN, Action.GIVE_UP, "Task is unknown to ECS");
+        }
+        List<String> reasons = new ArrayList<>();
+        if (StringUtils.isNotBlank(task.getStoppedReason())) {
+            reasons.add(task.getStoppedReason());
+        }
+        for (Container container : task.getContainers()) {
+            if (StringUtils.isNotBlank(container.getReason())) {
+                reasons.add(container.getName() + ": " + container.getReason());
+            }
+        }
+        return classify(reasons.isEmpty() ? "Task stopped" : StringUtils.join(reasons, "; "));
+    }
+
+    @Nonnull
+    static ECSTaskFailure classify(@Nonnull String reason) {
+        if (IMAGE_PULL.matcher(reason).find()) {
+            return new ECSTaskFailure(Category.IMAGE_PULL, IMAGE_MISSING.matcher(reason).find() ? Action.GIVE_UP : Action.RETRY_ELSEWHERE, reason);
+        }
+        if (OUT_OF_MEMORY.matcher(reason).find()) {
+            return new ECSTaskFailure(Category.OUT_OF_MEMORY, Action.GIVE_UP, reason);
+        }
+        if (IAM.matcher(reason).find()) {
+            return new ECSTaskFailure(Category.IAM, Action.GIVE_UP, reason);
+        }
+        if (NETWORK.matcher(reason).find()) {
+            return new ECSTaskFailure(Category.NETWORK, Action.RETRY, reason);
+        }
+        if (RESOURCE.matcher(reason).find()) {
+            return new ECSTaskFailure(Category.RESOURCE, Action.RETRY_ELSEWHERE, reason);
+        }
+        return new ECSTaskFailure(Category.UNKNOWN, Action.GIVE_UP, reason);
+    }
+
+    Category getCategory() {
+        return category;
+    }
+
+    Action getAction() {
+        return action;
+    }
+
+    /**
+     * Whether the task could not be started because of the template, the image or the capacity of the cluster, as
+     * opposed to a stop nobody can tell apart from one requested by a user.
+     */
+    boolean isLaunchFailure() {
+        return category != Category.UNKNOWN;
+    }
+
+    String getReason() {
+        return reason;
+    }
+
+    @Override
+    public String toString() {
+        return category + ": " + reason;
+    }
+}
@@ -0,0 +1,167 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import com.amazonaws.services.ecs.model.ContainerInstance;
+import com.amazonaws.services.ecs.model.Task;
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Node;
+import hudson.model.TaskListener;
+import jenkins.model.Jenkins;
+
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Watches the tasks of RUNNING agents and removes agents whose task was stopped outside of Jenkins, e.g. OOM-killed,
+ * drained or stopped by hand, instead of leaving them offline until remoting times out.
+ *
+ * All RUNNING agents of a cloud are checked with batched DescribeTasks calls every few seconds. The container instances
+ * they run on are described as well, so agents on instances which are DRAINING, e.g. after a Spot interruption, are
+ * taken out of rotation and replaced early. Tasks are described in the cluster each agent was started in, which is
+ * not the cluster of the cloud any more if that was changed while the agent ran.
+ */
+@Extension
+public class ECSTaskMonitor extends AsyncPeriodicWork {
+
+    private static final Logger LOGGER = Logger.getLogger(ECSTaskMonitor.class.getName());
+
+    private static final long RECURRENCE_PERIOD = SECONDS.toMillis(Long.getLong(ECSTaskMonitor.class.getName() + ".recurrenceSeconds", 10));
+
+    public ECSTaskMonitor() {
+        super("ECS task monitor");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return RECURRENCE_PERIOD;
+    }
+
+    @Override
+    protected void execute(TaskListener listener) {
+        Jenkins jenkins = JenkinsWrapper.getInstance();
+        if (jenkins == null) {
+            return;
+        }
+        for (Map.Entry<ECSCloud, List<ECSSlave>> entry : getRunningAgentsByCloud(jenkins.getNodes()).entrySet()) {
+            try {
+                check(entry.getKey(), entry.getValue());
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Failed to check the tasks of cloud " + entry.getKey().name, e);
+            }
+        }
+    }
+
+    static Map<ECSCloud, List<ECSSlave>> getRunningAgentsByCloud(Collection<? extends Node> nodes) {
+        Map<ECSCloud, List<ECSSlave>> result = new HashMap<>();
+        for (Node node : nodes) {
+            if (!(node instanceof ECSSlave)) {
+                continue;
+            }
+            ECSSlave slave = (ECSSlave) node;
+            ECSSlaveHelper helper = slave.getHelper();
+            if (helper == null || helper.getTaskState() != ECSSlaveHelper.State.RUNNING || helper.getTaskArn() == null) {
+                continue;
+            }
+            try {
+                ECSCloud cloud = slave.getCloud();
+                List<ECSSlave> agents = result.get(cloud);
+                if (agents == null) {
+                    agents = new ArrayList<>();
+                    result.put(cloud, agents);
+                }
+                agents.add(slave);
+            } catch (IllegalStateException e) {
+                LOGGER.log(Level.FINE, "Cloud of agent {0} has been removed", slave.getNodeName());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the agents whose task was found stopped.
+     */
+    static List<ECSSlave> check(ECSCloud cloud, List<ECSSlave> agents) {
+        Map<String, Map<String, ECSSlave>> agentsByCluster = new HashMap<>();
+        for (ECSSlave agent : agents) {
+            String cluster = agent.getHelper().getClusterArn(cloud);
+            agentsByCluster.computeIfAbsent(cluster, k -> new HashMap<>()).put(agent.getHelper().getTaskArn(), agent);
+        }
+        List<ECSSlave> stopped = new ArrayList<>();
+        for (Map.Entry<String, Map<String, ECSSlave>> entry : agentsByCluster.entrySet()) {
+            stopped.addAll(check(cloud, entry.getKey(), entry.getValue()));
+        }
+        return stopped;
+    }
+
+    private static List<ECSSlave> check(ECSCloud cloud, String cluster, Map<String, ECSSlave> agentsByTaskArn) {
+        Map<String, Task> tasks = new HashMap<>();
+        Set<String> missing = new HashSet<>();
+        for (Task task : cloud.getEcsService().describeTasks(cluster, agentsByTaskArn.keySet(), missing)) {
+            tasks.put(task.getTaskArn(), task);
+        }
+
+        List<ECSSlave> stopped = new ArrayList<>();
+        Map<String, List<ECSSlave>> agentsByInstance = new HashMap<>();
+        for (Map.Entry<String, ECSSlave> entry : agentsByTaskArn.entrySet()) {
+            Task task = tasks.get(entry.getKey());
+            if (task == null && missing.contains(entry.getKey())) {
+                entry.getValue().getHelper().taskStopped("Task is unknown to ECS");
+                stopped.add(entry.getValue());
+            } else if (task == null) {
+                LOGGER.log(Level.FINE, "Task {0} of agent {1} could not be described, checking again later", new Object[]{entry.getKey(), entry.getValue().getNodeName()});
+            } else if (isStopped(task)) {
+                entry.getValue().getHelper().taskStopped(task.getStoppedReason());
+                stopped.add(entry.getValue());
+            } else if (task.getContainerInstanceArn() != null) {
+                entry.getValue().getHelper().setContainerInstanceArn(task.getContainerInstanceArn());
+                List<ECSSlave> instanceAgents = agentsByInstance.get(task.getContainerInstanceArn());
+                if (instanceAgents == null) {
+                    instanceAgents = new ArrayList<>();
+                    agentsByInstance.put(task.getContainerInstanceArn(), instanceAgents);
+                }
+                instanceAgents.add(entry.getValue());
+            }
+        }
+        checkDrainingInstances(cloud, cluster, agentsByInstance);
+        return stopped;
+    }
+
+    /**
+     * Takes agents on DRAINING container instances out of rotation and starts replacements, which ECS places on other
+     * instances, before the instance goes away.
+     *
+     * @return the agents which were found on a draining instance for the first time.
+     */
+    static List<ECSSlave> checkDrainingInstances(ECSCloud cloud, String cluster, Map<String, List<ECSSlave>> agentsByInstance) {
+        List<ECSSlave> draining = new ArrayList<>();
+        if (agentsByInstance.isEmpty()) {
+            return draining;
+        }
+        for (ContainerInstance instance : cloud.getEcsService().describeContainerInstances(cluster, agentsByInstance.keySet())) {
+            if (!"DRAINING".equals(instance.getStatus())) {
+                continue;
+            }
+            for (ECSSlave agent : agentsByInstance.get(instance.getContainerInstanceArn())) {
+                ECSSlaveHelper helper = agent.getHelper();
+                ECSComputer computer = agent.getECSComputer();
+                boolean wasBusy = computer != null && !computer.isIdle();
+                if (!helper.instanceDraining(instance.getEc2InstanceId())) {
+                    continue;
+                }
+                draining.add(agent);
+                ECSTaskTemplate template = helper.getTemplate();
+                if (template != null && (wasBusy || !template.isSingleRunTask())) {
+                    cloud.provisionReplacement(template);
+                }
+            }
+        }
+        return draining;
+    }
+
+    private static boolean isStopped(Task task) {
+        return "STOPPED".equals(task.getLastStatus()) || "DEPROVISIONING".equals(task.getLastStatus()) || "STOPPED".equals(task.getDesiredStatus());
+    }
+}
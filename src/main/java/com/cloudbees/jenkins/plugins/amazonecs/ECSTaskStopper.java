@@ -0,0 +1,192 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.retry.RetryUtils;
+import hudson.init.Terminator;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Stops ECS tasks in the background, so that removing a node does not wait for the StopTask round trip.
+ *
+ * At most {@link #CONCURRENCY} StopTask calls run at the same time, throttled calls are retried with an exponential
+ * backoff, and the outcome of the most recent calls is kept for diagnostics.
+ */
+public final class ECSTaskStopper {
+
+    private static final Logger LOGGER = Logger.getLogger(ECSTaskStopper.class.getName());
+
+    static final int CONCURRENCY = Integer.getInteger(ECSTaskStopper.class.getName() + ".concurrency", 4);
+    static final int MAX_ATTEMPTS = 6;
+    private static final long INITIAL_BACKOFF_MILLIS = 500;
+    private static final int MAX_RECENT_RESULTS = 100;
+
+    private static final ECSTaskStopper INSTANCE = new ECSTaskStopper(CONCURRENCY);
+
+    public enum Outcome {STOPPED, FAILED}
+
+    private final ScheduledThreadPoolExecutor executor;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicLong stopped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final Deque<Result> recentResults = new ArrayDeque<>();
+
+    ECSTaskStopper(int concurrency) {
+        executor = new ScheduledThreadPoolExecutor(concurrency, new NamingThreadFactory(new DaemonThreadFactory(), "ECSTaskStopper"));
+    }
+
+    static ECSTaskStopper get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Queues a StopTask call for the task and returns immediately. Once Jenkins is shutting down the task is stopped
+     * in the calling thread instead.
+     */
+    void stop(@Nonnull ECSService service, @Nonnull String taskArn, String clusterArn) {
+        pending.incrementAndGet();
+        try {
+            executor.execute(() -> attempt(service, taskArn, clusterArn, 1));
+            LOGGER.log(Level.FINE, "Queued stop of task {0}", taskArn);
+        } catch (RejectedExecutionException e) {
+            LOGGER.log(Level.FINE, "Stopper is shut down, stopping task {0} synchronously", taskArn);
+            attempt(service, taskArn, clusterArn, 1);
+        }
+    }
+
+    private void attempt(ECSService service, String taskArn, String clusterArn, int attempt) {
+        try {
+            service.stopTask(taskArn, clusterArn);
+            stopped.incrementAndGet();
+            record(new Result(taskArn, clusterArn, Outcome.STOPPED, attempt, null));
+        } catch (AmazonServiceException e) {
+            if (RetryUtils.isThrottlingException(e) && attempt < MAX_ATTEMPTS) {
+                throttled.incrementAndGet();
+                long backoff = INITIAL_BACKOFF_MILLIS << (attempt - 1);
+                LOGGER.log(Level.INFO, "Stopping task {0} was throttled, retrying in {1}ms", new Object[]{taskArn, backoff});
+                try {
+                    executor.schedule(() -> attempt(service, taskArn, clusterArn, attempt + 1), backoff, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException rejected) {
+                    fail(taskArn, clusterArn, attempt, e);
+                }
+                return;
+            }
+            fail(taskArn, clusterArn, attempt, e);
+        } catch (RuntimeException e) {
+            fail(taskArn, clusterArn, attempt, e);
+        }
+    }
+
+    private void fail(String taskArn, String clusterArn, int attempt, Exception e) {
+        LOGGER.log(Level.SEVERE, "Couldn't stop task arn " + taskArn + " after " + attempt + " attempt(s): " + e.getMessage(), e);
+        failed.incrementAndGet();
+        record(new Result(taskArn, clusterArn, Outcome.FAILED, attempt, e.getMessage()));
+    }
+
+    private void record(Result result) {
+        pending.decrementAndGet();
+        synchronized (recentResults) {
+            recentResults.addFirst(result);
+            while (recentResults.size() > MAX_RECENT_RESULTS) {
+                recentResults.removeLast();
+            }
+        }
+    }
+
+    int getPendingCount() {
+        return pending.get();
+    }
+
+    long getStoppedCount() {
+        return stopped.get();
+    }
+
+    long getFailedCount() {
+        return failed.get();
+    }
+
+    long getThrottledCount() {
+        return throttled.get();
+    }
+
+    /**
+     * @return the most recent results, newest first.
+     */
+    List<Result> getRecentResults() {
+        synchronized (recentResults) {
+            return new ArrayList<>(recentResults);
+        }
+    }
+
+    /**
+     * Gives queued stops a chance to go out before Jenkins shuts down, tasks that are still queued afterwards are left
+     * to the orphaned task cleanup.
+     */
+    @Terminator
+    public static void shutdown() throws InterruptedException {
+        INSTANCE.shutdown(10, TimeUnit.SECONDS);
+    }
+
+    void shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(timeout, unit)) {
+            LOGGER.log(Level.WARNING, "{0} ECS task(s) were not stopped before shutdown", getPendingCount());
+        }
+    }
+
+    static final class Result {
+        private final String taskArn;
+        private final String clusterArn;
+        private final Outcome outcome;
+        private final int attempts;
+        private final String error;
+        private final long timestamp;
+
+        Result(String taskArn, String clusterArn, Outcome outcome, int attempts, String error) {
+            this.taskArn = taskArn;
+            this.clusterArn = clusterArn;
+            this.outcome = outcome;
+            this.attempts = attempts;
+            this.error = error;
+            this.timestamp = System.currentTimeMillis();
+        }
+
+        public String getTaskArn() {
+            return taskArn;
+        }
+
+        public String getClusterArn() {
+            return clusterArn;
+        }
+
+        public Outcome getOutcome() {
+            return outcome;
+        }
+
+        public int getAttempts() {
+            return attempts;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+    }
+}
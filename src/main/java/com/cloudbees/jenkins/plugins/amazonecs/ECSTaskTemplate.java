@@ -51,6 +51,8 @@ import java.util.logging.Logger;
  */
 public class ECSTaskTemplate extends AbstractDescribableImpl<ECSTaskTemplate> {
     private static final Logger LOGGER = Logger.getLogger(ECSTaskTemplate.class.getName());
+
+    private static final int PRE_PULL_MEMORY_RESERVATION = 16;
     private static final int DEFAULT_LAUNCH_TIMEOUT=600;
     /**
      * Template Name
@@ -198,6 +200,15 @@ public class ECSTaskTemplate extends AbstractDescribableImpl<ECSTaskTemplate> {
     private int idleTerminationMinutes;
     private int slaveLaunchTimeoutSeconds;
     private boolean singleRunTask;
+
+    /**
+     * Start agents for this template in batches of identical tasks. Each container claims its
+     * Jenkins node identity through {@link ECSAgentClaimAction} when it boots.
+     */
+    private boolean batchLaunch;
+    private boolean hedgeLaunches;
+    private boolean prePullImage;
+    private int weight;
     private final List<EnvironmentEntry> environments;
     private final List<ExtraHostEntry> extraHosts;
     private final List<PortMappingEntry> portMappings;
@@ -448,6 +459,73 @@ public class ECSTaskTemplate extends AbstractDescribableImpl<ECSTaskTemplate> {
     }
     //endregion
 
+    //region batchLaunch
+    public boolean isBatchLaunch() {
+        return batchLaunch;
+    }
+
+    @DataBoundSetter
+    public void setBatchLaunch(boolean batchLaunch) {
+        this.batchLaunch = batchLaunch;
+    }
+
+    public ECSTaskTemplate withBatchLaunch(boolean batchLaunch) {
+        setBatchLaunch(batchLaunch);
+        return this;
+    }
+    //endregion
+
+    //region prePullImage
+    public boolean isPrePullImage() {
+        return prePullImage;
+    }
+
+    @DataBoundSetter
+    public void setPrePullImage(boolean prePullImage) {
+        this.prePullImage = prePullImage;
+    }
+
+    public ECSTaskTemplate withPrePullImage(boolean prePullImage) {
+        setPrePullImage(prePullImage);
+        return this;
+    }
+    //endregion
+
+    //region weight
+    /**
+     * Preference of this template over other templates with matching labels, 1 unless configured.
+     */
+    public int getWeight() {
+        return weight > 0 ? weight : 1;
+    }
+
+    @DataBoundSetter
+    public void setWeight(int weight) {
+        this.weight = weight;
+    }
+
+    public ECSTaskTemplate withWeight(int weight) {
+        setWeight(weight);
+        return this;
+    }
+    //endregion
+
+    //region hedgeLaunches
+    public boolean isHedgeLaunches() {
+        return hedgeLaunches;
+    }
+
+    @DataBoundSetter
+    public void setHedgeLaunches(boolean hedgeLaunches) {
+        this.hedgeLaunches = hedgeLaunches;
+    }
+
+    public ECSTaskTemplate withHedgeLaunches(boolean hedgeLaunches) {
+        setHedgeLaunches(hedgeLaunches);
+        return this;
+    }
+    //endregion
+
     //region label
     public String getLabel() {
         return label;
@@ -1035,6 +1113,21 @@ public class ECSTaskTemplate extends AbstractDescribableImpl<ECSTaskTemplate> {
         return createRegisterTaskDefinitionRequest(familyName,def);
     }
 
+    /**
+     * A task definition whose container only exits right away, started to get the image of this template pulled onto
+     * a container instance. It still pulls the image when the image has no <code>true</code> command.
+     */
+    RegisterTaskDefinitionRequest createPrePullTaskDefinitionRequest(String familyName) {
+        return new RegisterTaskDefinitionRequest()
+                .withFamily(familyName)
+                .withContainerDefinitions(new ContainerDefinition()
+                        .withName(familyName)
+                        .withImage(image)
+                        .withEntryPoint("true")
+                        .withMemoryReservation(PRE_PULL_MEMORY_RESERVATION)
+                        .withEssential(true));
+    }
+
     private RegisterTaskDefinitionRequest createRegisterTaskDefinitionRequest(String familyName, ContainerDefinition containerDefinition) {
         final RegisterTaskDefinitionRequest request = new RegisterTaskDefinitionRequest()
                 .withFamily(familyName)
@@ -0,0 +1,178 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import com.amazonaws.services.ecs.model.ContainerInstance;
+import com.amazonaws.services.ecs.model.PortMapping;
+import com.amazonaws.services.ecs.model.Resource;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Spreads the agents of one provisioning round over all templates which match the label, instead of always taking
+ * the first one.
+ *
+ * Each template is scored by its configured weight, whether the cluster still has room for it and how fast it has
+ * launched recently. Every agent planned for a template lowers its score, so demand is split in proportion to the
+ * scores rather than all going to the best template. Agents of earlier rounds which are still being launched count
+ * as planned too, so that a round does not pile onto the template which is already busiest.
+ */
+final class ECSTemplateSelector {
+
+    private static final double NO_HEADROOM_FACTOR = 0.1;
+    private static final long MIN_LATENCY_MILLIS = 1000;
+
+    private final ECSCloud cloud;
+    private final List<ECSTaskTemplate> candidates;
+    private final Map<ECSTaskTemplate, Integer> placeable = new HashMap<>();
+    private final Map<ECSTaskTemplate, Integer> planned = new HashMap<>();
+    private final Set<ECSTaskTemplate> excluded = new HashSet<>();
+
+    /**
+     * @param instances the container instances of the cluster, or null if the headroom of EC2 templates is not known.
+     * @param inFlight the agents still being launched, by template name.
+     */
+    ECSTemplateSelector(@Nonnull ECSCloud cloud, @Nonnull List<ECSTaskTemplate> candidates, @CheckForNull List<ContainerInstance> instances,
+                        @Nonnull Map<String, Integer> inFlight) {
+        this.cloud = cloud;
+        this.candidates = candidates;
+        for (ECSTaskTemplate template : candidates) {
+            if (instances != null && !template.isFargate()) {
+                placeable.put(template, countPlaceable(template, instances));
+            }
+            Integer launching = inFlight.get(template.getTemplateName());
+            planned.put(template, launching == null ? 0 : launching);
+        }
+    }
+
+    /**
+     * Picks the template for the next agent, the first configured one among equal scores.
+     *
+     * @return null if every candidate has been excluded.
+     */
+    @CheckForNull
+    ECSTaskTemplate next() {
+        ECSTaskTemplate best = null;
+        double bestScore = -1;
+        for (ECSTaskTemplate template : candidates) {
+            if (excluded.contains(template)) {
+                continue;
+            }
+            double score = score(template);
+            if (score > bestScore) {
+                best = template;
+                bestScore = score;
+            }
+        }
+        if (best != null) {
+            planned.put(best, planned.get(best) + 1);
+        }
+        return best;
+    }
+
+    /**
+     * Takes the template out of this round, e.g. because its launches keep failing, and forgets the agent which was
+     * just planned for it.
+     */
+    void exclude(@Nonnull ECSTaskTemplate template) {
+        excluded.add(template);
+        planned.put(template, Math.max(0, planned.get(template) - 1));
+    }
+
+    /**
+     * Whether the cluster has room for the agents planned so far for the template. Always true for Fargate templates
+     * and when the cluster was not described.
+     */
+    boolean hasCapacity(@Nonnull ECSTaskTemplate template) {
+        Integer room = placeable.get(template);
+        return room == null || room >= planned.get(template);
+    }
+
+    /**
+     * @return how many candidates have not been excluded from this round.
+     */
+    int getRemaining() {
+        int remaining = 0;
+        for (ECSTaskTemplate template : candidates) {
+            if (!excluded.contains(template)) {
+                remaining++;
+            }
+        }
+        return remaining;
+    }
+
+    int getPlanned(@Nonnull ECSTaskTemplate template) {
+        Integer count = planned.get(template);
+        return count == null ? 0 : count;
+    }
+
+    double score(@Nonnull ECSTaskTemplate template) {
+        Integer room = placeable.get(template);
+        double headroom = room == null || room > planned.get(template) ? 1 : NO_HEADROOM_FACTOR;
+        long p50 = cloud.getLaunchStats(template).getPercentile(50);
+        double latency = p50 < 0 ? 1 : (double) MIN_LATENCY_MILLIS / Math.max(MIN_LATENCY_MILLIS, p50);
+        return template.getWeight() * headroom * latency / (1 + planned.get(template));
+    }
+
+    /**
+     * How many tasks of the template the remaining resources of the container instances could take.
+     */
+    static int countPlaceable(@Nonnull ECSTaskTemplate template, @Nonnull List<ContainerInstance> instances) {
+        int count = 0;
+        for (ContainerInstance instance : instances) {
+            Map<ECSCapacityPlanner.Constraint, Integer> byConstraint = placeableOn(template, instance);
+            count += byConstraint.isEmpty() ? 1 : Collections.min(byConstraint.values());
+        }
+        return count;
+    }
+
+    /**
+     * How many tasks of the template the remaining resources of one container instance could take, by each of the
+     * constraints which limit the template: its CPU units, its memory and its fixed host ports, which an instance can
+     * give to one task only.
+     */
+    @Nonnull
+    static Map<ECSCapacityPlanner.Constraint, Integer> placeableOn(@Nonnull ECSTaskTemplate template, @Nonnull ContainerInstance instance) {
+        int memory = 0;
+        int cpu = 0;
+        Set<String> reservedPorts = new HashSet<>();
+        Set<String> reservedUdpPorts = new HashSet<>();
+        for (Resource resource : instance.getRemainingResources()) {
+            if ("MEMORY".equals(resource.getName())) {
+                memory = resource.getIntegerValue();
+            } else if ("CPU".equals(resource.getName())) {
+                cpu = resource.getIntegerValue();
+            } else if ("PORTS".equals(resource.getName()) && resource.getStringSetValue() != null) {
+                reservedPorts.addAll(resource.getStringSetValue());
+            } else if ("PORTS_UDP".equals(resource.getName()) && resource.getStringSetValue() != null) {
+                reservedUdpPorts.addAll(resource.getStringSetValue());
+            }
+        }
+        Map<ECSCapacityPlanner.Constraint, Integer> byConstraint = new EnumMap<>(ECSCapacityPlanner.Constraint.class);
+        if (template.getCpu() > 0) {
+            byConstraint.put(ECSCapacityPlanner.Constraint.CPU, cpu / template.getCpu());
+        }
+        if (template.getMemoryConstraint() > 0) {
+            byConstraint.put(ECSCapacityPlanner.Constraint.MEMORY, memory / template.getMemoryConstraint());
+        }
+        boolean fixedPorts = false;
+        boolean portsFree = true;
+        for (PortMapping mapping : template.getPortMappingEntries()) {
+            if (mapping.getHostPort() != null && mapping.getHostPort() != 0) {
+                fixedPorts = true;
+                Set<String> reserved = "udp".equalsIgnoreCase(mapping.getProtocol()) ? reservedUdpPorts : reservedPorts;
+                portsFree &= !reserved.contains(String.valueOf(mapping.getHostPort()));
+            }
+        }
+        if (fixedPorts) {
+            byConstraint.put(ECSCapacityPlanner.Constraint.PORTS, portsFree ? 1 : 0);
+        }
+        return byConstraint;
+    }
+}
@@ -0,0 +1,141 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.apache.commons.lang.StringUtils;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Traces the launches of the agents of a cloud, one trace per agent, and sends each trace to an OpenTelemetry
+ * collector with OTLP over HTTP in its JSON encoding once the launch has ended.
+ *
+ * Without a collector endpoint nothing is recorded. A trace which cannot be sent is dropped.
+ */
+final class ECSTracer {
+
+    private static final Logger LOGGER = Logger.getLogger(ECSTracer.class.getName());
+
+    static final String TRACES_PATH = "/v1/traces";
+    private static final int TIMEOUT_MILLIS = 10000;
+    private static final int SPAN_KIND_INTERNAL = 1;
+    private static final int SPAN_KIND_CLIENT = 3;
+    private static final int STATUS_OK = 1;
+    private static final int STATUS_ERROR = 2;
+
+    private final String endpoint;
+    private final Executor executor;
+
+    /**
+     * @param endpoint the base URL of the collector, e.g. <code>http://localhost:4318</code>, or blank to trace nothing.
+     */
+    ECSTracer(@CheckForNull String endpoint, @Nonnull Executor executor) {
+        this.endpoint = StringUtils.trimToNull(endpoint);
+        this.executor = executor;
+    }
+
+    /**
+     * Starts the trace of one agent launch, which is sent when its root span ends.
+     */
+    @Nonnull
+    ECSSpan startTrace(@Nonnull String name) {
+        return endpoint == null ? ECSSpan.NOOP : ECSSpan.root(this, name);
+    }
+
+    void export(@Nonnull final List<ECSSpan> spans) {
+        final String body = toOtlpJson(spans).toString();
+        executor.execute(() -> {
+            try {
+                post(body);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Could not send trace to {0}: {1}", new Object[]{endpoint, e.toString()});
+            }
+        });
+    }
+
+    private void post(String body) throws IOException {
+        URL url = new URL(StringUtils.removeEnd(StringUtils.removeEnd(endpoint, "/"), TRACES_PATH) + TRACES_PATH);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try {
+            connection.setConnectTimeout(TIMEOUT_MILLIS);
+            connection.setReadTimeout(TIMEOUT_MILLIS);
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Content-Type", "application/json");
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+            int status = connection.getResponseCode();
+            if (status >= 300) {
+                LOGGER.log(Level.WARNING, "Collector {0} rejected trace with HTTP {1}", new Object[]{url, status});
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * The spans of one trace as an OTLP <code>ExportTraceServiceRequest</code> in its JSON encoding.
+     */
+    static JSONObject toOtlpJson(@Nonnull List<ECSSpan> spans) {
+        JSONArray spanArray = new JSONArray();
+        for (ECSSpan span : spans) {
+            Map<String, Object> attributes = span.getAttributes();
+            JSONObject json = new JSONObject()
+                    .element("traceId", span.getTraceId())
+                    .element("spanId", span.getSpanId())
+                    .element("name", span.getName())
+                    .element("kind", attributes.containsKey("rpc.system") ? SPAN_KIND_CLIENT : SPAN_KIND_INTERNAL)
+                    .element("startTimeUnixNano", String.valueOf(span.getStartNanos()))
+                    .element("endTimeUnixNano", String.valueOf(span.getEndNanos()))
+                    .element("attributes", attributes(attributes));
+            if (span.getParentSpanId() != null) {
+                json.element("parentSpanId", span.getParentSpanId());
+            }
+            String error = span.getError();
+            json.element("status", error == null
+                    ? new JSONObject().element("code", STATUS_OK)
+                    : new JSONObject().element("code", STATUS_ERROR).element("message", error));
+            spanArray.add(json);
+        }
+        JSONObject resource = new JSONObject().element("attributes", new JSONArray()
+                .element(attribute("service.name", "jenkins")));
+        JSONObject scopeSpans = new JSONObject()
+                .element("scope", new JSONObject().element("name", "amazon-ecs-plugin"))
+                .element("spans", spanArray);
+        return new JSONObject().element("resourceSpans", new JSONArray().element(new JSONObject()
+                .element("resource", resource)
+                .element("scopeSpans", new JSONArray().element(scopeSpans))));
+    }
+
+    private static JSONArray attributes(Map<String, Object> attributes) {
+        JSONArray array = new JSONArray();
+        for (Map.Entry<String, Object> entry : attributes.entrySet()) {
+            array.add(attribute(entry.getKey(), entry.getValue()));
+        }
+        return array;
+    }
+
+    private static JSONObject attribute(String key, Object value) {
+        JSONObject json = new JSONObject();
+        if (value instanceof Boolean) {
+            json.element("boolValue", value);
+        } else if (value instanceof Integer || value instanceof Long) {
+            json.element("intValue", String.valueOf(value));
+        } else {
+            json.element("stringValue", String.valueOf(value));
+        }
+        return new JSONObject().element("key", key).element("value", json);
+    }
+}
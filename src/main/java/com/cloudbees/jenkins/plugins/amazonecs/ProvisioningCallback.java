@@ -8,17 +8,32 @@ import java.util.concurrent.Callable;
 class ProvisioningCallback implements Callable<Node> {
     private final ECSCloud cloud;
     private final ECSTaskTemplate template;
+    private final ECSSpan launchSpan;
 
-    ProvisioningCallback(@Nonnull ECSCloud cloud, @Nonnull ECSTaskTemplate template) {
+    /**
+     * @param launchSpan the root span of the trace of the launch, which the launcher continues.
+     */
+    ProvisioningCallback(@Nonnull ECSCloud cloud, @Nonnull ECSTaskTemplate template, @Nonnull ECSSpan launchSpan) {
         this.cloud=cloud;
         this.template=template;
+        this.launchSpan=launchSpan;
     }
 
     @Override
     public Node call() throws Exception {
-        return ECSSlaveImpl.builder()
-                .ecsTaskTemplate(template)
-                .cloud(cloud)
-                .build();
+        ECSSlaveImpl slave;
+        try {
+            slave = ECSSlaveImpl.builder()
+                    .ecsTaskTemplate(template)
+                    .cloud(cloud)
+                    .build();
+        } catch (Exception e) {
+            launchSpan.end("Could not create agent: " + e);
+            cloud.getCircuitBreaker(template).recordFailure(System.currentTimeMillis(), "Could not create agent: " + e);
+            throw e;
+        }
+        launchSpan.setAttribute("jenkins.node", slave.getNodeName());
+        slave.getHelper().setLaunchSpan(launchSpan);
+        return slave;
     }
 }
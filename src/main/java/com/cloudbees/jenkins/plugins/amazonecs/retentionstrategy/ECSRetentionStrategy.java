@@ -28,7 +28,15 @@ public class ECSRetentionStrategy extends RetentionStrategy<ECSComputerImpl> imp
 
     @Override
     public void taskAccepted(Executor executor, Task task) {
-        //Do nothing. part of interface but don't need to do anything
+        Computer computer=executor.getOwner();
+        if(computer instanceof ECSComputerImpl)
+        {
+            ECSSlave slave=((ECSComputerImpl)computer).getECSNode();
+            if(slave!=null && slave.getHelper()!=null)
+            {
+                slave.getHelper().recordJob(task);
+            }
+        }
     }
 
     @Override
@@ -0,0 +1,286 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import hudson.model.Node;
+import hudson.model.TaskListener;
+import hudson.model.labels.LabelAtom;
+import hudson.remoting.VirtualChannel;
+import hudson.slaves.NodeProvisioner;
+import hudson.slaves.OfflineCause;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.cloudbees.jenkins.plugins.amazonecs.ECSSlaveHelper.State.RUNNING;
+
+/**
+ * Provisions and launches bursts of agents against {@link FakeECSServer} and checks how many ECS API calls each
+ * operation took, so that a change which adds calls per agent, e.g. another sweep of the container instances, fails
+ * here before it gets the controller throttled.
+ *
+ * Budgets are given per launched agent or per template, and any operation without a budget must not be called at all.
+ */
+public class ECSApiCallBudgetTest {
+
+    /**
+     * Tasks stay PENDING for a bit over one poll, so each launch polls its task at most three times.
+     */
+    private static final long PENDING_MILLIS = 1500;
+
+    private FakeECSServer server;
+    private ExecutorService executor;
+
+    @Before
+    public void setup() throws Exception {
+        server=new FakeECSServer().withCluster("ecsCluster").withPendingMillis(PENDING_MILLIS);
+        executor=Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        server.close();
+    }
+
+    @Test
+    public void hundredAgentsForOneLabel() throws Exception {
+        server.withContainerInstances("ecsCluster", 30, 4096, 4096);
+        ECSTaskTemplate template=template("maven-java");
+        ECSCloud cloud=cloud(template).withMaxSlaves(200);
+
+        Map<String, Long> before=cloud.getApiCallCounts();
+        List<ECSTaskTemplate> planned=provision(cloud, 100, template);
+        Assert.assertEquals(100, planned.size());
+        assertWithinBudget("provision", before, cloud.getApiCallCounts(), new Budget(100, 1)
+                .perAgent("ListTasks", 1)
+                .perAgent("ListContainerInstances", 1)
+                .perAgent("DescribeContainerInstances", 1));
+
+        before=cloud.getApiCallCounts();
+        launch(cloud, planned);
+        assertWithinBudget("launch", before, cloud.getApiCallCounts(), new Budget(100, 1)
+                .perTemplate("DescribeTaskDefinition", 1)
+                .perTemplate("RegisterTaskDefinition", 1)
+                .perAgent("RunTask", 1)
+                .perAgent("DescribeTasks", 3));
+        Assert.assertEquals(100, server.getTaskCount("ecsCluster", "RUNNING"));
+    }
+
+    @Test
+    public void tenAgentsForEachOfTwentyLabels() throws Exception {
+        server.withContainerInstances("ecsCluster", 60, 4096, 4096);
+        ECSTaskTemplate[] templates=new ECSTaskTemplate[20];
+        for (int i = 0; i < templates.length; i++) {
+            templates[i]=template("label-" + i).withBatchLaunch(true);
+        }
+        ECSCloud cloud=cloud(templates);
+
+        Map<String, Long> before=cloud.getApiCallCounts();
+        List<ECSTaskTemplate> planned=new ArrayList<>();
+        for (ECSTaskTemplate template : templates) {
+            planned.addAll(provision(cloud, 10, template));
+        }
+        Assert.assertEquals(200, planned.size());
+        assertWithinBudget("provision", before, cloud.getApiCallCounts(), new Budget(200, 20)
+                .perAgent("ListContainerInstances", 1)
+                .perAgent("DescribeContainerInstances", 1));
+
+        before=cloud.getApiCallCounts();
+        launch(cloud, planned);
+        assertWithinBudget("launch", before, cloud.getApiCallCounts(), new Budget(200, 20)
+                .perTemplate("DescribeTaskDefinition", 1)
+                .perTemplate("RegisterTaskDefinition", 1)
+                .perAgent("RunTask", 0.2)
+                .perAgent("DescribeTasks", 3));
+        Assert.assertEquals(200, server.getTaskCount("ecsCluster", "RUNNING"));
+    }
+
+    private ECSTaskTemplate template(String label) {
+        final Set<LabelAtom> labelSet=Collections.singleton(label(label));
+        return new ECSTaskTemplate(label, label, null, "EC2") {
+            @Override
+            public Set<LabelAtom> getLabelSet() {
+                return labelSet;
+            }
+        }.withImage("cloudbees/maven-java").withMemory(1024).withCpu(512);
+    }
+
+    private static LabelAtom label(String name) {
+        return new LabelAtom(name) {
+            @Override
+            public Set<Node> getNodes() {
+                return Collections.emptySet();
+            }
+        };
+    }
+
+    private ECSCloud cloud(ECSTaskTemplate... templates) {
+        ECSCloud cloud=Mockito.spy(new ECSCloud("ECS Cloud","ecsCluster","us-east-1").withJenkinsUrl("http://jenkinsUrl:8080").withSlaveTimeoutInSeconds(60).withTemplates(templates));
+        Mockito.doReturn(server.createService(3)).when(cloud).getEcsService();
+        return cloud;
+    }
+
+    /**
+     * @return the template of each planned agent.
+     */
+    private List<ECSTaskTemplate> provision(ECSCloud cloud, int agents, ECSTaskTemplate template) {
+        List<ECSTaskTemplate> planned=new ArrayList<>();
+        for (NodeProvisioner.PlannedNode node : cloud.provision(label(template.getLabel()), agents)) {
+            Assert.assertEquals(template.getDisplayName(), node.displayName);
+            planned.add(template);
+        }
+        return planned;
+    }
+
+    /**
+     * Launches all agents at once, after the task definitions have been registered in the background as they are
+     * when Jenkins starts.
+     */
+    private void launch(ECSCloud cloud, List<ECSTaskTemplate> planned) throws Exception {
+        cloud.getTaskDefinitionRegistrar().start(executor);
+        List<ScriptedAgent> agents=new ArrayList<>();
+        List<Callable<Void>> launches=new ArrayList<>();
+        for (ECSTaskTemplate template : planned) {
+            final ScriptedAgent agent=new ScriptedAgent(cloud, template);
+            agents.add(agent);
+            launches.add(() -> {
+                new ECSLauncher(false).launch(agent, TaskListener.NULL);
+                return null;
+            });
+        }
+        executor.invokeAll(launches);
+        for (ScriptedAgent agent : agents) {
+            Assert.assertEquals(agent.getNodeName(), RUNNING, agent.getHelper().getTaskState());
+        }
+    }
+
+    private static void assertWithinBudget(String phase, Map<String, Long> before, Map<String, Long> after, Budget budget) {
+        Set<String> operations=new TreeSet<>(after.keySet());
+        operations.addAll(budget.maxCalls.keySet());
+        for (String operation : operations) {
+            long calls=after.getOrDefault(operation, 0L) - before.getOrDefault(operation, 0L);
+            Integer maxCalls=budget.maxCalls.get(operation);
+            if (maxCalls == null) {
+                Assert.assertEquals(phase + " must not call " + operation, 0, calls);
+            } else {
+                Assert.assertTrue(phase + " made " + calls + " " + operation + " calls, budget is " + maxCalls, calls <= maxCalls);
+            }
+        }
+    }
+
+    /**
+     * The most calls each operation may take, for the given number of agents and templates.
+     */
+    private static final class Budget {
+        private final int agents;
+        private final int templates;
+        private final Map<String, Integer> maxCalls=new HashMap<>();
+
+        Budget(int agents, int templates) {
+            this.agents=agents;
+            this.templates=templates;
+        }
+
+        Budget perAgent(String operation, double calls) {
+            maxCalls.put(operation, (int) Math.ceil(calls * agents));
+            return this;
+        }
+
+        Budget perTemplate(String operation, int calls) {
+            maxCalls.put(operation, calls * templates);
+            return this;
+        }
+    }
+
+    /**
+     * An agent and its computer, which comes online as soon as its task is running.
+     */
+    private static final class ScriptedAgent implements ECSSlave, ECSComputer {
+        private final ECSCloud cloud;
+        private final String name;
+        private final ECSSlaveHelper helper;
+
+        ScriptedAgent(ECSCloud cloud, ECSTaskTemplate template) {
+            this.cloud=cloud;
+            this.name=ECSSlaveHelper.getSlaveName(template);
+            this.helper=new ECSSlaveHelper(this, name, template);
+        }
+
+        @Override
+        public ECSSlaveHelper getHelper() {
+            return helper;
+        }
+
+        @Override
+        public ECSComputer getECSComputer() {
+            return this;
+        }
+
+        @Override
+        public ECSCloud getCloud() {
+            return cloud;
+        }
+
+        @Override
+        public void terminate() {
+        }
+
+        @Override
+        public VirtualChannel getChannel() {
+            return null;
+        }
+
+        @Override
+        public String getNodeName() {
+            return name;
+        }
+
+        @Override
+        public void save() {
+        }
+
+        @Override
+        public ECSSlave getECSNode() {
+            return this;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getJnlpMac() {
+            return "secret-" + name;
+        }
+
+        @Override
+        public boolean isOnline() {
+            return true;
+        }
+
+        @Override
+        public long getIdleStartMilliseconds() {
+            return 0;
+        }
+
+        @Override
+        public boolean isIdle() {
+            return true;
+        }
+
+        @Override
+        public void setAcceptingTasks(boolean acceptingTasks) {
+        }
+
+        @Override
+        public void setTemporarilyOffline(boolean temporarilyOffline, OfflineCause cause) {
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.ecs.model.*;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Collections;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+
+public class ECSApiMetricsTest {
+
+    private ECSClient mockClient;
+    private ECSCloud cloud;
+
+    @Before
+    public void setup() {
+        mockClient=mock(ECSClient.class);
+        ECSService service=new ECSService("ecsUserId","us-east-1");
+        service.init(mockClient);
+        cloud=Mockito.spy(new ECSCloud("ECS-Cloud","ecsClusterArn","us-east-1"));
+        Mockito.doReturn(service).when(cloud).getEcsService();
+    }
+
+    private static AmazonServiceException throttled() {
+        AmazonServiceException e=new AmazonServiceException("Rate exceeded");
+        e.setErrorCode("ThrottlingException");
+        e.setStatusCode(400);
+        return e;
+    }
+
+    private void describeTasks() {
+        try {
+            cloud.getEcsService().describeTask(cloud, "taskArn");
+        } catch (RuntimeException e) {
+            // counted by the metrics
+        }
+    }
+
+    @Test
+    public void recordsCallsErrorsAndThrottles() {
+        Mockito.when(mockClient.describeTasks(any())).thenReturn(new DescribeTasksResult())
+                .thenThrow(throttled())
+                .thenThrow(new ClientException("Cluster not found"))
+                .thenThrow(new SdkClientException("Unable to execute HTTP request: Read timed out"));
+        for (int i = 0; i < 4; i++) {
+            describeTasks();
+        }
+
+        ECSApiMetrics.Operation operation=cloud.getApiMetrics().getOperations().get("DescribeTasks");
+        Assert.assertEquals(4, operation.getCalls());
+        Assert.assertEquals(3, operation.getErrorCount());
+        Assert.assertEquals(1, operation.getThrottles());
+        Assert.assertEquals(Long.valueOf(1), operation.getErrors().get("ThrottlingException"));
+        Assert.assertEquals(Long.valueOf(1), operation.getErrors().get("SdkClientException"));
+        Assert.assertEquals(Long.valueOf(4), cloud.getApiCallCounts().get("DescribeTasks"));
+        long[] buckets=operation.getCumulativeBuckets();
+        Assert.assertEquals(ECSApiMetrics.LATENCY_BUCKETS.length + 1, buckets.length);
+        Assert.assertEquals(4, buckets[buckets.length - 1]);
+    }
+
+    @Test
+    public void writesPrometheusTextFormat() {
+        Mockito.when(mockClient.describeTasks(any())).thenReturn(new DescribeTasksResult()).thenThrow(throttled());
+        describeTasks();
+        describeTasks();
+
+        StringWriter out=new StringWriter();
+        ECSMetricsAction.writePrometheus(new PrintWriter(out), Collections.singletonList(cloud));
+        String text=out.toString();
+
+        String labels="cloud=\"ECS-Cloud\",region=\"us-east-1\",operation=\"DescribeTasks\"";
+        Assert.assertTrue(text, text.contains("# TYPE jenkins_ecs_api_calls_total counter\n"));
+        Assert.assertTrue(text, text.contains("jenkins_ecs_api_calls_total{" + labels + "} 2\n"));
+        Assert.assertTrue(text, text.contains("jenkins_ecs_api_errors_total{" + labels + ",error=\"ThrottlingException\"} 1\n"));
+        Assert.assertTrue(text, text.contains("jenkins_ecs_api_throttles_total{" + labels + "} 1\n"));
+        Assert.assertTrue(text, text.contains("jenkins_ecs_api_latency_seconds_bucket{" + labels + ",le=\"+Inf\"} 2\n"));
+        Assert.assertTrue(text, text.contains("jenkins_ecs_api_latency_seconds_count{" + labels + "} 2\n"));
+    }
+}
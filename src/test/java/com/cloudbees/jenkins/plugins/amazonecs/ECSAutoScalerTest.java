@@ -0,0 +1,109 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import com.amazonaws.services.autoscaling.model.AutoScalingGroup;
+import com.amazonaws.services.autoscaling.model.DescribeAutoScalingGroupsResult;
+import com.amazonaws.services.autoscaling.model.Instance;
+import com.amazonaws.services.autoscaling.model.SetDesiredCapacityRequest;
+import com.amazonaws.services.ecs.model.ContainerInstance;
+import com.amazonaws.services.ecs.model.DescribeContainerInstancesResult;
+import com.amazonaws.services.ecs.model.ListContainerInstancesResult;
+import com.amazonaws.services.ecs.model.Resource;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(JenkinsWrapper.class)
+public class ECSAutoScalerTest {
+    private ECSClient mockClient;
+    private ECSAutoScalingClient mockAutoScalingClient;
+    private ECSAutoScaler autoScaler;
+    private ECSTaskTemplate testTemplate;
+
+    @Before
+    public void setup() {
+        ECSService ecsService=new ECSService("TestCredentials","us-east-1");
+        mockClient=mock(ECSClient.class);
+        ecsService.init(mockClient);
+        PowerMockito.mockStatic(JenkinsWrapper.class);
+        PowerMockito.when(JenkinsWrapper.getECSService(any(String.class),any(String.class))).thenReturn(ecsService);
+        testTemplate=new ECSTaskTemplate("maven-java","maven-java",null,"EC2")
+                .withImage("cloudbees/maven-java")
+                .withMemory(2048)
+                .withCpu(1024);
+        ECSCloud testCloud=new ECSCloud("ECS Cloud","ecsClusterArn","us-east-1").withJenkinsUrl("http://jenkinsUrl:8080")
+                .withTemplates(testTemplate).withAutoScalingGroupName("ecs-asg");
+        mockAutoScalingClient=mock(ECSAutoScalingClient.class);
+        autoScaler=testCloud.getAutoScaler();
+        autoScaler.init(mockAutoScalingClient);
+
+        Mockito.when(mockClient.listContainerInstances(any())).thenReturn(new ListContainerInstancesResult().withContainerInstanceArns("Container1"));
+    }
+
+    private void givenGroup(int desired, int inService, int max) {
+        AutoScalingGroup group=new AutoScalingGroup().withAutoScalingGroupName("ecs-asg").withDesiredCapacity(desired).withMinSize(1).withMaxSize(max);
+        for (int i = 0; i < inService; i++) {
+            group.withInstances(new Instance().withInstanceId("i-" + i).withLifecycleState("InService"));
+        }
+        Mockito.when(mockAutoScalingClient.describeAutoScalingGroups(any())).thenReturn(new DescribeAutoScalingGroupsResult().withAutoScalingGroups(group));
+    }
+
+    private void givenInstance(int runningTasks) {
+        Mockito.when(mockClient.describeContainerInstances(any())).thenReturn(new DescribeContainerInstancesResult().withContainerInstances(
+                new ContainerInstance().withContainerInstanceArn("Container1").withEc2InstanceId("i-0")
+                        .withRunningTasksCount(runningTasks).withPendingTasksCount(0)
+                        .withRegisteredResources(new Resource().withName("MEMORY").withIntegerValue(4096), new Resource().withName("CPU").withIntegerValue(4096))));
+    }
+
+    @Test
+    public void desiredCapacityIsRaisedForPendingTasks() {
+        givenGroup(2, 2, 10);
+        givenInstance(2);
+
+        Assert.assertEquals(3, autoScaler.requestCapacity(testTemplate, 5));
+
+        ArgumentCaptor<SetDesiredCapacityRequest> request=ArgumentCaptor.forClass(SetDesiredCapacityRequest.class);
+        Mockito.verify(mockAutoScalingClient).setDesiredCapacity(request.capture());
+        Assert.assertEquals(Integer.valueOf(5), request.getValue().getDesiredCapacity());
+    }
+
+    @Test
+    public void launchingInstancesAndMaxSizeAreRespected() {
+        givenGroup(4, 2, 5);
+        givenInstance(2);
+
+        Assert.assertEquals(0, autoScaler.requestCapacity(testTemplate, 4));
+        Assert.assertEquals(1, autoScaler.requestCapacity(testTemplate, 10));
+        ArgumentCaptor<SetDesiredCapacityRequest> request=ArgumentCaptor.forClass(SetDesiredCapacityRequest.class);
+        Mockito.verify(mockAutoScalingClient).setDesiredCapacity(request.capture());
+        Assert.assertEquals(Integer.valueOf(5), request.getValue().getDesiredCapacity());
+    }
+
+    @Test
+    public void idleInstancesBecomeScaleInCandidates() {
+        givenGroup(3, 3, 10);
+        givenInstance(0);
+
+        Assert.assertTrue(autoScaler.checkScaleIn(0).isEmpty());
+        Assert.assertNull(autoScaler.getScaleInHint());
+        List<String> candidates=autoScaler.checkScaleIn(ECSAutoScaler.SCALE_IN_IDLE_MILLIS);
+        Assert.assertEquals(Collections.singletonList("i-0"), candidates);
+        Assert.assertTrue(autoScaler.getScaleInHint().contains("could be scaled in to 2"));
+
+        givenInstance(1);
+        Assert.assertTrue(autoScaler.checkScaleIn(2 * ECSAutoScaler.SCALE_IN_IDLE_MILLIS).isEmpty());
+        Assert.assertNull(autoScaler.getScaleInHint());
+    }
+}
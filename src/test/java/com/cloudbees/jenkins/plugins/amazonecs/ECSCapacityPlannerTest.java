@@ -0,0 +1,120 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import com.amazonaws.services.ecs.model.ContainerInstance;
+import com.amazonaws.services.ecs.model.Resource;
+import net.sf.json.JSONNull;
+import net.sf.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.cloudbees.jenkins.plugins.amazonecs.ECSCapacityPlanner.Constraint.*;
+import static com.cloudbees.jenkins.plugins.amazonecs.ECSSlaveHelper.State.RUNNING;
+import static com.cloudbees.jenkins.plugins.amazonecs.ECSSlaveHelper.State.TASK_CREATED;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+public class ECSCapacityPlannerTest {
+    private ECSTaskTemplate mavenTemplate;
+    private ECSTaskTemplate webTemplate;
+    private ECSTaskTemplate fargateTemplate;
+    private ECSService service;
+    private ECSCloud cloud;
+
+    @Before
+    public void setup() {
+        mavenTemplate=new ECSTaskTemplate("maven-java","maven-java",null,"EC2")
+                .withImage("cloudbees/maven-java")
+                .withMemory(2048)
+                .withCpu(512);
+        webTemplate=new ECSTaskTemplate("web","web",null,"EC2")
+                .withImage("nginx")
+                .withMemory(256)
+                .withCpu(256)
+                .withPortMappings(Collections.singletonList(new ECSTaskTemplate.PortMappingEntry(80, 8080, "tcp")));
+        fargateTemplate=new ECSTaskTemplate("node","node",null,"FARGATE")
+                .withImage("node")
+                .withMemory(1024)
+                .withCpu(512);
+        service=mock(ECSService.class);
+        cloud=Mockito.spy(new ECSCloud("ECS Cloud","ecsClusterArn","us-east-1").withTemplates(mavenTemplate, webTemplate, fargateTemplate));
+        doReturn(service).when(cloud).getEcsService();
+        doReturn(Collections.emptyList()).when(cloud).getAgents();
+    }
+
+    private static ContainerInstance instance(int memory, int cpu, String... reservedPorts) {
+        return new ContainerInstance().withRemainingResources(
+                new Resource().withName("MEMORY").withIntegerValue(memory),
+                new Resource().withName("CPU").withIntegerValue(cpu),
+                new Resource().withName("PORTS").withStringSetValue(reservedPorts));
+    }
+
+    private ECSSlave agent(ECSTaskTemplate template, ECSSlaveHelper.State state) {
+        ECSSlave slave=mock(ECSSlave.class);
+        ECSSlaveHelper helper=new ECSSlaveHelper(slave,template.getTemplateName() + "-" + state,template);
+        Mockito.when(slave.getHelper()).thenReturn(helper);
+        helper.setTaskState(state);
+        return slave;
+    }
+
+    @Test
+    public void eachTemplateGetsItsBindingConstraint() {
+        Mockito.when(service.describeContainerInstances(any(String.class))).thenReturn(Arrays.asList(
+                instance(4096, 4096, "22", "8080"), instance(4096, 4096, "22")));
+        List<ECSSlave> agents=Arrays.asList(agent(mavenTemplate, TASK_CREATED), agent(mavenTemplate, RUNNING), agent(fargateTemplate, TASK_CREATED));
+        doReturn(agents).when(cloud).getAgents();
+
+        List<ECSCapacityPlanner.Plan> plans=new ECSCapacityPlanner(cloud).plan();
+
+        Assert.assertEquals(4, plans.get(0).getAvailable().intValue());
+        Assert.assertEquals(MEMORY, plans.get(0).getConstraint());
+        Assert.assertEquals(16, plans.get(0).getByConstraint().get(CPU).intValue());
+        Assert.assertEquals(1, plans.get(0).getInFlight());
+
+        Assert.assertEquals(1, plans.get(1).getAvailable().intValue());
+        Assert.assertEquals(PORTS, plans.get(1).getConstraint());
+        Assert.assertEquals(0, plans.get(1).getInFlight());
+
+        Assert.assertNull(plans.get(2).getAvailable());
+        Assert.assertNull(plans.get(2).getConstraint());
+        Assert.assertEquals(1, plans.get(2).getInFlight());
+        Mockito.verify(service, Mockito.never()).getRunningTasks(any(String.class));
+    }
+
+    @Test
+    public void maxSlavesLimitsAllTemplates() {
+        cloud.setMaxSlaves(5);
+        Mockito.when(service.getRunningTasks("ecsClusterArn")).thenReturn(Arrays.asList("task1", "task2", "task3"));
+        Mockito.when(service.describeContainerInstances(any(String.class))).thenReturn(Collections.singletonList(instance(16384, 8192)));
+
+        List<ECSCapacityPlanner.Plan> plans=new ECSCapacityPlanner(cloud).plan();
+
+        for (ECSCapacityPlanner.Plan plan : plans) {
+            Assert.assertEquals(plan.getTemplateName(), 2, plan.getAvailable().intValue());
+            Assert.assertEquals(plan.getTemplateName(), MAX_SLAVES, plan.getConstraint());
+        }
+        Mockito.verify(service, Mockito.times(1)).describeContainerInstances(any(String.class));
+    }
+
+    @Test
+    public void emptyClusterHasNoRoomForEc2Templates() {
+        Mockito.when(service.describeContainerInstances(any(String.class))).thenReturn(Collections.<ContainerInstance>emptyList());
+
+        List<ECSCapacityPlanner.Plan> plans=new ECSCapacityPlanner(cloud).plan();
+        JSONObject json=ECSCapacityPlanner.toJson(cloud, plans);
+
+        Assert.assertEquals(0, plans.get(0).getAvailable().intValue());
+        Assert.assertEquals(INSTANCES, plans.get(0).getConstraint());
+        JSONObject maven=json.getJSONArray("templates").getJSONObject(0);
+        Assert.assertEquals("maven-java", maven.getString("template"));
+        Assert.assertEquals("INSTANCES", maven.getString("constraint"));
+        Assert.assertEquals(0, maven.getInt("available"));
+        Assert.assertTrue(JSONNull.getInstance().equals(json.getJSONArray("templates").getJSONObject(2).get("available")));
+    }
+}
@@ -0,0 +1,127 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import com.amazonaws.AmazonServiceException;
+import net.sf.json.JSONObject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static com.cloudbees.jenkins.plugins.amazonecs.ECSSlaveHelper.State.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+public class ECSCloudStatusTest {
+    private ECSTaskTemplate mavenTemplate;
+    private ECSTaskTemplate nodeTemplate;
+    private ECSClient mockClient;
+    private ECSCloud cloud;
+
+    @Before
+    public void setup() {
+        mavenTemplate=new ECSTaskTemplate("maven-java","maven-java",null,"EC2")
+                .withImage("cloudbees/maven-java")
+                .withMemory(2048)
+                .withCpu(512);
+        nodeTemplate=new ECSTaskTemplate("node","node",null,"FARGATE")
+                .withImage("node")
+                .withMemory(1024)
+                .withCpu(512);
+        mockClient=mock(ECSClient.class);
+        ECSService service=new ECSService("ecsUserId","us-east-1");
+        service.init(mockClient);
+        cloud=Mockito.spy(new ECSCloud("ECS-Cloud","ecsClusterArn","us-east-1").withTemplates(mavenTemplate, nodeTemplate));
+        doReturn(service).when(cloud).getEcsService();
+    }
+
+    @After
+    public void tearDown() {
+        ECSLaunchTimelines.clear();
+    }
+
+    private ECSSlave agent(String name, ECSTaskTemplate template, ECSSlaveHelper.State state) {
+        ECSSlave slave=mock(ECSSlave.class);
+        ECSSlaveHelper helper=new ECSSlaveHelper(slave,name,template);
+        Mockito.when(slave.getHelper()).thenReturn(helper);
+        Mockito.when(slave.getNodeName()).thenReturn(name);
+        helper.setTaskState(state);
+        return slave;
+    }
+
+    private static ECSLaunchRecord launch(String template, long started, ECSLaunchRecord.Outcome outcome, ECSTaskFailure.Category category, String stopReason) {
+        ECSLaunchRecord record=new ECSLaunchRecord(template, template + "-" + started, "ecsClusterArn", started);
+        record.setFailureCategory(category);
+        record.finish(outcome, stopReason);
+        return record;
+    }
+
+    @Test
+    public void statusIsServedFromMemory() throws InterruptedException {
+        long now=System.currentTimeMillis();
+        AmazonServiceException throttled=new AmazonServiceException("Rate exceeded");
+        throttled.setErrorCode("ThrottlingException");
+        throttled.setStatusCode(400);
+        Mockito.when(mockClient.listTasks(any())).thenThrow(throttled);
+        try {
+            cloud.getEcsService().getRunningTasks("ecsClusterArn");
+            Assert.fail("expected throttling");
+        } catch (AmazonServiceException expected) {
+            // recorded by the metrics
+        }
+        cloud.getLaunchHistory().add(launch("maven-java", now - TimeUnit.HOURS.toMillis(2), ECSLaunchRecord.Outcome.FAILED, ECSTaskFailure.Category.NETWORK, "NETWORK: timeout"));
+        cloud.getLaunchHistory().add(launch("maven-java", now - 3000, ECSLaunchRecord.Outcome.SUCCEEDED, null, null));
+        cloud.getLaunchHistory().add(launch("maven-java", now - 2000, ECSLaunchRecord.Outcome.FAILED, ECSTaskFailure.Category.IMAGE_PULL, "CannotPullContainerError: manifest unknown"));
+        cloud.getLaunchHistory().add(launch("node", now - 1000, ECSLaunchRecord.Outcome.FAILED, null, "IMAGE_PULL: looks like a category but is not one"));
+        for (int i = 0; i < ECSLaunchCircuitBreaker.FAILURE_THRESHOLD; i++) {
+            cloud.getCircuitBreaker(nodeTemplate).recordFailure(now, "Launch failed in state TASK_DEFINITION_CREATED");
+        }
+        ECSLaunchTimelines.register(new ECSLaunchRecord("maven-java", "maven-java-pending", "ecsClusterArn", now - 5000));
+        ECSClient stopClient=mock(ECSClient.class);
+        doThrow(new AmazonServiceException("Access denied")).when(stopClient).stopTask(any());
+        ECSService stopService=new ECSService("ecsUserId","us-east-1");
+        stopService.init(stopClient);
+        ECSTaskStopper stopper=new ECSTaskStopper(1);
+        stopper.stop(stopService, "taskArn", "ecsClusterArn");
+        stopper.shutdown(10, TimeUnit.SECONDS);
+
+        JSONObject status=ECSCloudStatus.toJson(cloud, Arrays.asList(
+                agent("maven-java-running", mavenTemplate, RUNNING),
+                agent("maven-java-pending", mavenTemplate, TASK_CREATED),
+                agent("node-initializing", nodeTemplate, INITIALIZING)), stopper, now);
+
+        Assert.assertTrue(status.getBoolean("degraded"));
+        Assert.assertEquals(1, status.getJSONObject("agents").getInt("RUNNING"));
+        Assert.assertEquals(1, status.getJSONObject("agents").getInt("TASK_CREATED"));
+        Assert.assertEquals(0, status.getJSONObject("agents").getInt("STOPPING"));
+        Assert.assertEquals(2, status.getJSONArray("inFlight").size());
+        JSONObject pending=status.getJSONArray("inFlight").getJSONObject(0);
+        Assert.assertEquals("maven-java-pending", pending.getString("agent"));
+        Assert.assertEquals(5, pending.getLong("seconds"));
+
+        JSONObject recent=status.getJSONObject("recentLaunches");
+        Assert.assertEquals(1, recent.getInt("succeeded"));
+        Assert.assertEquals(2, recent.getInt("failed"));
+        Assert.assertEquals(1, recent.getJSONObject("failures").getInt("IMAGE_PULL"));
+        Assert.assertEquals(1, recent.getJSONObject("failures").getInt(ECSCloudStatus.LAUNCH_FAILURE));
+        Assert.assertFalse(recent.getJSONObject("failures").has("NETWORK"));
+
+        JSONObject breaker=status.getJSONArray("circuitBreakers").getJSONObject(1);
+        Assert.assertEquals("node", breaker.getString("template"));
+        Assert.assertEquals("OPEN", breaker.getString("state"));
+        Assert.assertEquals(1, status.getJSONObject("api").getJSONObject("ListTasks").getInt("throttles"));
+
+        JSONObject taskStopper=status.getJSONObject("taskStopper");
+        Assert.assertEquals(0, taskStopper.getInt("pending"));
+        Assert.assertEquals(1, taskStopper.getInt("failed"));
+        Assert.assertEquals("taskArn", taskStopper.getJSONArray("recentFailures").getJSONObject(0).getString("taskArn"));
+
+        Mockito.verify(mockClient, Mockito.times(1)).listTasks(any());
+        Mockito.verifyNoMoreInteractions(mockClient);
+    }
+}
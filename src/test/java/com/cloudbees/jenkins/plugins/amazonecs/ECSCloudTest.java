@@ -1,5 +1,6 @@
 package com.cloudbees.jenkins.plugins.amazonecs;
 
+import com.amazonaws.services.ecs.model.ListContainerInstancesResult;
 import com.amazonaws.services.ecs.model.ListTasksResult;
 import hudson.model.Label;
 import hudson.slaves.NodeProvisioner;
@@ -25,7 +26,7 @@ public class ECSCloudTest {
     //private ECSTaskTemplate testTemplate;
     private ECSCloud testCloud;
     //private ECSService mockService;
-    //private ECSClient mockClient;
+    private ECSClient mockClient;
     private Label label;
     //private Jenkins jenkins;
 
@@ -34,7 +35,7 @@ public class ECSCloudTest {
     {
         label=mock(Label.class);
         Jenkins jenkins=mock(Jenkins.class);
-        ECSClient mockClient=mock(ECSClient.class);
+        mockClient=mock(ECSClient.class);
         ECSService mockService=new ECSService("Credentials","us-east-1");
         mockService.init(mockClient);
         Mockito.when(jenkins.getLabel(any())).thenReturn(label);
@@ -94,4 +95,39 @@ public class ECSCloudTest {
         assertEquals("ECS Slave maven-java",provisioners.get(0).displayName);
         assertEquals(1,provisioners.get(0).numExecutors);
     }
+
+    @Test
+    public void templateWithoutRoomGivesWayWithoutWaiting() {
+        PowerMockito.mockStatic(Label.class);
+        PowerMockito.when(Label.parse(any())).thenReturn(new TreeSet<>());
+        Mockito.when(label.matches(any(Collection.class))).thenReturn(true);
+        Mockito.when(mockClient.listContainerInstances(any())).thenReturn(new ListContainerInstancesResult());
+        ECSTaskTemplate ec2Template=new ECSTaskTemplate("maven-ec2","maven-java",null,"EC2")
+                .withImage("cloudbees/maven-java")
+                .withMemory(2048)
+                .withCpu(2048)
+                .withSlaveLaunchTimeoutSeconds(60);
+        ec2Template.setWeight(20);
+        testCloud.withTemplates(ec2Template, testCloud.getTemplates().get(0));
+
+        long started=System.currentTimeMillis();
+        List<NodeProvisioner.PlannedNode> result=new ArrayList<>(testCloud.provision(label, 1));
+
+        assertEquals(1, result.size());
+        assertEquals("ECS Slave maven-java", result.get(0).displayName);
+        assertTrue(System.currentTimeMillis() - started < 30000);
+        Mockito.verify(mockClient, Mockito.times(1)).listContainerInstances(any());
+    }
+
+    @Test
+    public void replacementIsNotStartedWhileLaunchesKeepFailing() {
+        ECSTaskTemplate template=testCloud.getTemplates().get(0);
+        for (int i = 0; i < ECSLaunchCircuitBreaker.FAILURE_THRESHOLD; i++) {
+            testCloud.getCircuitBreaker(template).recordFailure(System.currentTimeMillis(), "Launch failed");
+        }
+
+        testCloud.provisionReplacement(template);
+
+        Mockito.verify(testCloud, Mockito.never()).getEcsService();
+    }
 }
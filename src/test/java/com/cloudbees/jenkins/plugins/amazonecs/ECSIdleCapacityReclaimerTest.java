@@ -0,0 +1,112 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.cloudbees.jenkins.plugins.amazonecs.ECSSlaveHelper.State.RUNNING;
+import static com.cloudbees.jenkins.plugins.amazonecs.ECSSlaveHelper.State.STOPPING;
+import static org.mockito.Mockito.mock;
+
+public class ECSIdleCapacityReclaimerTest {
+    private ECSTaskTemplate waitingTemplate;
+    private ECSTaskTemplate idleTemplate;
+
+    @Before
+    public void setup() {
+        waitingTemplate=new ECSTaskTemplate("maven-java","maven-java",null,"EC2")
+                .withImage("cloudbees/maven-java")
+                .withMemory(2048)
+                .withCpu(2048);
+        idleTemplate=new ECSTaskTemplate("node","node",null,"EC2")
+                .withImage("node")
+                .withMemory(1024)
+                .withCpu(1024)
+                .withIdleTerminationMinutes(30);
+    }
+
+    private ECSSlave createAgent(String name, ECSTaskTemplate template, boolean idle, long idleStart) {
+        return createAgent(name, template, idle, idleStart, "ContainerInstance");
+    }
+
+    private ECSSlave createAgent(String name, ECSTaskTemplate template, boolean idle, long idleStart, String containerInstanceArn) {
+        ECSSlave slave=mock(ECSSlave.class);
+        ECSComputer computer=mock(ECSComputer.class);
+        ECSSlaveHelper helper=new ECSSlaveHelper(slave,name,template);
+        Mockito.when(slave.getHelper()).thenReturn(helper);
+        Mockito.when(slave.getNodeName()).thenReturn(name);
+        Mockito.when(slave.getECSComputer()).thenReturn(computer);
+        Mockito.when(computer.isIdle()).thenReturn(idle);
+        Mockito.when(computer.getIdleStartMilliseconds()).thenReturn(idleStart);
+        helper.setTaskState(RUNNING);
+        helper.setContainerInstanceArn(containerInstanceArn);
+        return slave;
+    }
+
+    @Test
+    public void longestIdleAgentsOfOtherTemplatesAreStopped() throws Exception {
+        ECSSlave recent=createAgent("Recent",idleTemplate,true,3000);
+        ECSSlave oldest=createAgent("Oldest",idleTemplate,true,1000);
+        ECSSlave older=createAgent("Older",idleTemplate,true,2000);
+        ECSSlave busy=createAgent("Busy",idleTemplate,false,0);
+        ECSSlave sameTemplate=createAgent("Same",waitingTemplate,true,0);
+
+        List<ECSSlave> evicted=ECSIdleCapacityReclaimer.reclaim(waitingTemplate, Arrays.asList(recent, oldest, older, busy, sameTemplate));
+
+        Assert.assertEquals(Arrays.asList(oldest, older), evicted);
+        Assert.assertEquals(STOPPING, oldest.getHelper().getTaskState());
+        Assert.assertEquals(STOPPING, older.getHelper().getTaskState());
+        Assert.assertEquals(RUNNING, recent.getHelper().getTaskState());
+        Mockito.verify(oldest).terminate();
+        Mockito.verify(busy, Mockito.never()).terminate();
+        Mockito.verify(sameTemplate, Mockito.never()).terminate();
+    }
+
+    @Test
+    public void agentsOfTheSameTemplateFromAnotherConfigurationAreKept() throws Exception {
+        ECSTaskTemplate reloadedTemplate=new ECSTaskTemplate("maven-java","maven-java",null,"EC2")
+                .withImage("cloudbees/maven-java")
+                .withMemory(2048)
+                .withCpu(2048);
+        ECSSlave idle=createAgent("Idle",reloadedTemplate,true,1000);
+        ECSSlave other=createAgent("Other",idleTemplate,true,2000);
+        ECSSlave otherToo=createAgent("OtherToo",idleTemplate,true,3000);
+
+        List<ECSSlave> evicted=ECSIdleCapacityReclaimer.reclaim(waitingTemplate, Arrays.asList(idle, other, otherToo));
+
+        Assert.assertEquals(Arrays.asList(other, otherToo), evicted);
+        Assert.assertEquals(RUNNING, idle.getHelper().getTaskState());
+    }
+
+    @Test
+    public void agentsAreOnlyStoppedWhenOneInstanceWouldFitTheTemplate() throws Exception {
+        ECSSlave first=createAgent("First",idleTemplate,true,1000,"FirstInstance");
+        ECSSlave second=createAgent("Second",idleTemplate,true,2000,"SecondInstance");
+
+        Assert.assertTrue(ECSIdleCapacityReclaimer.reclaim(waitingTemplate, Arrays.asList(first, second)).isEmpty());
+        Assert.assertEquals(RUNNING, first.getHelper().getTaskState());
+
+        ECSTaskTemplate bigTemplate=new ECSTaskTemplate("maven-big","maven-big",null,"EC2")
+                .withImage("cloudbees/maven-java")
+                .withMemory(4096)
+                .withCpu(4096);
+        ECSSlave big=createAgent("Big",bigTemplate,true,3000,"SecondInstance");
+        Assert.assertEquals(Collections.singletonList(big), ECSIdleCapacityReclaimer.reclaim(idleTemplate, Arrays.asList(first, second, big)));
+    }
+
+    @Test
+    public void nothingIsStoppedWhenIdleAgentsCannotFreeEnoughCapacity() throws Exception {
+        ECSSlave idle=createAgent("Idle",idleTemplate,true,1000);
+
+        List<ECSSlave> evicted=ECSIdleCapacityReclaimer.reclaim(waitingTemplate, Collections.singletonList(idle));
+
+        Assert.assertTrue(evicted.isEmpty());
+        Assert.assertEquals(RUNNING, idle.getHelper().getTaskState());
+        Mockito.verify(idle, Mockito.never()).terminate();
+    }
+}
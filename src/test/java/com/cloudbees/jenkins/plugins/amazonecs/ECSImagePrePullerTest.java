@@ -0,0 +1,153 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import com.amazonaws.services.ecs.model.*;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+
+public class ECSImagePrePullerTest {
+    private ECSClient mockClient;
+    private ECSCloud cloud;
+    private ECSTaskTemplate template;
+    private final List<ContainerInstance> instances=new ArrayList<>();
+    private String pullStatus="STOPPED";
+    private String pullStoppedReason="Essential container in task exited";
+
+    @Before
+    public void setup() {
+        mockClient=mock(ECSClient.class);
+        ECSService service=new ECSService("ecsUserId","us-east-1");
+        service.init(mockClient);
+        template=new ECSTaskTemplate("maven-java","maven-java",null,"EC2")
+                .withImage("cloudbees/maven-java:1")
+                .withMemory(2048)
+                .withCpu(1024)
+                .withPrePullImage(true);
+        cloud=Mockito.spy(new ECSCloud("ECS Cloud","ecsClusterArn","us-east-1").withTemplates(template));
+        Mockito.doReturn(service).when(cloud).getEcsService();
+
+        instances.add(instance("Container1", "ACTIVE"));
+        instances.add(instance("Container2", "ACTIVE"));
+        instances.add(instance("Container3", "DRAINING"));
+        Mockito.when(mockClient.listContainerInstances(any())).thenAnswer(invocation -> {
+            List<String> arns=new ArrayList<>();
+            for (ContainerInstance instance : instances) {
+                arns.add(instance.getContainerInstanceArn());
+            }
+            return new ListContainerInstancesResult().withContainerInstanceArns(arns);
+        });
+        Mockito.when(mockClient.describeContainerInstances(any())).thenAnswer(invocation ->
+                new DescribeContainerInstancesResult().withContainerInstances(instances));
+        Mockito.when(mockClient.describeTaskDefinition(any())).thenThrow(new ClientException("Unable to describe task definition"));
+        Mockito.when(mockClient.registerTaskDefinition(any())).thenAnswer(invocation -> {
+            RegisterTaskDefinitionRequest request=(RegisterTaskDefinitionRequest) invocation.getArguments()[0];
+            return new RegisterTaskDefinitionResult().withTaskDefinition(new TaskDefinition()
+                    .withTaskDefinitionArn(request.getFamily() + ":1").withContainerDefinitions(request.getContainerDefinitions()));
+        });
+        Mockito.when(mockClient.startTask(any())).thenAnswer(invocation -> {
+            StartTaskRequest request=(StartTaskRequest) invocation.getArguments()[0];
+            StartTaskResult result=new StartTaskResult();
+            for (String arn : request.getContainerInstances()) {
+                result.withTasks(new Task().withTaskArn(request.getTaskDefinition() + "@" + arn).withContainerInstanceArn(arn));
+            }
+            return result;
+        });
+        Mockito.when(mockClient.describeTasks(any())).thenAnswer(invocation -> {
+            DescribeTasksRequest request=(DescribeTasksRequest) invocation.getArguments()[0];
+            DescribeTasksResult result=new DescribeTasksResult();
+            for (String arn : request.getTasks()) {
+                result.withTasks(new Task().withTaskArn(arn).withLastStatus(pullStatus).withStoppedReason(pullStoppedReason));
+            }
+            return result;
+        });
+    }
+
+    private static ContainerInstance instance(String arn, String status) {
+        return new ContainerInstance().withContainerInstanceArn(arn).withStatus(status).withAgentConnected(true);
+    }
+
+    private List<StartTaskRequest> startedTasks(int times) {
+        ArgumentCaptor<StartTaskRequest> captor=ArgumentCaptor.forClass(StartTaskRequest.class);
+        Mockito.verify(mockClient, Mockito.times(times)).startTask(captor.capture());
+        return captor.getAllValues();
+    }
+
+    @Test
+    public void imageIsPulledOnceOnEveryActiveInstance() {
+        ECSImagePrePuller prePuller=new ECSImagePrePuller();
+
+        prePuller.prePull(cloud);
+        prePuller.prePull(cloud);
+
+        StartTaskRequest request=startedTasks(1).get(0);
+        Assert.assertEquals(Arrays.asList("Container1", "Container2"), request.getContainerInstances());
+        Assert.assertEquals("ECSCloud-maven-java-prepull:1", request.getTaskDefinition());
+        Assert.assertEquals("prepull-ECS-Cloud", request.getStartedBy());
+    }
+
+    @Test
+    public void imageIsPulledOnNewInstance() {
+        ECSImagePrePuller prePuller=new ECSImagePrePuller();
+        prePuller.prePull(cloud);
+
+        instances.add(instance("Container4", "ACTIVE"));
+        prePuller.prePull(cloud);
+
+        Assert.assertEquals(Arrays.asList("Container4"), startedTasks(2).get(1).getContainerInstances());
+    }
+
+    @Test
+    public void changedImageIsPulledAgain() {
+        ECSImagePrePuller prePuller=new ECSImagePrePuller();
+        prePuller.prePull(cloud);
+
+        template.setImage("cloudbees/maven-java:2");
+        prePuller.prePull(cloud);
+
+        Assert.assertEquals(Arrays.asList("Container1", "Container2"), startedTasks(2).get(1).getContainerInstances());
+        Mockito.verify(mockClient, Mockito.times(2)).registerTaskDefinition(any());
+    }
+
+    @Test
+    public void pullIsNotStartedAgainWhileItIsRunning() {
+        ECSImagePrePuller prePuller=new ECSImagePrePuller();
+        pullStatus="RUNNING";
+
+        prePuller.prePull(cloud);
+        prePuller.prePull(cloud);
+
+        startedTasks(1);
+    }
+
+    @Test
+    public void failedPullIsStartedAgain() {
+        ECSImagePrePuller prePuller=new ECSImagePrePuller();
+        pullStoppedReason="CannotPullContainerError: context canceled";
+        prePuller.prePull(cloud);
+
+        prePuller.prePull(cloud);
+
+        Assert.assertEquals(Arrays.asList("Container1", "Container2"), startedTasks(2).get(1).getContainerInstances());
+    }
+
+    @Test
+    public void templateWithTaskDefinitionOverrideIsSkipped() {
+        ECSTaskTemplate overridden=new ECSTaskTemplate("node","node","arn:aws:ecs:us-east-1:123456789012:task-definition/node:1","EC2")
+                .withPrePullImage(true);
+        cloud.withTemplates(overridden, template);
+        ECSImagePrePuller prePuller=new ECSImagePrePuller();
+
+        prePuller.prePull(cloud);
+
+        Assert.assertEquals("ECSCloud-maven-java-prepull:1", startedTasks(1).get(0).getTaskDefinition());
+    }
+}
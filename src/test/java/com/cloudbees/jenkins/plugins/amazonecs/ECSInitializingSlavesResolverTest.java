@@ -4,6 +4,7 @@ import hudson.model.Label;
 import org.junit.Assert;
 import org.junit.Test;
 import org.mockito.Mockito;
+import java.util.Map;
 import java.util.Set;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
@@ -66,4 +67,28 @@ public class ECSInitializingSlavesResolverTest {
         Assert.assertEquals(0,nodes.size());
     }
 
+    @Test
+    public void ECSSlavesInitializingAreCountedByTemplate()
+    {
+        ECSTaskTemplate testTemplate=new ECSTaskTemplate("maven-java","maven-java",null,"FARGATE")
+                .withImage("cloudbees/maven-java")
+                .withMemory(2048)
+                .withCpu(2048);
+        ECSSlave initializing=mock(ECSSlave.class);
+        ECSSlaveHelper initializingHelper=new ECSSlaveHelper(initializing,"maven-java-1",testTemplate);
+        initializingHelper.setTaskState(TASK_CREATED);
+        Mockito.when(initializing.getHelper()).thenReturn(initializingHelper);
+        ECSSlave running=mock(ECSSlave.class);
+        ECSSlaveHelper runningHelper=new ECSSlaveHelper(running,"maven-java-2",testTemplate);
+        runningHelper.setTaskState(RUNNING);
+        Mockito.when(running.getHelper()).thenReturn(runningHelper);
+        Label label=mock(Label.class);
+
+        ECSInitializingSlavesResolver resolver=Mockito.spy(new ECSInitializingSlavesResolver());
+        doReturn(new Object[] {initializing, running}).when(resolver).getNodes(label);
+        Map<String, Integer> counts= resolver.countInitializingByTemplate(label);
+        Assert.assertEquals(1,counts.size());
+        Assert.assertEquals(1,counts.get("maven-java").intValue());
+    }
+
 }
@@ -0,0 +1,67 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static com.cloudbees.jenkins.plugins.amazonecs.ECSSlaveHelper.State.RUNNING;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static org.mockito.Mockito.mock;
+
+public class ECSInstanceConsolidatorTest {
+
+    private ECSSlave createAgent(String name, String containerInstanceArn) {
+        ECSSlave slave=mock(ECSSlave.class);
+        ECSSlaveHelper helper=new ECSSlaveHelper(slave,name,null);
+        Mockito.when(slave.getHelper()).thenReturn(helper);
+        helper.setTaskState(RUNNING);
+        helper.setContainerInstanceArn(containerInstanceArn);
+        return slave;
+    }
+
+    @Test
+    public void agentsOnSparseInstancesGetShorterIdleTimeout() {
+        ECSSlave busy1=createAgent("Busy1","busyInstance");
+        ECSSlave busy2=createAgent("Busy2","busyInstance");
+        ECSSlave busy3=createAgent("Busy3","busyInstance");
+        ECSSlave busy4=createAgent("Busy4","busyInstance");
+        ECSSlave sparse=createAgent("Sparse","sparseInstance");
+        ECSSlave unplaced=createAgent("Unplaced",null);
+        List<ECSSlave> agents=Arrays.asList(busy1, busy2, busy3, busy4, sparse, unplaced);
+        long idleTimeout=MINUTES.toMillis(20);
+
+        Assert.assertEquals(idleTimeout, ECSInstanceConsolidator.getIdleTimeoutMillis(busy1, agents, idleTimeout));
+        Assert.assertEquals(MINUTES.toMillis(5), ECSInstanceConsolidator.getIdleTimeoutMillis(sparse, agents, idleTimeout));
+        Assert.assertEquals(idleTimeout, ECSInstanceConsolidator.getIdleTimeoutMillis(unplaced, agents, idleTimeout));
+    }
+
+    @Test
+    public void idleTimeoutIsNeverBelowOneMinute() {
+        ECSSlave sparse=createAgent("Sparse","sparseInstance");
+        List<ECSSlave> agents=Arrays.asList(sparse, createAgent("Busy1","busyInstance"), createAgent("Busy2","busyInstance"),
+                createAgent("Busy3","busyInstance"));
+
+        Assert.assertEquals(MINUTES.toMillis(1), ECSInstanceConsolidator.getIdleTimeoutMillis(sparse, agents, MINUTES.toMillis(2)));
+    }
+
+    @Test
+    public void agentsAreCountedOncePerRetentionPass() {
+        ECSSlave sparse=createAgent("Sparse","sparseInstance");
+        ECSSlave busy1=createAgent("Busy1","busyInstance");
+        ECSSlave busy2=createAgent("Busy2","busyInstance");
+        ECSCloud cloud=Mockito.spy(new ECSCloud("ECS Cloud","ecsClusterArn","us-east-1"));
+        Mockito.doReturn(Arrays.asList(sparse, busy1, busy2)).when(cloud).getAgents();
+        long idleTimeout=MINUTES.toMillis(20);
+
+        Assert.assertEquals(MINUTES.toMillis(10), ECSInstanceConsolidator.getIdleTimeoutMillis(sparse, cloud, idleTimeout, 1000));
+        Assert.assertEquals(idleTimeout, ECSInstanceConsolidator.getIdleTimeoutMillis(busy1, cloud, idleTimeout, 1001));
+        Assert.assertEquals(idleTimeout, ECSInstanceConsolidator.getIdleTimeoutMillis(busy2, cloud, idleTimeout, 1002));
+        Mockito.verify(cloud, Mockito.times(1)).getAgents();
+
+        ECSInstanceConsolidator.getIdleTimeoutMillis(sparse, cloud, idleTimeout, 1001 + ECSInstanceConsolidator.LOAD_MILLIS);
+        Mockito.verify(cloud, Mockito.times(2)).getAgents();
+    }
+}
@@ -0,0 +1,81 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import hudson.model.FreeStyleProject;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static com.cloudbees.jenkins.plugins.amazonecs.ECSSlaveHelper.State.RUNNING;
+import static org.mockito.Mockito.mock;
+
+public class ECSJobAffinityDispatcherTest {
+    private ECSTaskTemplate testTemplate;
+
+    @Before
+    public void setup() {
+        testTemplate=new ECSTaskTemplate("maven-java","maven-java",null,"EC2")
+                .withImage("cloudbees/maven-java")
+                .withMemory(2048)
+                .withCpu(2048);
+    }
+
+    private ECSSlave createAgent(String name, String lastJob, boolean idle) {
+        ECSSlave slave=mock(ECSSlave.class);
+        ECSComputer computer=mock(ECSComputer.class);
+        ECSSlaveHelper helper=new ECSSlaveHelper(slave,name,testTemplate);
+        Mockito.when(slave.getHelper()).thenReturn(helper);
+        Mockito.when(slave.getNodeName()).thenReturn(name);
+        Mockito.when(slave.getECSComputer()).thenReturn(computer);
+        Mockito.when(computer.isOnline()).thenReturn(true);
+        Mockito.when(computer.isIdle()).thenReturn(idle);
+        helper.setTaskState(RUNNING);
+        if (lastJob != null) {
+            FreeStyleProject job=mock(FreeStyleProject.class);
+            Mockito.when(job.getOwnerTask()).thenReturn(job);
+            Mockito.when(job.getFullName()).thenReturn(lastJob);
+            helper.recordJob(job);
+        }
+        return slave;
+    }
+
+    @Test
+    public void buildIsKeptForIdleAgentWhichLastRanTheJob() {
+        ECSSlave cold=createAgent("Cold","other-job",true);
+        ECSSlave warm=createAgent("Warm","my-job",true);
+        List<ECSSlave> agents=Arrays.asList(cold, warm);
+
+        Assert.assertSame(warm, ECSJobAffinityDispatcher.findWarmAgent(agents, cold, "my-job", null, null));
+        Assert.assertNull(ECSJobAffinityDispatcher.findWarmAgent(agents, warm, "my-job", null, null));
+        Assert.assertNull(ECSJobAffinityDispatcher.findWarmAgent(agents, cold, "new-job", null, null));
+    }
+
+    @Test
+    public void busyAgentsAreNotWaitedFor() {
+        ECSSlave cold=createAgent("Cold",null,true);
+        ECSSlave busy=createAgent("Busy","my-job",false);
+        List<ECSSlave> agents=Arrays.asList(cold, busy);
+
+        Assert.assertNull(ECSJobAffinityDispatcher.findWarmAgent(agents, cold, "my-job", null, null));
+        Mockito.when(busy.getECSComputer().isIdle()).thenReturn(true);
+        Assert.assertSame(busy, ECSJobAffinityDispatcher.findWarmAgent(agents, cold, "my-job", null, null));
+    }
+
+    @Test
+    public void agentsAreIndexedOncePerQueueMaintenance() {
+        ECSSlave cold=createAgent("Cold",null,true);
+        ECSSlave warm=createAgent("Warm","my-job",true);
+        ECSCloud cloud=Mockito.spy(new ECSCloud("ECS Cloud","ecsClusterArn","us-east-1"));
+        Mockito.doReturn(Arrays.asList(cold, warm)).when(cloud).getAgents();
+
+        Assert.assertSame(warm, ECSJobAffinityDispatcher.getIndex(cloud, 1000).findWarmAgent(cold, "my-job", null, null));
+        Assert.assertSame(warm, ECSJobAffinityDispatcher.getIndex(cloud, 1000 + ECSJobAffinityDispatcher.INDEX_MILLIS).findWarmAgent(cold, "my-job", null, null));
+        Mockito.verify(cloud, Mockito.times(1)).getAgents();
+
+        ECSJobAffinityDispatcher.getIndex(cloud, 1001 + ECSJobAffinityDispatcher.INDEX_MILLIS);
+        Mockito.verify(cloud, Mockito.times(2)).getAgents();
+    }
+}
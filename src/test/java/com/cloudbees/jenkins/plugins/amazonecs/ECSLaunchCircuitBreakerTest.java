@@ -0,0 +1,84 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import static com.cloudbees.jenkins.plugins.amazonecs.ECSLaunchCircuitBreaker.INITIAL_BACKOFF_MILLIS;
+import static com.cloudbees.jenkins.plugins.amazonecs.ECSLaunchCircuitBreaker.PROBE_TIMEOUT_MILLIS;
+import static com.cloudbees.jenkins.plugins.amazonecs.ECSLaunchCircuitBreaker.State.*;
+
+public class ECSLaunchCircuitBreakerTest {
+
+    private ECSLaunchCircuitBreaker openBreaker(long now) {
+        ECSLaunchCircuitBreaker breaker=new ECSLaunchCircuitBreaker("maven-java");
+        for (int i = 0; i < ECSLaunchCircuitBreaker.FAILURE_THRESHOLD; i++) {
+            Assert.assertTrue(breaker.allowLaunch(now));
+            breaker.recordFailure(now, "Launch failed in state TASK_CREATED");
+        }
+        return breaker;
+    }
+
+    @Test
+    public void opensAfterConsecutiveFailuresAndClosesAfterSuccessfulProbe() {
+        ECSLaunchCircuitBreaker breaker=openBreaker(0);
+
+        Assert.assertEquals(OPEN, breaker.getState());
+        Assert.assertFalse(breaker.allowLaunch(INITIAL_BACKOFF_MILLIS - 1));
+        Assert.assertTrue(breaker.allowLaunch(INITIAL_BACKOFF_MILLIS));
+        Assert.assertEquals(HALF_OPEN, breaker.getState());
+        Assert.assertFalse("only one probe at a time", breaker.allowLaunch(INITIAL_BACKOFF_MILLIS));
+
+        breaker.recordSuccess();
+        Assert.assertEquals(CLOSED, breaker.getState());
+        Assert.assertEquals(0, breaker.getConsecutiveFailures());
+        Assert.assertTrue(breaker.allowLaunch(INITIAL_BACKOFF_MILLIS));
+    }
+
+    @Test
+    public void failedProbeDoublesBackoff() {
+        ECSLaunchCircuitBreaker breaker=openBreaker(0);
+        Assert.assertTrue(breaker.allowLaunch(INITIAL_BACKOFF_MILLIS));
+
+        breaker.recordFailure(INITIAL_BACKOFF_MILLIS, "Launch failed in state TASK_LAUNCHED");
+
+        Assert.assertEquals(OPEN, breaker.getState());
+        Assert.assertEquals(3 * INITIAL_BACKOFF_MILLIS, breaker.getOpenUntil());
+        Assert.assertEquals("Launch failed in state TASK_LAUNCHED", breaker.getLastFailure());
+    }
+
+    @Test
+    public void unfinishedProbeIsReplacedAfterTimeout() {
+        ECSLaunchCircuitBreaker breaker=openBreaker(0);
+        Assert.assertTrue(breaker.allowLaunch(INITIAL_BACKOFF_MILLIS));
+
+        Assert.assertFalse(breaker.allowLaunch(INITIAL_BACKOFF_MILLIS + PROBE_TIMEOUT_MILLIS - 1));
+        Assert.assertTrue(breaker.allowLaunch(INITIAL_BACKOFF_MILLIS + PROBE_TIMEOUT_MILLIS));
+        Assert.assertEquals(HALF_OPEN, breaker.getState());
+        Assert.assertFalse(breaker.allowLaunch(INITIAL_BACKOFF_MILLIS + PROBE_TIMEOUT_MILLIS));
+    }
+
+    @Test
+    public void cancelledProbeIsLetThroughAgain() {
+        ECSLaunchCircuitBreaker breaker=openBreaker(0);
+        Assert.assertTrue(breaker.allowLaunch(INITIAL_BACKOFF_MILLIS));
+
+        breaker.cancelProbe();
+
+        Assert.assertEquals(OPEN, breaker.getState());
+        Assert.assertTrue(breaker.allowLaunch(INITIAL_BACKOFF_MILLIS + 1));
+        Assert.assertEquals(HALF_OPEN, breaker.getState());
+    }
+
+    @Test
+    public void successResetsFailureCount() {
+        ECSLaunchCircuitBreaker breaker=new ECSLaunchCircuitBreaker("maven-java");
+        for (int i = 0; i < ECSLaunchCircuitBreaker.FAILURE_THRESHOLD - 1; i++) {
+            breaker.recordFailure(0, "Launch failed");
+        }
+        breaker.recordSuccess();
+        breaker.recordFailure(0, "Launch failed");
+
+        Assert.assertEquals(CLOSED, breaker.getState());
+        Assert.assertTrue(breaker.allowLaunch(0));
+    }
+}
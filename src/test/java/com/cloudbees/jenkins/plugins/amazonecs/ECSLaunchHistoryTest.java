@@ -0,0 +1,47 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+import static com.cloudbees.jenkins.plugins.amazonecs.ECSSlaveHelper.State.*;
+
+public class ECSLaunchHistoryTest {
+
+    private static ECSLaunchRecord record(String template, long started) {
+        ECSLaunchRecord record=new ECSLaunchRecord(template, template + "-" + started, "ecsClusterArn", started);
+        record.finish(ECSLaunchRecord.Outcome.SUCCEEDED, null);
+        return record;
+    }
+
+    @Test
+    public void oldestLaunchesOfTemplateAreDropped() {
+        ECSLaunchHistory history=ECSLaunchHistory.load(null);
+        history.add(record("node", 0));
+        for (int i = 1; i <= ECSLaunchHistory.MAX_RECORDS_PER_TEMPLATE + 1; i++) {
+            history.add(record("maven-java", i));
+        }
+
+        List<ECSLaunchRecord> records=history.getRecords("maven-java");
+        Assert.assertEquals(ECSLaunchHistory.MAX_RECORDS_PER_TEMPLATE, records.size());
+        Assert.assertEquals(ECSLaunchHistory.MAX_RECORDS_PER_TEMPLATE + 1, records.get(0).getStarted());
+        Assert.assertEquals(2, records.get(records.size() - 1).getStarted());
+        Assert.assertEquals(1, history.getRecords("node").size());
+    }
+
+    @Test
+    public void retriedPhasesAddUp() {
+        ECSLaunchRecord record=new ECSLaunchRecord("maven-java", "maven-java-1", "ecsClusterArn", 0);
+        record.addPhase(INITIALIZING, 100);
+        record.addPhase(TASK_DEFINITION_CREATED, 200);
+        record.addPhase(TASK_CREATED, 3000);
+        record.addPhase(TASK_DEFINITION_CREATED, 200);
+        record.addPhase(TASK_CREATED, 4000);
+        record.addPhase(TASK_LAUNCHED, 5000);
+
+        Assert.assertEquals(400, record.getRunTaskMillis());
+        Assert.assertEquals(7000, record.getTaskStartMillis());
+        Assert.assertEquals(12500, record.getTotalMillis());
+    }
+}
@@ -0,0 +1,51 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ECSLaunchStatsTest {
+
+    @Test
+    public void percentileNeedsEnoughSamples() {
+        ECSLaunchStats stats=new ECSLaunchStats();
+        for (int i = 1; i < ECSLaunchStats.MIN_SAMPLES; i++) {
+            stats.record(i * 1000, false);
+        }
+        Assert.assertEquals(-1, stats.getPercentile(90));
+        Assert.assertFalse(stats.tryHedge());
+
+        stats.record(ECSLaunchStats.MIN_SAMPLES * 1000, false);
+        Assert.assertEquals(9000, stats.getPercentile(90));
+        Assert.assertEquals(5000, stats.getPercentile(50));
+    }
+
+    @Test
+    public void shareOfHedgedLaunchesIsCapped() {
+        ECSLaunchStats stats=new ECSLaunchStats();
+        for (int i = 0; i < 20; i++) {
+            stats.record(1000, false);
+        }
+
+        Assert.assertTrue(stats.tryHedge());
+        Assert.assertTrue(stats.tryHedge());
+        Assert.assertFalse(stats.tryHedge());
+
+        stats.releaseHedge();
+        Assert.assertTrue(stats.tryHedge());
+    }
+
+    @Test
+    public void oldLaunchesLeaveTheWindow() {
+        ECSLaunchStats stats=new ECSLaunchStats();
+        for (int i = 0; i < ECSLaunchStats.WINDOW; i++) {
+            stats.record(60000, true);
+        }
+        for (int i = 0; i < ECSLaunchStats.WINDOW; i++) {
+            stats.record(1000, false);
+        }
+
+        Assert.assertEquals(ECSLaunchStats.WINDOW, stats.getCount());
+        Assert.assertEquals(1000, stats.getPercentile(90));
+        Assert.assertTrue(stats.tryHedge());
+    }
+}
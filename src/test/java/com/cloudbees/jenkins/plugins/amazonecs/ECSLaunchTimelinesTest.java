@@ -0,0 +1,90 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import hudson.model.Computer;
+import jenkins.model.Jenkins;
+import org.acegisecurity.AccessDeniedException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.cloudbees.jenkins.plugins.amazonecs.ECSSlaveHelper.State.*;
+import static org.mockito.Mockito.mock;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(JenkinsWrapper.class)
+public class ECSLaunchTimelinesTest {
+
+    private Jenkins jenkins;
+
+    @Before
+    public void setup() {
+        jenkins=mock(Jenkins.class);
+        PowerMockito.mockStatic(JenkinsWrapper.class);
+        Mockito.when(JenkinsWrapper.getInstance()).thenReturn(jenkins);
+    }
+
+    @After
+    public void tearDown() {
+        ECSLaunchTimelines.clear();
+    }
+
+    @Test
+    public void timelineIsKeptForAWhileAfterAgentIsRemoved() {
+        ECSLaunchRecord record=new ECSLaunchRecord("maven-java", "maven-java-1", "ecsClusterArn", 0);
+        ECSLaunchTimelines.register(record);
+        Assert.assertSame(record, new ECSLaunchTimelineAction("maven-java-1").getRecord());
+
+        long removed=System.currentTimeMillis();
+        ECSLaunchTimelines.removed("maven-java-1", removed);
+        ECSLaunchTimelines.purge(removed + TimeUnit.MINUTES.toMillis(ECSLaunchTimelines.RETENTION_MINUTES) - 1);
+        Assert.assertSame(record, ECSLaunchTimelines.get("maven-java-1"));
+
+        ECSLaunchTimelines.purge(removed + TimeUnit.MINUTES.toMillis(ECSLaunchTimelines.RETENTION_MINUTES) + 1);
+        Assert.assertNull(ECSLaunchTimelines.get("maven-java-1"));
+        Assert.assertNull(new ECSLaunchTimelines().getDynamic("maven-java-1"));
+    }
+
+    @Test(expected = AccessDeniedException.class)
+    public void timelineIsOnlyServedToUsersWhoMaySeeAgentDetails() {
+        ECSLaunchTimelines.register(new ECSLaunchRecord("maven-java", "maven-java-1", "ecsClusterArn", 0));
+        Mockito.doThrow(new AccessDeniedException("anonymous is missing the Computer/ExtendedRead permission")).when(jenkins).checkPermission(Computer.EXTENDED_READ);
+
+        new ECSLaunchTimelines().getDynamic("maven-java-1");
+    }
+
+    @Test
+    public void timelineOfRunningAgentIsKept() {
+        ECSLaunchTimelines.register(new ECSLaunchRecord("maven-java", "maven-java-1", "ecsClusterArn", 0));
+
+        ECSLaunchTimelines.purge(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(7));
+
+        Assert.assertNotNull(ECSLaunchTimelines.get("maven-java-1"));
+    }
+
+    @Test
+    public void recordKeepsTransitionsAndLastPolls() {
+        ECSLaunchRecord record=new ECSLaunchRecord("maven-java", "maven-java-1", "ecsClusterArn", 0);
+        record.setTaskDefinitionArn("arn:aws:ecs:us-east-1:123456789012:task-definition/maven-java:12");
+        record.addTransition(INITIALIZING, 0);
+        record.addTransition(TASK_DEFINITION_CREATED, 100);
+        record.addTransition(TASK_CREATED, 300);
+        for (int i = 0; i < ECSLaunchRecord.MAX_POLLS + 5; i++) {
+            record.addPoll(300 + i * 1000, 40, "PENDING");
+        }
+
+        Assert.assertEquals("maven-java:12", record.getTaskDefinitionRevision());
+        Assert.assertEquals(3, record.getTransitions().size());
+        Assert.assertEquals(TASK_CREATED, record.getTransitions().get(2).getState());
+        Assert.assertEquals(ECSLaunchRecord.MAX_POLLS, record.getPolls().size());
+        Assert.assertEquals(5, record.getDroppedPolls());
+        Assert.assertEquals(5300, record.getPolls().get(0).getStarted());
+    }
+}
@@ -11,7 +11,11 @@ import org.mockito.stubbing.Answer;
 
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doAnswer;
@@ -62,6 +66,36 @@ public class ECSLauncherTest {
         new ECSSlaveIsStoppedWhenRunTaskCallThrowsExceptionScenario().runTest();
     }
 
+    @Test
+    public void testThatLaunchIsRetriedWhenImagePullTimesOut()
+    {
+        new LaunchIsRetriedWhenImagePullTimesOutScenario().runTest();
+    }
+
+    @Test
+    public void testThatLaunchIsGivenUpWhenImageDoesNotExist()
+    {
+        new LaunchIsGivenUpWhenImageDoesNotExistScenario().runTest();
+    }
+
+    @Test
+    public void testThatLaunchIsGivenUpWhenTaskIsNotRunningInTime()
+    {
+        new LaunchIsGivenUpWhenTaskIsNotRunningInTimeScenario().runTest();
+    }
+
+    @Test
+    public void testThatRemovedAgentIsNotCountedAsFailedLaunch()
+    {
+        new RemovedAgentIsNotCountedAsFailedLaunchScenario().runTest();
+    }
+
+    @Test
+    public void testThatSpareTaskWhichConnectsFirstIsKept()
+    {
+        new SpareTaskWhichConnectsFirstIsKeptScenario().runTest();
+    }
+
 
     class ECSLauncherTestBase {
 
@@ -168,7 +202,7 @@ public class ECSLauncherTest {
                     if(++getTaskStatusCallCount<2)
                         return new DescribeTasksResult().withTasks(new Task().withLastStatus("PENDING"));
                     else
-                        return new DescribeTasksResult().withTasks(new Task().withLastStatus("RUNNING"));
+                        return new DescribeTasksResult().withTasks(new Task().withLastStatus("RUNNING").withContainerInstanceArn("containerInstanceArn"));
                 }
             });
         }
@@ -179,6 +213,17 @@ public class ECSLauncherTest {
             setupScenario();
             runTestBase();
             Assert.assertEquals(RUNNING, helper.getTaskState());
+            ECSLaunchRecord timeline=ECSLaunchTimelines.get(nodeName);
+            Assert.assertNotNull(timeline);
+            List<State> states=new ArrayList<>();
+            for (ECSLaunchRecord.Transition transition : timeline.getTransitions()) {
+                states.add(transition.getState());
+            }
+            Assert.assertEquals(Arrays.asList(INITIALIZING, TASK_DEFINITION_CREATED, TASK_CREATED, TASK_LAUNCHED, RUNNING), states);
+            Assert.assertEquals(2, timeline.getPolls().size());
+            Assert.assertEquals("PENDING", timeline.getPolls().get(0).getLastStatus());
+            Assert.assertEquals(taskArn, timeline.getTaskArn());
+            Mockito.verify(helper).setContainerInstanceArn("containerInstanceArn");
         }
     }
 
@@ -217,6 +262,151 @@ public class ECSLauncherTest {
         }
     }
 
+    class LaunchIsRetriedWhenImagePullTimesOutScenario extends ECSLauncherTestBase {
+        private void setupScenario() {
+            Mockito.when(mockComputer.isOnline()).thenReturn(true);
+            Mockito.when(mockECSClient.describeTaskDefinition(any())).thenReturn(new DescribeTaskDefinitionResult().withTaskDefinition(definition));
+            Mockito.when(mockECSClient.runTask(any())).thenReturn(new RunTaskResult().withTasks(new Task().withTaskArn(taskArn)));
+            Mockito.when(mockECSClient.describeTasks(any())).thenReturn(
+                    new DescribeTasksResult().withTasks(new Task().withLastStatus("STOPPED").withStoppedReason("CannotPullContainerError: net/http: request canceled (Client.Timeout exceeded)")),
+                    new DescribeTasksResult().withTasks(new Task().withLastStatus("RUNNING")));
+        }
+
+        void runTest()
+        {
+            runCommonSetup(taskDefinitionArn);
+            setupScenario();
+            runTestBase();
+            Assert.assertEquals(RUNNING, helper.getTaskState());
+            Mockito.verify(mockECSClient, Mockito.times(2)).runTask(any());
+            ECSLaunchRecord record=testCloud.getLaunchHistory().getRecords().get(0);
+            Assert.assertEquals(ECSLaunchRecord.Outcome.SUCCEEDED, record.getOutcome());
+            Assert.assertEquals(1, record.getRetries());
+        }
+    }
+
+    class LaunchIsGivenUpWhenImageDoesNotExistScenario extends ECSLauncherTestBase {
+        private void setupScenario() {
+            Mockito.when(mockECSClient.describeTaskDefinition(any())).thenReturn(new DescribeTaskDefinitionResult().withTaskDefinition(definition));
+            Mockito.when(mockECSClient.runTask(any())).thenReturn(new RunTaskResult().withTasks(new Task().withTaskArn(taskArn)));
+            Mockito.when(mockECSClient.describeTasks(any())).thenReturn(new DescribeTasksResult().withTasks(new Task().withLastStatus("STOPPED")
+                    .withStoppedReason("CannotPullContainerError: manifest for cloudbees/maven-java:missing not found")));
+        }
+
+        void runTest()
+        {
+            runCommonSetup(taskDefinitionArn);
+            setupScenario();
+            runTestBase();
+            Assert.assertEquals(STOPPING, helper.getTaskState());
+            Mockito.verify(mockECSClient, Mockito.times(1)).runTask(any());
+            ECSLaunchRecord record=testCloud.getLaunchHistory().getRecords().get(0);
+            Assert.assertEquals(ECSLaunchRecord.Outcome.FAILED, record.getOutcome());
+            Assert.assertTrue(record.getStopReason().startsWith("IMAGE_PULL"));
+            Assert.assertEquals(ECSTaskFailure.Category.IMAGE_PULL, record.getFailureCategory());
+            Assert.assertEquals(Long.valueOf(1), testCloud.getApiCallCounts().get("RunTask"));
+            Assert.assertEquals(1, testCloud.getCircuitBreaker(testTemplate).getConsecutiveFailures());
+        }
+    }
+
+    class LaunchIsGivenUpWhenTaskIsNotRunningInTimeScenario extends ECSLauncherTestBase {
+        final List<Runnable> exports=new ArrayList<>();
+        ECSSpan launchSpan;
+
+        private void setupScenario() {
+            testTemplate.setSlaveLaunchTimeoutSeconds(1);
+            launchSpan=new ECSTracer("http://localhost:4318", exports::add).startTrace("ECS agent launch");
+            Mockito.when(helper.getLaunchSpan()).thenReturn(launchSpan);
+            Mockito.when(mockECSClient.describeTaskDefinition(any())).thenReturn(new DescribeTaskDefinitionResult().withTaskDefinition(definition));
+            Mockito.when(mockECSClient.runTask(any())).thenReturn(new RunTaskResult().withTasks(new Task().withTaskArn(taskArn)));
+            Mockito.when(mockECSClient.describeTasks(any())).thenReturn(new DescribeTasksResult().withTasks(new Task().withLastStatus("PENDING")));
+        }
+
+        void runTest()
+        {
+            runCommonSetup(taskDefinitionArn);
+            setupScenario();
+            runTestBase();
+            Assert.assertEquals(STOPPING, helper.getTaskState());
+            ECSLaunchRecord record=testCloud.getLaunchHistory().getRecords().get(0);
+            Assert.assertEquals(ECSLaunchRecord.Outcome.FAILED, record.getOutcome());
+            Assert.assertEquals("Task not RUNNING after 1 s", record.getStopReason());
+            Assert.assertEquals(1, testCloud.getCircuitBreaker(testTemplate).getConsecutiveFailures());
+            Assert.assertNotEquals(0, launchSpan.getEndNanos());
+            Assert.assertEquals("Task not RUNNING after 1 s", launchSpan.getError());
+            Assert.assertEquals(STOPPING.name(), launchSpan.getAttributes().get("ecs.launch.state"));
+            Assert.assertEquals(1, exports.size());
+        }
+    }
+
+    class RemovedAgentIsNotCountedAsFailedLaunchScenario extends ECSLauncherTestBase {
+        private void setupScenario() {
+            Mockito.when(mockSlave.getECSComputer()).thenReturn(null);
+            Mockito.when(mockECSClient.describeTaskDefinition(any())).thenReturn(new DescribeTaskDefinitionResult().withTaskDefinition(definition));
+            Mockito.when(mockECSClient.runTask(any())).thenReturn(new RunTaskResult().withTasks(new Task().withTaskArn(taskArn)));
+            Mockito.when(mockECSClient.describeTasks(any())).thenReturn(new DescribeTasksResult().withTasks(new Task().withLastStatus("RUNNING")));
+        }
+
+        void runTest()
+        {
+            runCommonSetup(taskDefinitionArn);
+            setupScenario();
+            runTestBase();
+            Assert.assertEquals(STOPPING, helper.getTaskState());
+            Assert.assertEquals(0, testCloud.getCircuitBreaker(testTemplate).getConsecutiveFailures());
+        }
+    }
+
+    class SpareTaskWhichConnectsFirstIsKeptScenario extends ECSLauncherTestBase {
+        final String spareTaskArn="SpareTaskArn";
+        final Map<String, String> claimTokens=new HashMap<>();
+
+        private void setupScenario() {
+            testTemplate.setHedgeLaunches(true);
+            for (int i = 0; i < 2 * ECSLaunchStats.MIN_SAMPLES; i++) {
+                testCloud.getLaunchStats(testTemplate).record(0, false);
+            }
+            doAnswer(invocation -> null).when(helper).setTaskArn(any(String.class));
+            Mockito.when(mockECSClient.describeTaskDefinition(any())).thenReturn(new DescribeTaskDefinitionResult().withTaskDefinition(definition));
+            Mockito.when(mockECSClient.runTask(any())).thenAnswer(new Answer<RunTaskResult>() {
+                int runTaskCallCount=0;
+                public RunTaskResult answer(InvocationOnMock invocation) {
+                    String arn=++runTaskCallCount == 1 ? taskArn : spareTaskArn;
+                    RunTaskRequest request=invocation.getArgumentAt(0, RunTaskRequest.class);
+                    for (KeyValuePair environment : request.getOverrides().getContainerOverrides().get(0).getEnvironment()) {
+                        if ("JENKINS_ECS_CLAIM_TOKEN".equals(environment.getName())) {
+                            claimTokens.put(arn, environment.getValue());
+                        }
+                    }
+                    return new RunTaskResult().withTasks(new Task().withTaskArn(arn));
+                }
+            });
+            Mockito.when(mockECSClient.describeTasks(any())).thenAnswer(invocation -> {
+                DescribeTasksRequest request=invocation.getArgumentAt(0, DescribeTasksRequest.class);
+                boolean spare=request.getTasks().contains(spareTaskArn);
+                return new DescribeTasksResult().withTasks(new Task().withLastStatus(spare ? "RUNNING" : "PENDING")
+                        .withContainerInstanceArn(spare ? "spareContainerInstanceArn" : null));
+            });
+            Mockito.when(mockComputer.isOnline()).thenAnswer(invocation -> {
+                Assert.assertEquals(nodeName, ECSAgentClaimAction.claim(spareTaskArn, claimTokens.get(spareTaskArn)));
+                Assert.assertNull(ECSAgentClaimAction.claim(taskArn, claimTokens.get(taskArn)));
+                return true;
+            });
+        }
+
+        void runTest()
+        {
+            runCommonSetup(taskDefinitionArn);
+            setupScenario();
+            runTestBase();
+            Assert.assertEquals(RUNNING, helper.getTaskState());
+            Mockito.verify(helper).setTaskArn(spareTaskArn);
+            Mockito.verify(helper).setContainerInstanceArn("spareContainerInstanceArn");
+            Assert.assertTrue(testCloud.getLaunchStats(testTemplate).tryHedge());
+            ECSAgentClaimAction.cancel(spareTaskArn);
+        }
+    }
+
     class ECSSlaveIsStoppedWhenRunTaskCallThrowsExceptionScenario extends ECSLauncherTestBase {
         private void setupScenario()  {
             Mockito.when(mockECSClient.describeTaskDefinition(any())).thenReturn(new DescribeTaskDefinitionResult().withTaskDefinition(definition));
@@ -229,6 +419,7 @@ public class ECSLauncherTest {
             setupScenario();
             runTestBase();
             Assert.assertEquals(STOPPING, helper.getTaskState());
+            Assert.assertEquals(1, testCloud.getCircuitBreaker(testTemplate).getConsecutiveFailures());
         }
     }
 
@@ -0,0 +1,96 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import com.amazonaws.services.ecs.model.*;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(JenkinsWrapper.class)
+public class ECSOrphanedTaskReaperTest {
+    private ECSClient mockClient;
+    private ECSCloud testCloud;
+
+    @Before
+    public void setup() {
+        ECSService ecsService=new ECSService("TestCredentials","us-east-1");
+        mockClient=mock(ECSClient.class);
+        ecsService.init(mockClient);
+        PowerMockito.mockStatic(JenkinsWrapper.class);
+        PowerMockito.when(JenkinsWrapper.getECSService(any(String.class),any(String.class))).thenReturn(ecsService);
+        ECSTaskTemplate testTemplate=new ECSTaskTemplate("maven-java","maven-java",null,"EC2")
+                .withImage("cloudbees/maven-java")
+                .withMemory(2048)
+                .withCpu(2048);
+        testCloud=new ECSCloud("ECS Cloud","ecsClusterArn","us-east-1").withJenkinsUrl("http://jenkinsUrl:8080").withTemplates(testTemplate);
+    }
+
+    @Test
+    public void startedByIsValidForECS() {
+        Assert.assertTrue(testCloud.getTaskStartedBy(), testCloud.getTaskStartedBy().matches("jenkins-[0-9a-f]{8}-ECS-Cloud"));
+    }
+
+    @Test
+    public void startedByDiffersBetweenControllers() {
+        ECSCloud otherController=new ECSCloud("ECS Cloud","ecsClusterArn","us-east-1").withJenkinsUrl("http://otherJenkinsUrl:8080");
+
+        Assert.assertNotEquals(testCloud.getTaskStartedBy(), otherController.getTaskStartedBy());
+        Assert.assertEquals(testCloud.getTaskStartedBy(), new ECSCloud("ECS Cloud","ecsClusterArn","us-east-1").withJenkinsUrl("http://jenkinsUrl:8080").getTaskStartedBy());
+    }
+
+    @Test
+    public void onlyOldTasksWithoutAgentAreStopped() {
+        long now=System.currentTimeMillis();
+        Mockito.when(mockClient.listTasks(any())).thenReturn(new ListTasksResult().withTaskArns("LiveTask","NewOrphan","OldOrphan"));
+        Mockito.when(mockClient.describeTasks(any())).thenReturn(new DescribeTasksResult().withTasks(
+                new Task().withTaskArn("NewOrphan").withLastStatus("PENDING").withCreatedAt(new Date(now - MINUTES.toMillis(1))),
+                new Task().withTaskArn("OldOrphan").withLastStatus("RUNNING").withCreatedAt(new Date(now - MINUTES.toMillis(60)))));
+
+        List<String> orphans=ECSOrphanedTaskReaper.reap(testCloud, Collections.<String>emptySet(), Collections.singleton("LiveTask"), now);
+
+        Assert.assertEquals(Collections.singletonList("OldOrphan"), orphans);
+        ArgumentCaptor<ListTasksRequest> listRequest=ArgumentCaptor.forClass(ListTasksRequest.class);
+        Mockito.verify(mockClient).listTasks(listRequest.capture());
+        Assert.assertEquals(testCloud.getTaskStartedBy(), listRequest.getValue().getStartedBy());
+        ArgumentCaptor<DescribeTasksRequest> describeRequest=ArgumentCaptor.forClass(DescribeTasksRequest.class);
+        Mockito.verify(mockClient).describeTasks(describeRequest.capture());
+        Assert.assertFalse(describeRequest.getValue().getTasks().contains("LiveTask"));
+        Mockito.verify(mockClient, Mockito.timeout(5000)).stopTask(new StopTaskRequest().withTask("OldOrphan").withCluster("ecsClusterArn"));
+    }
+
+    @Test
+    public void orphansAreReapedInThePreviousClusterOfTheCloud() {
+        long now=System.currentTimeMillis();
+        ECSCloud movedCloud=new ECSCloud("Moved Cloud","newClusterArn","us-east-1").withJenkinsUrl("http://jenkinsUrl:8080");
+        Mockito.when(mockClient.listTasks(any())).thenAnswer(invocation -> {
+            ListTasksRequest request=invocation.getArgumentAt(0, ListTasksRequest.class);
+            return "oldClusterArn".equals(request.getCluster()) ? new ListTasksResult().withTaskArns("LiveTask","OldOrphan") : new ListTasksResult();
+        });
+        Mockito.when(mockClient.describeTasks(any())).thenReturn(new DescribeTasksResult().withTasks(
+                new Task().withTaskArn("OldOrphan").withLastStatus("RUNNING").withCreatedAt(new Date(now - MINUTES.toMillis(60)))));
+
+        Assert.assertEquals(Collections.singletonList("OldOrphan"),
+                ECSOrphanedTaskReaper.reap(movedCloud, Collections.singleton("oldClusterArn"), Collections.singleton("LiveTask"), now));
+        Mockito.verify(mockClient, Mockito.timeout(5000)).stopTask(new StopTaskRequest().withTask("OldOrphan").withCluster("oldClusterArn"));
+
+        // the live agent is gone, its cluster is still searched until no task of the cloud is left in it
+        ECSOrphanedTaskReaper.reap(movedCloud, Collections.<String>emptySet(), Collections.<String>emptySet(), now);
+        ArgumentCaptor<ListTasksRequest> listRequest=ArgumentCaptor.forClass(ListTasksRequest.class);
+        Mockito.verify(mockClient, Mockito.times(4)).listTasks(listRequest.capture());
+        Assert.assertEquals("oldClusterArn", listRequest.getAllValues().get(3).getCluster());
+    }
+}
@@ -0,0 +1,91 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import com.amazonaws.services.ecs.model.DescribeTasksRequest;
+import com.amazonaws.services.ecs.model.DescribeTasksResult;
+import com.amazonaws.services.ecs.model.Task;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+import static com.cloudbees.jenkins.plugins.amazonecs.ECSSlaveHelper.State.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(JenkinsWrapper.class)
+public class ECSRestartReconcilerTest {
+    private ECSClient mockClient;
+    private ECSCloud testCloud;
+    private ECSTaskTemplate testTemplate;
+
+    @Before
+    public void setup() {
+        ECSService ecsService=new ECSService("TestCredentials","us-east-1");
+        mockClient=mock(ECSClient.class);
+        ecsService.init(mockClient);
+        PowerMockito.mockStatic(JenkinsWrapper.class);
+        PowerMockito.when(JenkinsWrapper.getECSService(any(String.class),any(String.class))).thenReturn(ecsService);
+        testTemplate=new ECSTaskTemplate("maven-java","maven-java",null,"EC2")
+                .withImage("cloudbees/maven-java")
+                .withMemory(2048)
+                .withCpu(2048);
+        testCloud=new ECSCloud("ECS Cloud","ecsClusterArn","us-east-1").withJenkinsUrl("http://jenkinsUrl:8080").withTemplates(testTemplate);
+    }
+
+    private ECSSlave createPersistedSlave(String name, String taskArn, ECSSlaveHelper.State state) {
+        ECSSlave slave=mock(ECSSlave.class);
+        ECSSlaveHelper helper=new ECSSlaveHelper(slave,name,testTemplate);
+        Mockito.when(slave.getHelper()).thenReturn(helper);
+        Mockito.when(slave.getNodeName()).thenReturn(name);
+        Mockito.when(slave.getCloud()).thenReturn(testCloud);
+        helper.setTaskArn(taskArn);
+        helper.setClusterArn(taskArn == null ? null : "ecsClusterArn");
+        helper.setTaskState(state);
+        return slave;
+    }
+
+    @Test
+    public void runningTasksAreReattachedAndDeadAgentsRemoved() throws Exception {
+        ECSSlave running=createPersistedSlave("Running","RunningTask",RUNNING);
+        ECSSlave launching=createPersistedSlave("Launching","PendingTask",TASK_CREATED);
+        ECSSlave stopped=createPersistedSlave("Stopped","StoppedTask",RUNNING);
+        ECSSlave noTask=createPersistedSlave("NoTask",null,INITIALIZING);
+        Mockito.when(mockClient.describeTasks(any())).thenReturn(new DescribeTasksResult().withTasks(
+                new Task().withTaskArn("RunningTask").withLastStatus("RUNNING").withDesiredStatus("RUNNING"),
+                new Task().withTaskArn("PendingTask").withLastStatus("PENDING").withDesiredStatus("RUNNING"),
+                new Task().withTaskArn("StoppedTask").withLastStatus("STOPPED").withDesiredStatus("STOPPED").withStoppedReason("Essential container in task exited")));
+
+        Map<ECSSlave, Integer> reattached=ECSRestartReconciler.reconcile(testCloud, Arrays.asList(running, launching, stopped, noTask));
+
+        Assert.assertEquals(Arrays.asList(running, launching), new ArrayList<>(reattached.keySet()));
+        Assert.assertEquals(Integer.valueOf(testCloud.getSlaveTimoutInSeconds()), reattached.get(running));
+        Assert.assertEquals(Integer.valueOf(testTemplate.getSlaveLaunchTimeoutSeconds() + testCloud.getSlaveTimoutInSeconds()), reattached.get(launching));
+        Assert.assertEquals(RUNNING, launching.getHelper().getTaskState());
+        Assert.assertEquals(STOPPING, stopped.getHelper().getTaskState());
+        Assert.assertEquals("Essential container in task exited", stopped.getHelper().getStoppedReason());
+        Assert.assertEquals(STOPPING, noTask.getHelper().getTaskState());
+        Mockito.verify(stopped).terminate();
+        Mockito.verify(noTask).terminate();
+
+        ArgumentCaptor<DescribeTasksRequest> request=ArgumentCaptor.forClass(DescribeTasksRequest.class);
+        Mockito.verify(mockClient, Mockito.times(1)).describeTasks(request.capture());
+        Assert.assertEquals(3, request.getValue().getTasks().size());
+    }
+
+    @Test
+    public void templateIsFoundByNameAndLabel() {
+        Assert.assertSame(testTemplate, testCloud.findTemplate("maven-java", "maven-java"));
+        Assert.assertNull(testCloud.findTemplate("other", "maven-java"));
+        Assert.assertNull(testCloud.findTemplate("maven-java", "other"));
+    }
+}
@@ -0,0 +1,114 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.ecs.model.ServerException;
+import com.amazonaws.services.ecs.model.Task;
+import com.amazonaws.services.ecs.model.TaskDefinition;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Drives the real ECS client and SDK against {@link FakeECSServer}.
+ */
+public class ECSServiceFakeServerTest {
+    private FakeECSServer server;
+    private ECSCloud cloud;
+    private ECSTaskTemplate template;
+
+    @Before
+    public void setup() throws Exception {
+        server=new FakeECSServer().withCluster("ecsCluster");
+        template=new ECSTaskTemplate("maven-java","maven-java",null,"EC2")
+                .withImage("cloudbees/maven-java")
+                .withMemory(1024)
+                .withCpu(512);
+        cloud=new ECSCloud("ECS Cloud","ecsCluster","us-east-1").withJenkinsUrl("http://jenkinsUrl:8080/").withTemplates(template);
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void thousandAgentsAreLaunchedInBatches() throws Exception {
+        server.withContainerInstances("ecsCluster", 250, 4096, 4096);
+        ECSService service=server.createService(0);
+
+        TaskDefinition definition=service.registerTemplate(cloud, template);
+        List<String> taskArns=new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            taskArns.addAll(service.runEcsTasks(cloud, template, 10, definition, "token"));
+        }
+
+        Assert.assertEquals(1000, taskArns.size());
+        Assert.assertEquals(100, server.getCallCount("RunTask"));
+        Assert.assertEquals(1000, service.getTasksStartedBy("ecsCluster", cloud.getTaskStartedBy()).size());
+        Assert.assertEquals(10, server.getCallCount("ListTasks"));
+        for (Task task : service.describeTasks("ecsCluster", taskArns)) {
+            Assert.assertEquals("RUNNING", task.getLastStatus());
+        }
+        Assert.assertEquals(10, server.getCallCount("DescribeTasks"));
+        Assert.assertFalse(service.isCapacityAvailable(template, "ecsCluster"));
+    }
+
+    @Test
+    public void tasksArePendingBeforeRunning() throws Exception {
+        server.withContainerInstances("ecsCluster", 1, 4096, 4096).withPendingMillis(300);
+        ECSService service=server.createService(0);
+
+        String taskArn=service.runEcsTasks(cloud, template, 1, service.registerTemplate(cloud, template), "token").get(0);
+
+        Assert.assertEquals("PENDING", service.describeTask(cloud, taskArn).getLastStatus());
+        Thread.sleep(400);
+        Assert.assertEquals("RUNNING", service.describeTask(cloud, taskArn).getLastStatus());
+    }
+
+    @Test
+    public void tasksWhichDoNotFitAreNotStarted() throws Exception {
+        server.withContainerInstances("ecsCluster", 1, 1024, 1024);
+        ECSService service=server.createService(0);
+
+        List<String> taskArns=service.runEcsTasks(cloud, template, 2, service.registerTemplate(cloud, template), "token");
+
+        Assert.assertEquals(1, taskArns.size());
+        Assert.assertEquals(1, server.getTaskCount("ecsCluster", "RUNNING"));
+    }
+
+    @Test
+    public void throttledCallsAreRetried() {
+        server.withRateLimit("ListTasks", 1);
+
+        try {
+            ECSService noRetries=server.createService(0);
+            noRetries.getTasksStartedBy("ecsCluster", cloud.getTaskStartedBy());
+            noRetries.getTasksStartedBy("ecsCluster", cloud.getTaskStartedBy());
+            Assert.fail("Expected the second call to be throttled");
+        } catch (AmazonServiceException e) {
+            Assert.assertEquals("ThrottlingException", e.getErrorCode());
+        }
+
+        ECSService service=server.createService(10);
+        for (int i = 0; i < 3; i++) {
+            service.getTasksStartedBy("ecsCluster", cloud.getTaskStartedBy());
+        }
+        Assert.assertTrue("throttled calls were retried", server.getCallCount("ListTasks") > 5);
+        ECSApiMetrics.Operation listTasks=service.getApiMetrics().getOperations().get("ListTasks");
+        Assert.assertEquals(3, listTasks.getCalls());
+        Assert.assertEquals(0, listTasks.getErrorCount());
+        Assert.assertEquals(server.getCallCount("ListTasks") - 3 - 2, listTasks.getThrottles());
+    }
+
+    @Test(expected = ServerException.class)
+    public void injectedErrorsReachTheCaller() throws Exception {
+        server.withContainerInstances("ecsCluster", 1, 4096, 4096).failNext("RunTask", "ServerException", "Service unavailable");
+        ECSService service=server.createService(0);
+
+        service.runEcsTasks(cloud, template, 1, service.registerTemplate(cloud, template), "token");
+    }
+}
@@ -5,9 +5,11 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.stubbing.Answer;
+import java.util.Collections;
 import java.util.List;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 
 public class ECSServiceTest {
@@ -86,4 +88,22 @@ public class ECSServiceTest {
         boolean result = service.areSufficientClusterResourcesAvailable(testTemplate, clusterArn);
         Assert.assertTrue(result);
     }
+
+    @Test
+    public void instanceWithTheHostPortTakenHasNoCapacity() {
+        doReturn(new ListContainerInstancesResult().withContainerInstanceArns("Container1")).when(mockClient).listContainerInstances(any());
+        doReturn(new DescribeContainerInstancesResult().withContainerInstances(
+                new ContainerInstance().withContainerInstanceArn("Container1").withRemainingResources(
+                        new Resource().withName("MEMORY").withIntegerValue(4096),
+                        new Resource().withName("CPU").withIntegerValue(4096),
+                        new Resource().withName("PORTS").withStringSetValue("22", "8080")))).when(mockClient).describeContainerInstances(any());
+        ECSTaskTemplate webTemplate=new ECSTaskTemplate("web","web",null,"EC2")
+                .withImage("nginx")
+                .withMemory(256)
+                .withCpu(256);
+
+        Assert.assertTrue(service.isCapacityAvailable(webTemplate, "Cluster1"));
+        webTemplate.withPortMappings(Collections.singletonList(new ECSTaskTemplate.PortMappingEntry(80, 8080, "tcp")));
+        Assert.assertFalse(service.isCapacityAvailable(webTemplate, "Cluster1"));
+    }
 }
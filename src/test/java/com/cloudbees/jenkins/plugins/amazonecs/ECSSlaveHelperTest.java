@@ -110,7 +110,7 @@ public class ECSSlaveHelperTest {
 
         Mockito.verify(mockComputer,Mockito.times(1)).setAcceptingTasks(false);
         Mockito.verify(channel,Mockito.times(1)).close();
-        Mockito.verify(mockECSClient,Mockito.times(1)).stopTask(new StopTaskRequest().withCluster("ecsClusterArn").withTask(taskArn));
+        Mockito.verify(mockECSClient,Mockito.timeout(5000).times(1)).stopTask(new StopTaskRequest().withCluster("ecsClusterArn").withTask(taskArn));
     }
 
     @Test
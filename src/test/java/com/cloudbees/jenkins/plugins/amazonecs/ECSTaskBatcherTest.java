@@ -0,0 +1,126 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import com.amazonaws.services.ecs.model.*;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.mockito.stubbing.Answer;
+
+import javax.servlet.http.HttpServletResponse;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+public class ECSTaskBatcherTest {
+    private ECSService service;
+    private ECSClient mockClient;
+    private ECSCloud testCloud;
+    private ECSTaskTemplate testTemplate;
+    private final TaskDefinition definition=new TaskDefinition().withTaskDefinitionArn("DummyTaskDefinitionArn").withContainerDefinitions(new ContainerDefinition().withName("ECSCloud-maven-java").withImage("cloudbees/maven-java"));
+
+    @Before
+    public void setup() {
+        service=new ECSService("TestCredentials","us-east-1");
+        mockClient=mock(ECSClient.class);
+        service.init(mockClient);
+        testTemplate=new ECSTaskTemplate("maven-java","maven-java",null,"EC2")
+                .withImage("cloudbees/maven-java")
+                .withMemory(2048)
+                .withCpu(2048)
+                .withBatchLaunch(true);
+        testCloud=new ECSCloud("ECS Cloud","ecsClusterArn","us-east-1").withJenkinsUrl("http://jenkinsUrl:8080/").withTemplates(testTemplate);
+        doAnswer((Answer<RunTaskResult>) invocationOnMock -> {
+            RunTaskRequest request=invocationOnMock.getArgumentAt(0,RunTaskRequest.class);
+            RunTaskResult result=new RunTaskResult();
+            for (int i = 0; i < request.getCount(); i++) {
+                result.withTasks(new Task().withTaskArn("Task" + i));
+            }
+            return result;
+        }).when(mockClient).runTask(any());
+    }
+
+    @Test
+    public void agentsStartedTogetherShareOneRunTaskCall() throws Exception {
+        ExecutorService executor=Executors.newFixedThreadPool(3);
+        try {
+            List<Future<String>> results=new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                ECSSlave slave=mock(ECSSlave.class);
+                Mockito.when(slave.getNodeName()).thenReturn("Agent" + i);
+                results.add(executor.submit((Callable<String>) () -> ECSTaskBatcher.runTask(service, testCloud, testTemplate, definition, slave, 2000)));
+            }
+            Set<String> taskArns=new HashSet<>();
+            for (Future<String> result : results) {
+                taskArns.add(result.get());
+            }
+            Assert.assertEquals(3, taskArns.size());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        ArgumentCaptor<RunTaskRequest> request=ArgumentCaptor.forClass(RunTaskRequest.class);
+        Mockito.verify(mockClient,Mockito.times(1)).runTask(request.capture());
+        Assert.assertEquals(Integer.valueOf(3), request.getValue().getCount());
+        List<KeyValuePair> environment=request.getValue().getOverrides().getContainerOverrides().get(0).getEnvironment();
+        Assert.assertTrue(environment.contains(new KeyValuePair().withName("JENKINS_ECS_CLAIM_URL").withValue("http://jenkinsUrl:8080/ecs-agent-claim/claim")));
+        Assert.assertNull(request.getValue().getOverrides().getContainerOverrides().get(0).getCommand());
+    }
+
+    @Test
+    public void startedTaskCanBeClaimedOnceWithTheBatchToken() throws Exception {
+        ECSSlave slave=mock(ECSSlave.class);
+        Mockito.when(slave.getNodeName()).thenReturn("SingleAgent");
+        String taskArn=ECSTaskBatcher.runTask(service, testCloud, testTemplate, definition, slave, 0);
+
+        ArgumentCaptor<RunTaskRequest> request=ArgumentCaptor.forClass(RunTaskRequest.class);
+        Mockito.verify(mockClient).runTask(request.capture());
+        String token=null;
+        for (KeyValuePair pair : request.getValue().getOverrides().getContainerOverrides().get(0).getEnvironment()) {
+            if ("JENKINS_ECS_CLAIM_TOKEN".equals(pair.getName())) {
+                token=pair.getValue();
+            }
+        }
+
+        Assert.assertNull(ECSAgentClaimAction.claim(taskArn, "WrongToken"));
+        Assert.assertEquals("SingleAgent", ECSAgentClaimAction.claim(taskArn, token));
+        Assert.assertNull(ECSAgentClaimAction.claim(taskArn, token));
+    }
+
+    @Test
+    public void claimTokenIsNotReadFromTheQueryString() throws Exception {
+        ECSSlave slave=mock(ECSSlave.class);
+        Mockito.when(slave.getNodeName()).thenReturn("SingleAgent");
+        String taskArn=ECSTaskBatcher.runTask(service, testCloud, testTemplate, definition, slave, 0);
+        ArgumentCaptor<RunTaskRequest> request=ArgumentCaptor.forClass(RunTaskRequest.class);
+        Mockito.verify(mockClient).runTask(request.capture());
+        String token=null;
+        for (KeyValuePair pair : request.getValue().getOverrides().getContainerOverrides().get(0).getEnvironment()) {
+            if ("JENKINS_ECS_CLAIM_TOKEN".equals(pair.getName())) {
+                token=pair.getValue();
+            }
+        }
+
+        StaplerRequest req=mock(StaplerRequest.class);
+        StaplerResponse rsp=mock(StaplerResponse.class);
+        Mockito.when(req.getParameter("taskArn")).thenReturn(taskArn);
+        Mockito.when(req.getParameter("token")).thenReturn(token);
+        new ECSAgentClaimAction().doClaim(req, rsp);
+
+        Mockito.verify(rsp).sendError(HttpServletResponse.SC_NOT_FOUND);
+        Assert.assertTrue(ECSAgentClaimAction.isPending(taskArn));
+        Assert.assertEquals("SingleAgent", ECSAgentClaimAction.claim(taskArn, token));
+    }
+}
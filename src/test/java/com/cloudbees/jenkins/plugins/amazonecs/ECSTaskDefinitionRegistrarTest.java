@@ -0,0 +1,104 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import com.amazonaws.services.ecs.model.*;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+
+public class ECSTaskDefinitionRegistrarTest {
+    private ECSClient mockClient;
+    private ECSCloud cloud;
+    private ECSTaskTemplate mavenTemplate;
+    private ECSTaskTemplate nodeTemplate;
+    private ExecutorService executor;
+
+    @Before
+    public void setup() {
+        mockClient=mock(ECSClient.class);
+        ECSService service=new ECSService("ecsUserId","us-east-1");
+        service.init(mockClient);
+        mavenTemplate=new ECSTaskTemplate("maven-java","maven-java",null,"FARGATE")
+                .withImage("cloudbees/maven-java")
+                .withMemory(2048)
+                .withCpu(1024);
+        nodeTemplate=new ECSTaskTemplate("node","node",null,"FARGATE")
+                .withImage("node")
+                .withMemory(2048)
+                .withCpu(1024);
+        cloud=Mockito.spy(new ECSCloud("ECS Cloud","ecsClusterArn","us-east-1").withTemplates(mavenTemplate, nodeTemplate));
+        Mockito.doReturn(service).when(cloud).getEcsService();
+        executor=Executors.newFixedThreadPool(2);
+
+        Mockito.when(mockClient.describeTaskDefinition(any())).thenThrow(new ClientException("Unable to describe task definition"));
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void taskDefinitionsRegisteredInBackgroundAreReused() throws Exception {
+        Mockito.when(mockClient.registerTaskDefinition(any())).thenAnswer(invocation -> {
+            RegisterTaskDefinitionRequest request=(RegisterTaskDefinitionRequest) invocation.getArguments()[0];
+            return new RegisterTaskDefinitionResult().withTaskDefinition(new TaskDefinition().withTaskDefinitionArn(request.getFamily() + ":1"));
+        });
+        ECSTaskDefinitionRegistrar registrar=new ECSTaskDefinitionRegistrar(cloud);
+
+        registrar.start(executor);
+        registrar.start(executor);
+
+        Assert.assertEquals("ECSCloud-maven-java:1", registrar.getTaskDefinition(mavenTemplate).getTaskDefinitionArn());
+        Assert.assertEquals("ECSCloud-node:1", registrar.getTaskDefinition(nodeTemplate).getTaskDefinitionArn());
+        Assert.assertEquals("ECSCloud-node:1", registrar.getTaskDefinition(nodeTemplate).getTaskDefinitionArn());
+        Mockito.verify(mockClient, Mockito.times(2)).registerTaskDefinition(any());
+        Assert.assertTrue(registrar.getErrors().isEmpty());
+    }
+
+    @Test
+    public void failedRegistrationIsReportedAndRetriedByLaunch() throws Exception {
+        Mockito.when(mockClient.registerTaskDefinition(any()))
+                .thenThrow(new InvalidParameterException("Invalid memory"))
+                .thenThrow(new InvalidParameterException("Invalid memory"))
+                .thenReturn(new RegisterTaskDefinitionResult().withTaskDefinition(new TaskDefinition().withTaskDefinitionArn("ECSCloud-maven-java:1")));
+        ECSTaskDefinitionRegistrar registrar=new ECSTaskDefinitionRegistrar(cloud);
+
+        registrar.start(executor);
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        Assert.assertEquals(2, registrar.getErrors().size());
+        Assert.assertTrue(registrar.getErrors().get("maven-java").startsWith("Invalid memory"));
+
+        Assert.assertEquals("ECSCloud-maven-java:1", registrar.getTaskDefinition(mavenTemplate).getTaskDefinitionArn());
+        Assert.assertFalse(registrar.getErrors().containsKey("maven-java"));
+    }
+
+    @Test
+    public void taskDefinitionOverrideIsLookedUpForEveryLaunch() throws Exception {
+        ECSTaskTemplate overrideTemplate=new ECSTaskTemplate("external","external","external-family","FARGATE");
+        Mockito.doReturn(Collections.singletonList(overrideTemplate)).when(cloud).getTemplates();
+        Mockito.reset(mockClient);
+        Mockito.when(mockClient.describeTaskDefinition(any())).thenReturn(
+                new DescribeTaskDefinitionResult().withTaskDefinition(new TaskDefinition().withTaskDefinitionArn("external-family:1")),
+                new DescribeTaskDefinitionResult().withTaskDefinition(new TaskDefinition().withTaskDefinitionArn("external-family:2")));
+        ECSTaskDefinitionRegistrar registrar=new ECSTaskDefinitionRegistrar(cloud);
+
+        registrar.start(executor);
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        Assert.assertEquals("external-family:2", registrar.getTaskDefinition(overrideTemplate).getTaskDefinitionArn());
+        Mockito.verify(mockClient, Mockito.never()).registerTaskDefinition(any());
+    }
+}
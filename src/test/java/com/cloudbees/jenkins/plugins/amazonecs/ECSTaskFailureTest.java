@@ -0,0 +1,48 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import com.amazonaws.services.ecs.model.Container;
+import com.amazonaws.services.ecs.model.Task;
+import org.junit.Assert;
+import org.junit.Test;
+
+import static com.cloudbees.jenkins.plugins.amazonecs.ECSTaskFailure.Action.*;
+import static com.cloudbees.jenkins.plugins.amazonecs.ECSTaskFailure.Category.*;
+
+public class ECSTaskFailureTest {
+
+    private void assertClassified(String reason, ECSTaskFailure.Category category, ECSTaskFailure.Action action) {
+        ECSTaskFailure failure=ECSTaskFailure.classify(reason);
+        Assert.assertEquals(reason, category, failure.getCategory());
+        Assert.assertEquals(reason, action, failure.getAction());
+    }
+
+    @Test
+    public void stopReasonsAreClassified() {
+        assertClassified("CannotPullContainerError: pull access denied for private/image", IMAGE_PULL, GIVE_UP);
+        assertClassified("CannotPullContainerError: context canceled", IMAGE_PULL, RETRY_ELSEWHERE);
+        assertClassified("OutOfMemoryError: Container killed due to memory usage", OUT_OF_MEMORY, GIVE_UP);
+        assertClassified("ResourceInitializationError: unable to pull secrets or registry auth: AccessDeniedException", IAM, GIVE_UP);
+        assertClassified("Timeout waiting for network interface provisioning to complete.", NETWORK, RETRY);
+        assertClassified("ResourceInitializationError: failed to initialize logging driver", RESOURCE, RETRY_ELSEWHERE);
+        assertClassified("Essential container in task exited", UNKNOWN, GIVE_UP);
+    }
+
+    @Test
+    public void containerReasonsAreTakenIntoAccount() {
+        Task task=new Task().withStoppedReason("Essential container in task exited")
+                .withContainers(new Container().withName("jnlp").withReason("OutOfMemoryError: Container killed due to memory usage"));
+
+        ECSTaskFailure failure=ECSTaskFailure.classify(task);
+
+        Assert.assertEquals(OUT_OF_MEMORY, failure.getCategory());
+        Assert.assertEquals("Essential container in task exited; jnlp: OutOfMemoryError: Container killed due to memory usage", failure.getReason());
+        Assert.assertEquals(UNKNOWN, ECSTaskFailure.classify((Task) null).getCategory());
+    }
+
+    @Test
+    public void onlyClassifiedStopsAreLaunchFailures() {
+        Assert.assertTrue(ECSTaskFailure.classify("RESOURCE:MEMORY").isLaunchFailure());
+        Assert.assertTrue(ECSTaskFailure.classify("AccessDeniedException: User is not permissioned").isLaunchFailure());
+        Assert.assertFalse(ECSTaskFailure.classify("Task stopped by user").isLaunchFailure());
+    }
+}
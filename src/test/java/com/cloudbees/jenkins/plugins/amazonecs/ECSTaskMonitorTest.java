@@ -0,0 +1,140 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import com.amazonaws.services.ecs.model.ContainerInstance;
+import com.amazonaws.services.ecs.model.DescribeContainerInstancesResult;
+import com.amazonaws.services.ecs.model.DescribeTasksRequest;
+import com.amazonaws.services.ecs.model.DescribeTasksResult;
+import com.amazonaws.services.ecs.model.Failure;
+import com.amazonaws.services.ecs.model.Task;
+import hudson.slaves.OfflineCause;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static com.cloudbees.jenkins.plugins.amazonecs.ECSSlaveHelper.State.RUNNING;
+import static com.cloudbees.jenkins.plugins.amazonecs.ECSSlaveHelper.State.STOPPING;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(JenkinsWrapper.class)
+public class ECSTaskMonitorTest {
+    private ECSClient mockClient;
+    private ECSCloud testCloud;
+    private ECSTaskTemplate testTemplate;
+
+    @Before
+    public void setup() {
+        ECSService ecsService=new ECSService("TestCredentials","us-east-1");
+        mockClient=mock(ECSClient.class);
+        ecsService.init(mockClient);
+        PowerMockito.mockStatic(JenkinsWrapper.class);
+        PowerMockito.when(JenkinsWrapper.getECSService(any(String.class),any(String.class))).thenReturn(ecsService);
+        testTemplate=new ECSTaskTemplate("maven-java","maven-java",null,"EC2")
+                .withImage("cloudbees/maven-java")
+                .withMemory(2048)
+                .withCpu(2048);
+        testCloud=Mockito.spy(new ECSCloud("ECS Cloud","ecsClusterArn","us-east-1").withJenkinsUrl("http://jenkinsUrl:8080").withTemplates(testTemplate));
+        Mockito.doNothing().when(testCloud).provisionReplacement(any(ECSTaskTemplate.class));
+    }
+
+    private ECSSlave createRunningSlave(String name, String taskArn, ECSComputer computer) {
+        ECSSlave slave=mock(ECSSlave.class);
+        ECSSlaveHelper helper=new ECSSlaveHelper(slave,name,testTemplate);
+        Mockito.when(slave.getHelper()).thenReturn(helper);
+        Mockito.when(slave.getNodeName()).thenReturn(name);
+        Mockito.when(slave.getECSComputer()).thenReturn(computer);
+        Mockito.when(slave.getCloud()).thenReturn(testCloud);
+        helper.setTaskArn(taskArn);
+        helper.setTaskState(RUNNING);
+        return slave;
+    }
+
+    @Test
+    public void agentWithStoppedTaskIsTakenOfflineAndRemoved() throws Exception {
+        ECSComputer stoppedComputer=mock(ECSComputer.class);
+        ECSSlave stoppedSlave=createRunningSlave("Stopped","StoppedTask",stoppedComputer);
+        ECSSlave runningSlave=createRunningSlave("Running","RunningTask",mock(ECSComputer.class));
+        ECSSlave unknownSlave=createRunningSlave("Unknown","UnknownTask",mock(ECSComputer.class));
+        ECSSlave undescribedSlave=createRunningSlave("Undescribed","UndescribedTask",mock(ECSComputer.class));
+        Mockito.when(mockClient.describeTasks(any())).thenReturn(new DescribeTasksResult().withTasks(
+                new Task().withTaskArn("StoppedTask").withLastStatus("STOPPED").withStoppedReason("OutOfMemoryError: Container killed due to memory usage"),
+                new Task().withTaskArn("RunningTask").withLastStatus("RUNNING").withDesiredStatus("RUNNING"))
+                .withFailures(new Failure().withArn("UnknownTask").withReason("MISSING")));
+
+        List<ECSSlave> stopped=ECSTaskMonitor.check(testCloud, Arrays.asList(stoppedSlave, runningSlave, unknownSlave, undescribedSlave));
+
+        Assert.assertEquals(2, stopped.size());
+        Assert.assertEquals(STOPPING, stoppedSlave.getHelper().getTaskState());
+        Assert.assertEquals("OutOfMemoryError: Container killed due to memory usage", stoppedSlave.getHelper().getStoppedReason());
+        Assert.assertEquals(STOPPING, unknownSlave.getHelper().getTaskState());
+        Assert.assertEquals(RUNNING, runningSlave.getHelper().getTaskState());
+        Assert.assertEquals(RUNNING, undescribedSlave.getHelper().getTaskState());
+        Mockito.verify(stoppedComputer).setTemporarilyOffline(Mockito.eq(true), any(OfflineCause.class));
+        Mockito.verify(stoppedSlave).terminate();
+    }
+
+    @Test
+    public void agentsOnDrainingInstanceStopAcceptingAndAreReplaced() throws Exception {
+        ECSComputer busyComputer=mock(ECSComputer.class);
+        ECSComputer idleComputer=mock(ECSComputer.class);
+        Mockito.when(idleComputer.isIdle()).thenReturn(true);
+        ECSSlave busySlave=createRunningSlave("Busy","BusyTask",busyComputer);
+        ECSSlave idleSlave=createRunningSlave("Idle","IdleTask",idleComputer);
+        ECSSlave healthySlave=createRunningSlave("Healthy","HealthyTask",mock(ECSComputer.class));
+        Mockito.when(mockClient.describeTasks(any())).thenReturn(new DescribeTasksResult().withTasks(
+                new Task().withTaskArn("BusyTask").withLastStatus("RUNNING").withDesiredStatus("RUNNING").withContainerInstanceArn("SpotInstance"),
+                new Task().withTaskArn("IdleTask").withLastStatus("RUNNING").withDesiredStatus("RUNNING").withContainerInstanceArn("SpotInstance"),
+                new Task().withTaskArn("HealthyTask").withLastStatus("RUNNING").withDesiredStatus("RUNNING").withContainerInstanceArn("OtherInstance")));
+        Mockito.when(mockClient.describeContainerInstances(any())).thenReturn(new DescribeContainerInstancesResult().withContainerInstances(
+                new ContainerInstance().withContainerInstanceArn("SpotInstance").withEc2InstanceId("i-spot").withStatus("DRAINING"),
+                new ContainerInstance().withContainerInstanceArn("OtherInstance").withEc2InstanceId("i-other").withStatus("ACTIVE")));
+
+        List<ECSSlave> agents=Arrays.asList(busySlave, idleSlave, healthySlave);
+        Assert.assertTrue(ECSTaskMonitor.check(testCloud, agents).isEmpty());
+
+        Assert.assertTrue(busySlave.getHelper().isInstanceDraining());
+        Assert.assertEquals(RUNNING, busySlave.getHelper().getTaskState());
+        Mockito.verify(busyComputer).setAcceptingTasks(false);
+        Assert.assertEquals(STOPPING, idleSlave.getHelper().getTaskState());
+        Assert.assertFalse(healthySlave.getHelper().isInstanceDraining());
+        Mockito.verify(testCloud, Mockito.times(2)).provisionReplacement(testTemplate);
+
+        ECSTaskMonitor.check(testCloud, Arrays.asList(busySlave, healthySlave));
+        Mockito.verify(testCloud, Mockito.times(2)).provisionReplacement(testTemplate);
+    }
+
+    @Test
+    public void tasksAreDescribedInTheClusterTheyWereStartedIn() throws Exception {
+        ECSSlave oldSlave=createRunningSlave("Old","OldTask",mock(ECSComputer.class));
+        oldSlave.getHelper().setClusterArn("oldClusterArn");
+        ECSSlave newSlave=createRunningSlave("New","NewTask",mock(ECSComputer.class));
+        Mockito.when(mockClient.describeTasks(any())).thenAnswer(invocation -> {
+            DescribeTasksRequest request=invocation.getArgumentAt(0, DescribeTasksRequest.class);
+            DescribeTasksResult result=new DescribeTasksResult();
+            for (String taskArn : request.getTasks()) {
+                boolean inCluster=taskArn.equals("OldTask") == "oldClusterArn".equals(request.getCluster());
+                if (inCluster) {
+                    result.withTasks(new Task().withTaskArn(taskArn).withLastStatus("RUNNING").withDesiredStatus("RUNNING"));
+                } else {
+                    result.withFailures(new Failure().withArn(taskArn).withReason("MISSING"));
+                }
+            }
+            return result;
+        });
+
+        Assert.assertTrue(ECSTaskMonitor.check(testCloud, Arrays.asList(oldSlave, newSlave)).isEmpty());
+
+        Assert.assertEquals(RUNNING, oldSlave.getHelper().getTaskState());
+        Assert.assertEquals(RUNNING, newSlave.getHelper().getTaskState());
+        Mockito.verify(mockClient, Mockito.times(2)).describeTasks(any());
+    }
+}
@@ -0,0 +1,90 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.ecs.model.StopTaskRequest;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+public class ECSTaskStopperTest {
+    private ECSService service;
+    private ECSClient mockClient;
+    private ECSTaskStopper stopper;
+
+    @Before
+    public void setup() {
+        service=new ECSService("TestCredentials","us-east-1");
+        mockClient=mock(ECSClient.class);
+        service.init(mockClient);
+        stopper=new ECSTaskStopper(2);
+    }
+
+    @Test
+    public void throttledStopIsRetried() throws InterruptedException {
+        AmazonServiceException throttled=new AmazonServiceException("Rate exceeded");
+        throttled.setErrorCode("ThrottlingException");
+        doThrow(throttled).doNothing().when(mockClient).stopTask(any());
+
+        stopper.stop(service, "Task1", "Cluster1");
+
+        Mockito.verify(mockClient, Mockito.timeout(5000).times(2)).stopTask(new StopTaskRequest().withTask("Task1").withCluster("Cluster1"));
+        waitForPendingStops();
+        Assert.assertEquals(1, stopper.getThrottledCount());
+        Assert.assertEquals(1, stopper.getStoppedCount());
+        Assert.assertEquals(ECSTaskStopper.Outcome.STOPPED, stopper.getRecentResults().get(0).getOutcome());
+        Assert.assertEquals(2, stopper.getRecentResults().get(0).getAttempts());
+    }
+
+    @Test
+    public void failedStopIsRecorded() throws InterruptedException {
+        doThrow(new AmazonServiceException("Access denied")).when(mockClient).stopTask(any());
+
+        stopper.stop(service, "Task2", "Cluster1");
+
+        waitForPendingStops();
+        Mockito.verify(mockClient, Mockito.times(1)).stopTask(any());
+        Assert.assertEquals(1, stopper.getFailedCount());
+        Assert.assertEquals(ECSTaskStopper.Outcome.FAILED, stopper.getRecentResults().get(0).getOutcome());
+    }
+
+    @Test
+    public void stopReturnsBeforeTheTaskIsStopped() throws InterruptedException {
+        Object gate=new Object();
+        synchronized (gate) {
+            Mockito.doAnswer(invocation -> {
+                synchronized (gate) {
+                    return null;
+                }
+            }).when(mockClient).stopTask(any());
+            stopper.stop(service, "Task3", "Cluster1");
+            Assert.assertEquals(1, stopper.getPendingCount());
+        }
+        waitForPendingStops();
+        Assert.assertEquals(1, stopper.getStoppedCount());
+    }
+
+    @Test
+    public void taskIsStoppedSynchronouslyAfterShutdown() throws InterruptedException {
+        stopper.shutdown(1, TimeUnit.SECONDS);
+
+        stopper.stop(service, "Task4", "Cluster1");
+
+        Mockito.verify(mockClient, Mockito.times(1)).stopTask(new StopTaskRequest().withTask("Task4").withCluster("Cluster1"));
+        Assert.assertEquals(0, stopper.getPendingCount());
+        Assert.assertEquals(1, stopper.getStoppedCount());
+    }
+
+    private void waitForPendingStops() throws InterruptedException {
+        for (int i = 0; i < 100 && stopper.getPendingCount() > 0; i++) {
+            Thread.sleep(50);
+        }
+        Assert.assertEquals(0, stopper.getPendingCount());
+    }
+}
@@ -0,0 +1,131 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import com.amazonaws.services.ecs.model.ContainerInstance;
+import com.amazonaws.services.ecs.model.Resource;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+
+public class ECSTemplateSelectorTest {
+    private ECSCloud cloud;
+    private ECSTaskTemplate ec2Template;
+    private ECSTaskTemplate fargateTemplate;
+    private ECSLaunchStats ec2Stats;
+    private ECSLaunchStats fargateStats;
+
+    @Before
+    public void setup() {
+        ec2Template=new ECSTaskTemplate("maven-ec2","maven",null,"EC2")
+                .withImage("cloudbees/maven-java")
+                .withMemory(1024)
+                .withCpu(1024);
+        fargateTemplate=new ECSTaskTemplate("maven-fargate","maven",null,"FARGATE")
+                .withImage("cloudbees/maven-java")
+                .withMemory(1024)
+                .withCpu(1024);
+        ec2Stats=new ECSLaunchStats();
+        fargateStats=new ECSLaunchStats();
+        cloud=mock(ECSCloud.class);
+        Mockito.when(cloud.getLaunchStats(any(ECSTaskTemplate.class))).thenAnswer(invocation ->
+                invocation.getArguments()[0] == ec2Template ? ec2Stats : fargateStats);
+    }
+
+    private static ContainerInstance instance(int memory, int cpu) {
+        return new ContainerInstance().withRemainingResources(
+                new Resource().withName("MEMORY").withIntegerValue(memory),
+                new Resource().withName("CPU").withIntegerValue(cpu));
+    }
+
+    private int count(ECSTemplateSelector selector, ECSTaskTemplate template, int agents) {
+        int count=0;
+        for (int i = 0; i < agents; i++) {
+            if (selector.next() == template) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void demandIsSplitByWeight() {
+        ec2Template.setWeight(3);
+        ECSTemplateSelector selector=new ECSTemplateSelector(cloud, Arrays.asList(ec2Template, fargateTemplate), null, Collections.<String, Integer>emptyMap());
+
+        Assert.assertEquals(6, count(selector, ec2Template, 8));
+        Assert.assertEquals(2, selector.getPlanned(fargateTemplate));
+    }
+
+    @Test
+    public void templateWithoutHeadroomIsAvoided() {
+        List<ContainerInstance> instances=Collections.singletonList(instance(2048, 4096));
+        ECSTemplateSelector selector=new ECSTemplateSelector(cloud, Arrays.asList(ec2Template, fargateTemplate), instances, Collections.<String, Integer>emptyMap());
+
+        Assert.assertEquals(2, count(selector, ec2Template, 10));
+        Assert.assertTrue(selector.hasCapacity(ec2Template));
+        Assert.assertTrue(selector.hasCapacity(fargateTemplate));
+    }
+
+    @Test
+    public void slowTemplateGetsSmallerShare() {
+        for (int i = 0; i < ECSLaunchStats.MIN_SAMPLES; i++) {
+            ec2Stats.record(4000, false);
+            fargateStats.record(1000, false);
+        }
+        ECSTemplateSelector selector=new ECSTemplateSelector(cloud, Arrays.asList(ec2Template, fargateTemplate), null, Collections.<String, Integer>emptyMap());
+
+        Assert.assertEquals(1, count(selector, ec2Template, 5));
+    }
+
+    @Test
+    public void excludedTemplateIsSkipped() {
+        ECSTemplateSelector selector=new ECSTemplateSelector(cloud, Arrays.asList(ec2Template, fargateTemplate), null, Collections.<String, Integer>emptyMap());
+
+        Assert.assertSame(ec2Template, selector.next());
+        Assert.assertEquals(2, selector.getRemaining());
+        selector.exclude(ec2Template);
+
+        Assert.assertEquals(0, selector.getPlanned(ec2Template));
+        Assert.assertEquals(1, selector.getRemaining());
+        Assert.assertSame(fargateTemplate, selector.next());
+        Assert.assertSame(fargateTemplate, selector.next());
+        selector.exclude(fargateTemplate);
+        Assert.assertNull(selector.next());
+    }
+
+    @Test
+    public void agentsInFlightCountAsPlanned() {
+        ECSTemplateSelector selector=new ECSTemplateSelector(cloud, Arrays.asList(ec2Template, fargateTemplate), null,
+                Collections.singletonMap("maven-ec2", 3));
+
+        Assert.assertEquals(0, count(selector, ec2Template, 3));
+        Assert.assertEquals(3, selector.getPlanned(fargateTemplate));
+    }
+
+    @Test
+    public void placeableTasksAreLimitedByCpuAndMemory() {
+        List<ContainerInstance> instances=Arrays.asList(instance(4096, 1024), instance(2048, 4096), instance(512, 4096));
+
+        Assert.assertEquals(3, ECSTemplateSelector.countPlaceable(ec2Template, instances));
+    }
+
+    @Test
+    public void fixedHostPortAllowsOneTaskPerInstance() {
+        ECSTaskTemplate webTemplate=new ECSTaskTemplate("web","web",null,"EC2")
+                .withImage("nginx")
+                .withMemory(256)
+                .withCpu(256)
+                .withPortMappings(Collections.singletonList(new ECSTaskTemplate.PortMappingEntry(80, 8080, "tcp")));
+        ContainerInstance portTaken=instance(4096, 4096).withRemainingResources(new Resource().withName("PORTS").withStringSetValue("22", "8080"));
+        List<ContainerInstance> instances=Arrays.asList(instance(4096, 4096), instance(4096, 4096), portTaken);
+
+        Assert.assertEquals(2, ECSTemplateSelector.countPlaceable(webTemplate, instances));
+    }
+}
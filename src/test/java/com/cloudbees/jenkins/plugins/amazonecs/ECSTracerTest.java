@@ -0,0 +1,107 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import com.amazonaws.ResponseMetadata;
+import com.amazonaws.services.ecs.model.DescribeTasksResult;
+import com.sun.net.httpserver.HttpServer;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ECSTracerTest {
+
+    private HttpServer collector;
+    private final BlockingQueue<String> received=new LinkedBlockingQueue<>();
+
+    @Before
+    public void setup() throws Exception {
+        collector=HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        collector.createContext(ECSTracer.TRACES_PATH, exchange -> {
+            received.add(IOUtils.toString(exchange.getRequestBody(), StandardCharsets.UTF_8));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        collector.start();
+    }
+
+    @After
+    public void tearDown() {
+        collector.stop(0);
+    }
+
+    private ECSTracer tracer() {
+        return new ECSTracer("http://" + collector.getAddress().getHostString() + ":" + collector.getAddress().getPort(), Runnable::run);
+    }
+
+    private static DescribeTasksResult describeTasksResult(String requestId) {
+        DescribeTasksResult result=new DescribeTasksResult();
+        result.setSdkResponseMetadata(new ResponseMetadata(Collections.singletonMap(ResponseMetadata.AWS_REQUEST_ID, requestId)));
+        return result;
+    }
+
+    @Test
+    public void sendsTraceWithApiCallsToCollector() throws Exception {
+        ECSClient mockClient=mock(ECSClient.class);
+        when(mockClient.describeTasks(any())).thenReturn(describeTasksResult("request-1"));
+        ECSService service=new ECSService("ecsUserId","us-east-1");
+        service.init(mockClient);
+        ECSCloud cloud=new ECSCloud("ECS Cloud","ecsClusterArn","us-east-1");
+
+        ECSSpan root=tracer().startTrace("ECS agent launch").setAttribute("ecs.template", "maven-java");
+        ECSSpan poll=root.startChild("status poll");
+        try (ECSSpan.Scope scope=poll.makeCurrent()) {
+            service.describeTask(cloud, "taskArn");
+        }
+        poll.end();
+        Assert.assertFalse(ECSSpan.current().isRecording());
+        root.end("Launch failed in state TASK_CREATED");
+
+        String body=received.poll(10, TimeUnit.SECONDS);
+        Assert.assertNotNull("trace was not sent", body);
+        JSONArray spans=JSONObject.fromObject(body).getJSONArray("resourceSpans").getJSONObject(0)
+                .getJSONArray("scopeSpans").getJSONObject(0).getJSONArray("spans");
+        Assert.assertEquals(3, spans.size());
+        Map<String, JSONObject> byName=new HashMap<>();
+        for (int i = 0; i < spans.size(); i++) {
+            byName.put(spans.getJSONObject(i).getString("name"), spans.getJSONObject(i));
+        }
+
+        JSONObject launch=byName.get("ECS agent launch");
+        JSONObject call=byName.get("ECS DescribeTasks");
+        Assert.assertEquals(32, launch.getString("traceId").length());
+        Assert.assertFalse(launch.has("parentSpanId"));
+        Assert.assertEquals(2, launch.getJSONObject("status").getInt("code"));
+        Assert.assertEquals(launch.getString("spanId"), byName.get("status poll").getString("parentSpanId"));
+        Assert.assertEquals(byName.get("status poll").getString("spanId"), call.getString("parentSpanId"));
+        Assert.assertEquals(launch.getString("traceId"), call.getString("traceId"));
+        Assert.assertEquals(3, call.getInt("kind"));
+        Assert.assertTrue(call.getJSONArray("attributes").toString(), call.getJSONArray("attributes").toString().contains("request-1"));
+    }
+
+    @Test
+    public void recordsNothingWithoutCollector() {
+        ECSSpan root=new ECSTracer(" ", Runnable::run).startTrace("ECS agent launch");
+
+        Assert.assertFalse(root.isRecording());
+        Assert.assertSame(ECSSpan.NOOP, root.startChild("status poll"));
+        root.end();
+        Assert.assertTrue(received.isEmpty());
+    }
+}
@@ -0,0 +1,47 @@
+package com.cloudbees.jenkins.plugins.amazonecs;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that every Jelly view of the plugin is well-formed XML, which Jenkins needs to render it.
+ */
+public class ECSViewsTest {
+
+    private static void collectViews(File dir, List<File> views) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                collectViews(file, views);
+            } else if (file.getName().endsWith(".jelly")) {
+                views.add(file);
+            }
+        }
+    }
+
+    @Test
+    public void viewsAreWellFormed() throws Exception {
+        URL messages = ECSCloud.class.getResource("Messages.properties");
+        Assert.assertEquals("file", messages.getProtocol());
+        List<File> views = new ArrayList<>();
+        collectViews(new File(messages.toURI()).getParentFile(), views);
+
+        Assert.assertTrue(views.toString(), views.contains(new File(new File(messages.toURI()).getParentFile(), "ECSLaunchTimelineAction/index.jelly")));
+        for (File view : views) {
+            try {
+                DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(view);
+            } catch (Exception e) {
+                throw new AssertionError("Cannot parse " + view + ": " + e, e);
+            }
+        }
+    }
+}